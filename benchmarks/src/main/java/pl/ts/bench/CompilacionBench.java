@@ -0,0 +1,75 @@
+package pl.ts.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ts.OpcionesCompilacion;
+import pl.ts.SesionCompilador;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Compilacion entera: en memoria (SesionCompilador.compilar) y con los ficheros de siempre
+// (compilarFicheros, como Main), con y sin --binario
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss256m", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CompilacionBench {
+
+    @Param({"GLOBALES", "ANIDADO", "EXPRESIONES", "FUNCIONES"})
+    public Programas.Forma forma;
+
+    @Param({"1000", "100000"})
+    public int lineas;
+
+    private String fuente;
+    private Path carpeta;
+    private final SesionCompilador sesion = new SesionCompilador();
+    private SesionCompilador sesionBinaria;
+
+    @Setup
+    public void preparar() throws IOException {
+        fuente = Programas.generar(forma, lineas);
+        carpeta = Files.createTempDirectory("myjs-bench");
+        Files.write(carpeta.resolve("fuente.js"), fuente.getBytes(StandardCharsets.UTF_8));
+        OpcionesCompilacion binario = new OpcionesCompilacion();
+        binario.formatoBinario = true;
+        sesionBinaria = new SesionCompilador(binario);
+    }
+
+    @TearDown
+    public void borrar() throws IOException {
+        try (Stream<Path> s = Files.walk(carpeta)) {
+            for (Path p : (Iterable<Path>) s.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public int enMemoria() throws IOException {
+        return sesion.compilar(fuente).getNumErrores();
+    }
+
+    @Benchmark
+    public int ficheros() throws IOException {
+        return compilarFicheros(sesion);
+    }
+
+    @Benchmark
+    public int ficherosBinarios() throws IOException {
+        return compilarFicheros(sesionBinaria);
+    }
+
+    private int compilarFicheros(SesionCompilador s) throws IOException {
+        return s.compilarFicheros(carpeta.resolve("fuente.js").toString(),
+                carpeta.resolve("tokens.txt").toString(), carpeta.resolve("ts.txt").toString(),
+                carpeta.resolve("parse.txt").toString(), carpeta.resolve("errores.txt").toString());
+    }
+}
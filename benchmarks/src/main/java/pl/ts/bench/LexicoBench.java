@@ -0,0 +1,39 @@
+package pl.ts.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ts.AnalizadorLexico;
+import pl.ts.ContextoCompilacion;
+import pl.ts.Entrada;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Solo el lexer: AnalizadorLexico.analizar() sobre el fuente entero (sin escribir tokens.txt)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss256m", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class LexicoBench {
+
+    @Param({"GLOBALES", "ANIDADO", "EXPRESIONES", "FUNCIONES"})
+    public Programas.Forma forma;
+
+    @Param({"1000", "100000"})
+    public int lineas;
+
+    private String fuente;
+
+    @Setup
+    public void preparar() {
+        fuente = Programas.generar(forma, lineas);
+    }
+
+    @Benchmark
+    public int analizar() throws IOException {
+        ContextoCompilacion ctx = Programas.contexto();
+        new AnalizadorLexico(ctx, Entrada.deTexto(fuente)).analizar();
+        return ctx.getTablaSimbolos().getTablaGlobal().simbolos.size();
+    }
+}
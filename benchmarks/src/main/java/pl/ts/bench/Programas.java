@@ -0,0 +1,146 @@
+package pl.ts.bench;
+
+import pl.ts.ContextoCompilacion;
+import pl.ts.Diagnostico;
+import pl.ts.SalidaReglas;
+import pl.ts.SalidaTokens;
+
+import java.util.ArrayList;
+
+// Programas MyJS para los benchmarks, todos correctos (sin errores) y de unas 'lineas' lineas.
+// Cada forma carga una parte distinta del compilador
+public final class Programas {
+
+    public enum Forma {
+        GLOBALES,     // muchas variables globales distintas: la tabla global crece mucho
+        ANIDADO,      // bloques e ifs muy anidados: la recursion del parser
+        EXPRESIONES,  // expresiones largas y con parentesis: X, X1, X2... del parser
+        FUNCIONES     // muchas funciones con parametros, locales y llamadas: tablas de funciones
+    }
+
+    static final int PROFUNDIDAD = 200;  // niveles de cada anidamiento en ANIDADO
+    static final int TERMINOS = 24;      // sumandos de cada expresion en EXPRESIONES
+    static final int MAX_ENTERO = 32767; // los enteros tienen que ser menores
+
+    private Programas() {
+    }
+
+    public static String generar(Forma forma, int lineas) {
+        StringBuilder sb = new StringBuilder(lineas * 40);
+        switch (forma) {
+            case GLOBALES:
+                globales(sb, lineas);
+                break;
+            case ANIDADO:
+                anidado(sb, lineas);
+                break;
+            case EXPRESIONES:
+                expresiones(sb, lineas);
+                break;
+            case FUNCIONES:
+                funciones(sb, lineas);
+                break;
+        }
+        return sb.toString();
+    }
+
+    // una declaracion por linea y de vez en cuando una asignacion con dos anteriores
+    private static void globales(StringBuilder sb, int lineas) {
+        int n = 0;
+        for (int i = 0; i < lineas; i++) {
+            if (i % 4 == 3) {
+                sb.append("g").append(n - 1).append(" = g").append(n / 2).append(" + g").append(n / 3).append(";\n");
+            } else {
+                sb.append("let int g").append(n).append(" = ").append(n % MAX_ENTERO).append(";\n");
+                n++;
+            }
+        }
+    }
+
+    // if (n == 0) { n = n + 1; if (n == 0) { ... } } con PROFUNDIDAD niveles, repetido
+    private static void anidado(StringBuilder sb, int lineas) {
+        sb.append("let int n = 0;\n");
+        int hechas = 1;
+        while (hechas < lineas) {
+            int niveles = Math.max(1, Math.min(PROFUNDIDAD, (lineas - hechas) / 3));
+            for (int i = 0; i < niveles; i++) {
+                sb.append("if (n == ").append(i).append(") {\n");
+                sb.append("n = n + 1;\n");
+            }
+            for (int i = 0; i < niveles; i++) {
+                sb.append("}\n");
+            }
+            hechas += 3 * niveles;
+        }
+    }
+
+    // e = e + 1 + (e + 2 + (e + 3 ... )) + ...; parentesis cada pocos terminos
+    private static void expresiones(StringBuilder sb, int lineas) {
+        sb.append("let int e = 1;\n");
+        sb.append("let boolean b = true;\n");
+        for (int i = 2; i < lineas; i++) {
+            if (i % 8 == 0) {
+                sb.append("b = e + 1 == (e + ").append(i % MAX_ENTERO).append(");\n");
+                continue;
+            }
+            sb.append("e = e");
+            int abiertos = 0;
+            for (int t = 1; t < TERMINOS; t++) {
+                sb.append(" + ");
+                if (t % 6 == 0) {
+                    sb.append('(');
+                    abiertos++;
+                }
+                sb.append(t % 3 == 0 ? "e" : Integer.toString(t));
+            }
+            for (; abiertos > 0; abiertos--) {
+                sb.append(')');
+            }
+            sb.append(";\n");
+        }
+    }
+
+    // function int fN(int a, int b, string s) { let int t = a + b; t = t + fN-1(a, t, s); return t; }
+    // (una funcion cada 6 lineas)
+    private static void funciones(StringBuilder sb, int lineas) {
+        sb.append("let int total = 0;\n");
+        int n = 0;
+        for (int hechas = 1; hechas < lineas; hechas += 6) {
+            sb.append("function int f").append(n).append("(int a, int b, string s) {\n");
+            sb.append("let int t = a + b;\n");
+            if (n > 0) {
+                sb.append("t = t + f").append(n - 1).append("(a, t, s);\n");
+            } else {
+                sb.append("t = t + 1;\n");
+            }
+            sb.append("write s;\n");
+            sb.append("return t + total;\n");
+            sb.append("}\n");
+            n++;
+        }
+        sb.append("total = f").append(n - 1).append("(1, 2, \"x\");\n");
+    }
+
+    // Contexto en memoria que no escribe nada (para medir solo el lexer o el parser)
+    public static ContextoCompilacion contexto() {
+        return new ContextoCompilacion(SalidaTokens.NULA, REGLAS_NULAS, null, new ArrayList<Diagnostico>());
+    }
+
+    static final SalidaReglas REGLAS_NULAS = new SalidaReglas() {
+        @Override
+        public void cabecera() {
+        }
+
+        @Override
+        public void regla(int n) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+}
@@ -0,0 +1,72 @@
+package pl.ts.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ts.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Solo el parser (con el semantico): AnalizadorSintactico.analizar() sobre los tokens ya sacados.
+// Antes de cada llamada se deja la tabla global como la dejaria el lexer (los ids en el mismo orden)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss256m", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SintacticoBench {
+
+    @Param({"GLOBALES", "ANIDADO", "EXPRESIONES", "FUNCIONES"})
+    public Programas.Forma forma;
+
+    @Param({"1000", "100000"})
+    public int lineas;
+
+    private BufferTokens tokens;
+    private final List<String> globales = new ArrayList<>(); // los ids del lexer, sin true y false
+    private ContextoCompilacion ctx;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        ResultadoCompilacion r = new SesionCompilador().compilar(Programas.generar(forma, lineas));
+        tokens = r.tokens;
+        List<TablaSimbolos.Simbolo> simbolos = r.tablas.get(r.tablas.size() - 1).simbolos;
+        for (TablaSimbolos.Simbolo s : simbolos.subList(2, simbolos.size())) {
+            globales.add(s.lexema);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepararTabla() throws IOException {
+        ctx = Programas.contexto();
+        TablaSimbolos ts = ctx.getTablaSimbolos();
+        for (String lexema : globales) {
+            ts.gestionarIdGlobal(lexema);
+        }
+        ctx.finLexico(); // el lexer ya ha terminado: los errores del parser van directos
+    }
+
+    @Benchmark
+    public int analizar() throws IOException {
+        new AnalizadorSintactico(ctx, new Repetidor(tokens)).analizar();
+        return ctx.getNumErrores();
+    }
+
+    // Da los tokens guardados (y el EOF al final, las veces que haga falta)
+    private static class Repetidor implements FuenteTokens {
+
+        private final BufferTokens tokens;
+        private int siguiente;
+
+        Repetidor(BufferTokens tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void siguienteToken(Token destino) {
+            tokens.leer(Math.min(siguiente++, tokens.tam() - 1), destino);
+        }
+    }
+}
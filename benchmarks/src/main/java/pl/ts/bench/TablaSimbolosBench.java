@@ -0,0 +1,101 @@
+package pl.ts.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.ts.SalidaTablas;
+import pl.ts.TablaSimbolos;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Los caminos de la tabla de simbolos que mas se usan, con 'vocabulario' identificadores distintos.
+// Cada llamada hace la operacion con todos ellos (el tiempo es por pasada entera)
+//   - insertarLexico: gestionarIdGlobal con el buffer de caracteres, como el lexer
+//   - insertarString: gestionarIdGlobal con String (el lexer paralelo y el incremental)
+//   - buscarGlobal: buscar() de ids globales, como el parser fuera de las funciones
+//   - buscarPorId: getSimbolo(id), lo que hace el parser con cada id que le llega
+//   - funcion: entrar en una funcion, declarar sus locales, buscarlas (y un global) y salir
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TablaSimbolosBench {
+
+    static final int LOCALES = 8; // por funcion
+
+    @Param({"100", "10000", "1000000"})
+    public int vocabulario;
+
+    private String[] lexemas;
+    private char[][] caracteres;
+    private int[] hashes;
+    private TablaSimbolos llena;
+
+    @Setup
+    public void preparar() {
+        lexemas = new String[vocabulario];
+        caracteres = new char[vocabulario][];
+        hashes = new int[vocabulario];
+        for (int i = 0; i < vocabulario; i++) {
+            lexemas[i] = "v" + Integer.toString(i * 7919 % vocabulario, 36) + "_" + i;
+            caracteres[i] = lexemas[i].toCharArray();
+            hashes[i] = lexemas[i].hashCode();
+        }
+        llena = new TablaSimbolos((SalidaTablas) null);
+        for (String l : lexemas) {
+            llena.gestionarIdGlobal(l);
+        }
+    }
+
+    @Benchmark
+    public int insertarLexico() {
+        TablaSimbolos ts = new TablaSimbolos((SalidaTablas) null);
+        int id = 0;
+        for (int i = 0; i < vocabulario; i++) {
+            id = ts.gestionarIdGlobal(caracteres[i], caracteres[i].length, hashes[i]);
+        }
+        return id;
+    }
+
+    @Benchmark
+    public int insertarString() {
+        TablaSimbolos ts = new TablaSimbolos((SalidaTablas) null);
+        int id = 0;
+        for (String l : lexemas) {
+            id = ts.gestionarIdGlobal(l);
+        }
+        return id;
+    }
+
+    @Benchmark
+    public void buscarGlobal(Blackhole bh) {
+        for (String l : lexemas) {
+            bh.consume(llena.buscar(l));
+        }
+    }
+
+    @Benchmark
+    public void buscarPorId(Blackhole bh) {
+        for (int id = 3; id < vocabulario + 3; id++) {
+            bh.consume(llena.getSimbolo(id));
+        }
+    }
+
+    @Benchmark
+    public void funcion(Blackhole bh) throws IOException {
+        for (int i = 0; i + LOCALES <= vocabulario; i += LOCALES) {
+            llena.entrarBloque(lexemas[i]);
+            for (int j = 1; j < LOCALES; j++) {
+                bh.consume(llena.gestionarId(lexemas[i + j]));
+            }
+            for (int j = 1; j < LOCALES; j++) {
+                bh.consume(llena.buscar(lexemas[i + j]));
+            }
+            bh.consume(llena.buscar(lexemas[i])); // esta en la global
+            llena.salirBloque();
+        }
+        llena.olvidarLocales(); // si no, el registro de locales crece en cada llamada
+    }
+}
@@ -0,0 +1,10 @@
+// Prueba entero donde va un identificador (tiene que dar lo mismo en todos los modos)
+let int 9; // Error: se esperaba identificador. El 9 se toma como el id 9, que es 'g'
+let int a;
+let int b;
+let int c;
+let int d;
+let int e;
+let int f;
+let int g; // Error: 'g' ya declarada (por el 9 de arriba)
+let int g; // Error: 'g' ya declarada
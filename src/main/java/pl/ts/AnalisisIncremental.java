@@ -0,0 +1,827 @@
+package pl.ts;
+
+import java.io.IOException;
+import java.util.*;
+
+import static pl.ts.CodigoToken.*;
+
+// Analisis incremental de un documento (lo usa el ServidorLsp): se queda con el texto, los tokens,
+// las reglas, las tablas y los errores, y con cada cambio solo rehace lo que toca:
+//   - el lexer solo vuelve a leer las lineas cambiadas (en MyJS ningun token pasa de una linea a otra)
+//   - el parser vuelve a empezar en el E de G (un let, una function o una sentencia de fuera) donde
+//     cae el cambio y para en cuanto llega a un E que ya tenia analizado y con el mismo estado
+//     (simbolos globales, desplazamiento y limite de errores). Lo de detras se aprovecha tal cual,
+//     solo se le mueven las lineas
+// Para volver a un E, cada uno guarda como estaba el parser al llegar y los simbolos globales que
+// cambia (como estaban antes y como los deja); con eso se deshacen los cambios desde ese E.
+// El resultado es siempre el mismo que compilando el texto entero. Hay casos que cuestan mas:
+//   - si cambia el orden en que salen por primera vez los ids o las constantes (un nombre nuevo a
+//     mitad del fichero) se renumeran en todos los tokens; es una pasada por los tokens, no se
+//     vuelve a analizar nada
+//   - con un '\0' en el texto (ahi se acaba el fichero) o un entero donde va un id (el parser busca
+//     ese numero en la tabla de simbolos) se compila entero cada vez
+public class AnalisisIncremental {
+
+    private static final int MAX_ERRORES_LEXICOS_POR_LINEA = 2;
+
+    // Un E de G: donde empieza lo suyo en cada lista y como estaba el parser al llegar a el
+    private static class Elemento {
+        int token;
+        int regla;
+        int error;                 // en los errores del parser
+        int tabla;                 // en las tablas de las funciones
+        int desp;
+        int ultimaLineaError = -1; // limite de errores (-1 si no hay errores en la linea del token)
+        int erroresEnLinea;
+        Cambio[] cambios = SIN_CAMBIOS; // simbolos globales que cambia
+        boolean idsPorNumero;           // ha cogido un entero como id
+
+        // lo mismo mas adelante en el texto
+        void mover(int tokens, int reglas, int errores, int tablas, int lineas) {
+            token += tokens;
+            regla += reglas;
+            error += errores;
+            tabla += tablas;
+            if (ultimaLineaError != -1) {
+                ultimaLineaError += lineas;
+            }
+        }
+    }
+
+    // Un simbolo global que cambia un E: como estaba antes y como lo deja
+    private static class Cambio {
+        final TablaSimbolos.Simbolo simbolo;
+        final TablaSimbolos.Simbolo antes;
+        final TablaSimbolos.Simbolo despues;
+
+        Cambio(TablaSimbolos.Simbolo simbolo, TablaSimbolos.Simbolo antes) {
+            this.simbolo = simbolo;
+            this.antes = antes;
+            this.despues = simbolo.copia();
+        }
+    }
+
+    private static final Cambio[] SIN_CAMBIOS = new Cambio[0];
+
+    // Un error del lexer antes de aplicar el limite por linea. 'origen' es la linea que se
+    // estaba leyendo (la de una cadena sin cerrar da un error en la siguiente)
+    private static class ErrorLexico {
+        int linea;
+        int origen;
+        final String mensaje;
+
+        ErrorLexico(int linea, int origen, String mensaje) {
+            this.linea = linea;
+            this.origen = origen;
+            this.mensaje = mensaje;
+        }
+    }
+
+    // El texto por lineas, cada una con su salto ("\n", "\r\n" o "\r"); la ultima no lleva
+    private final ArrayList<String> lineas = new ArrayList<>();
+    private int nulos; // cuantos '\0' hay
+
+    private ContextoCompilacion ctx;
+    private TablaSimbolos ts;
+    private TablaConstantes constantes;
+    private BufferTokens tokens;        // todos, con el EOF al final
+    private int[] primeraId;            // donde sale por primera vez cada id (desde el 3, 1 y 2 son true y false)
+    private int[] primeraConstante;     // lo mismo con las constantes
+
+    private List<ErrorLexico> erroresLexicos;
+    private List<Diagnostico> lexicos;  // los que pasan el limite por linea
+
+    private int[] reglas;
+    private int numReglas;
+    private List<Diagnostico> erroresParser;
+    private List<TablaSimbolos.Tabla> tablas; // las de las funciones, en orden
+    private List<Elemento> elementos;
+    private Elemento fin;               // como queda todo detras del ultimo E
+
+    // a donde escribe el parser mientras analiza
+    private int[] nuevasReglas = new int[256];
+    private int numNuevasReglas;
+    private final List<Diagnostico> nuevosErrores = new ArrayList<>();
+    private final List<TablaSimbolos.Tabla> nuevasTablas = new ArrayList<>();
+
+    private ResultadoCompilacion completo; // si se ha compilado entero (ver arriba)
+    private boolean valido;               // si algo falla a medias se rehace todo en el siguiente cambio
+
+    public AnalisisIncremental(CharSequence texto) throws IOException {
+        reemplazarTodo(texto);
+    }
+
+    // El documento entero nuevo (se analiza todo)
+    public void reemplazarTodo(CharSequence texto) throws IOException {
+        lineas.clear();
+        lineas.add("");
+        nulos = 0;
+        vaciar();
+        editar(0, 0, 0, 0, texto.toString());
+    }
+
+    // Cambia el texto de (lineaIni, colIni) a (lineaFin, colFin) por 'nuevo'.
+    // Lineas y columnas desde 0, como en LSP (si se salen se ajustan al texto)
+    public void editar(int lineaIni, int colIni, int lineaFin, int colFin, String nuevo) throws IOException {
+        int n = lineas.size();
+        lineaIni = Math.max(0, Math.min(lineaIni, n - 1));
+        lineaFin = Math.max(lineaIni, Math.min(lineaFin, n - 1));
+        String primera = lineas.get(lineaIni);
+        String ultima = lineas.get(lineaFin);
+        colIni = Math.max(0, Math.min(colIni, largo(primera)));
+        colFin = Math.max(0, Math.min(colFin, largo(ultima)));
+        if (lineaIni == lineaFin && colFin < colIni) {
+            colFin = colIni;
+        }
+
+        // Lineas a, b (viejas) pasan a ser las de 'trozo'. Un '\r' y un '\n' que quedan juntos
+        // son un solo salto, asi que si pasa se coge tambien la linea de al lado
+        int a = lineaIni;
+        int b = lineaFin;
+        String trozo = primera.substring(0, colIni) + nuevo + ultima.substring(colFin);
+        if (a > 0 && lineas.get(a - 1).endsWith("\r") && trozo.startsWith("\n")) {
+            a--;
+            trozo = lineas.get(a) + trozo;
+        }
+        while (trozo.endsWith("\r") && b + 1 < n) {
+            b++;
+            trozo = trozo + lineas.get(b);
+        }
+        List<String> nuevas = partir(trozo);
+        if (b + 1 < n) {
+            nuevas.remove(nuevas.size() - 1); // lo de detras del ultimo salto es la linea b + 1
+        }
+
+        for (int i = a; i <= b; i++) {
+            nulos -= contarNulos(lineas.get(i));
+        }
+        for (String l : nuevas) {
+            nulos += contarNulos(l);
+        }
+        lineas.subList(a, b + 1).clear();
+        lineas.addAll(a, nuevas);
+
+        if (nulos > 0) {
+            compilarEntero();
+            return;
+        }
+        if (!valido) {
+            reconstruir();
+            return;
+        }
+        valido = false;
+        completo = null;
+        actualizar(a, b, nuevas.size());
+        valido = true;
+        if (hayIdsPorNumero()) {
+            compilarEntero();
+        }
+    }
+
+    // Lo mismo que daria SesionCompilador.compilar(texto()). Los tokens, las constantes y las
+    // tablas son los del analisis, asi que cambian con el siguiente editar()
+    public ResultadoCompilacion resultado() throws IOException {
+        if (!valido && completo == null) {
+            compilarEntero(); // el ultimo cambio fallo a medias
+        }
+        if (completo != null) {
+            return completo;
+        }
+        ResultadoCompilacion r = new ResultadoCompilacion();
+        r.tokens = tokens;
+        r.constantes = constantes;
+        r.reglas = Arrays.copyOf(reglas, numReglas);
+        r.tablas.addAll(tablas);
+        r.tablas.add(ts.getTablaGlobal());
+        r.diagnosticos.addAll(lexicos);
+        r.diagnosticos.addAll(erroresParser);
+        return r;
+    }
+
+    public int numLineas() {
+        return lineas.size();
+    }
+
+    // La linea n (desde 0) sin el salto
+    public String linea(int n) {
+        String l = lineas.get(n);
+        return l.substring(0, largo(l));
+    }
+
+    public String texto() {
+        StringBuilder sb = new StringBuilder();
+        for (String l : lineas) {
+            sb.append(l);
+        }
+        return sb.toString();
+    }
+
+    // --- EL ANALISIS ---
+
+    // Todo vacio, como un documento sin nada (el texto no se toca)
+    private void vaciar() throws IOException {
+        ctx = new ContextoCompilacion(SalidaTokens.NULA, new Reglas(), new Tablas(), nuevosErrores);
+        ctx.finLexico(); // no hay lexer de verdad: los errores del parser van directos
+        ts = ctx.getTablaSimbolos();
+        constantes = new TablaConstantes();
+        tokens = new BufferTokens();
+        tokens.anadir(COD_EOF, -1, lineaEof());
+        primeraId = new int[64];
+        primeraConstante = new int[64];
+        erroresLexicos = new ArrayList<>();
+        lexicos = new ArrayList<>();
+        reglas = new int[256];
+        reglas[0] = 1; // P -> G eof
+        numReglas = 1;
+        erroresParser = new ArrayList<>();
+        tablas = new ArrayList<>();
+        elementos = new ArrayList<>();
+        fin = new Elemento();
+        fin.regla = 1;
+        completo = null;
+        valido = true;
+    }
+
+    private void reconstruir() throws IOException {
+        reemplazarTodo(texto());
+    }
+
+    private void compilarEntero() throws IOException {
+        valido = false; // en el siguiente cambio se vuelve a probar por partes
+        completo = new SesionCompilador().compilar(texto());
+    }
+
+    private boolean hayIdsPorNumero() {
+        for (Elemento e : elementos) {
+            if (e.idsPorNumero) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Las lineas a..b viejas son ahora las 'cuantas' que empiezan en a
+    private void actualizar(int a, int b, int cuantas) throws IOException {
+        int dLineas = cuantas - (b - a + 1);
+
+        // Lexer de las lineas nuevas (las lineas del trozo cuentan desde 1)
+        StringBuilder sb = new StringBuilder();
+        for (int i = a; i < a + cuantas; i++) {
+            sb.append(lineas.get(i));
+        }
+        AnalizadorLexicoParalelo.Trozo trozo = new AnalizadorLexicoParalelo.Trozo();
+        new AnalizadorLexico(Entrada.deTexto(sb), trozo).analizarTrozo();
+        BufferTokens nuevos = trozo.tokens;
+        for (int i = 0; i < nuevos.tam(); i++) {
+            nuevos.setLinea(i, nuevos.linea(i) + a);
+        }
+
+        // Los tokens que estaban en esas lineas (el EOF se queda)
+        int eof = tokens.tam() - 1;
+        int t0 = Math.min(tokens.buscarLinea(a + 1), eof);
+        int t1 = Math.min(tokens.buscarLinea(b + 2), eof);
+        int dTokens = nuevos.tam() - (t1 - t0);
+
+        // Los ids y las constantes del trozo: si siguen saliendo por primera vez en el mismo orden
+        // los numeros de los demas no cambian (las dos cosas se hacen siempre)
+        boolean mismoOrden = numerarIds(nuevos, t0, t1, dTokens);
+        mismoOrden &= numerarConstantes(nuevos, t0, t1, dTokens);
+
+        tokens.reemplazar(t0, t1, nuevos);
+        if (dLineas != 0) {
+            tokens.desplazarLineas(t0 + nuevos.tam(), dLineas);
+        }
+        tokens.setLinea(tokens.tam() - 1, lineaEof());
+        if (!mismoOrden) {
+            renumerar();
+        }
+
+        // Errores del lexer de esas lineas
+        int e0 = primerErrorLexico(a + 1);
+        int e1 = primerErrorLexico(b + 2);
+        List<ErrorLexico> nuevosLexicos = new ArrayList<>();
+        for (int i = 0; i < trozo.errores.size(); i++) {
+            nuevosLexicos.add(new ErrorLexico(trozo.lineasError.get(i) + a, trozo.origenesError.get(i) + a,
+                    trozo.errores.get(i)));
+        }
+        erroresLexicos.subList(e0, e1).clear();
+        erroresLexicos.addAll(e0, nuevosLexicos);
+        if (dLineas != 0) {
+            for (int i = e0 + nuevosLexicos.size(); i < erroresLexicos.size(); i++) {
+                erroresLexicos.get(i).linea += dLineas;
+                erroresLexicos.get(i).origen += dLineas;
+            }
+        }
+        LimiteErrores limite = new LimiteErrores(MAX_ERRORES_LEXICOS_POR_LINEA);
+        lexicos = new ArrayList<>();
+        for (ErrorLexico e : erroresLexicos) {
+            if (limite.admitir(e.linea)) {
+                lexicos.add(new Diagnostico(e.linea, Diagnostico.LEXICO, e.mensaje));
+            }
+        }
+
+        // Parser desde el E que tiene el ultimo token de antes del cambio (ese E mira el siguiente)
+        reanalizar(elementoDe(t0 - 1), t0 + nuevos.tam(), dTokens, dLineas);
+    }
+
+    // Pone a los ids del trozo su numero en la tabla global (los que no estaban van al final).
+    // Devuelve false si ya no salen por primera vez en el mismo orden que antes (hay que renumerar)
+    private boolean numerarIds(BufferTokens nuevos, int t0, int t1, int dTokens) {
+        int siguiente = ts.getTablaGlobal().simbolos.size() + 1; // el id que tendria uno nuevo
+        int p = primerIdDesde(t0, siguiente); // los que salian por primera vez en el trozo: p..q-1
+        int q = primerIdDesde(t1, siguiente);
+        int esperado = p;
+        int creados = siguiente;
+        boolean igual = true;
+        for (int i = 0; i < nuevos.tam(); i++) {
+            if (nuevos.codigo(i) != COD_ID) {
+                continue;
+            }
+            int id = ts.gestionarIdGlobal(nuevos.literal(nuevos.atributo(i)));
+            nuevos.setAtributo(i, id);
+            if (!igual || id < 3 || id < p) {
+                continue; // true, false o uno que ya salia antes del trozo
+            }
+            if (id < q) {
+                if (id == esperado) {
+                    primeraId[id] = t0 + i;
+                    esperado++;
+                } else if (id > esperado) {
+                    igual = false;
+                }
+            } else if (id < siguiente) {
+                igual = false; // salia por primera vez despues del trozo
+            } else if (id == creados) {
+                // nuevo: solo se queda con su numero si no hay ninguno que salga por primera vez detras
+                if (esperado < q || q < siguiente) {
+                    igual = false;
+                } else {
+                    primeraId = asegurar(primeraId, id);
+                    primeraId[id] = t0 + i;
+                }
+                creados++;
+            }
+        }
+        if (esperado < q) {
+            igual = false; // alguno ya no sale en el trozo
+        }
+        if (igual && dTokens != 0) {
+            for (int id = q; id < siguiente; id++) {
+                primeraId[id] += dTokens;
+            }
+        }
+        return igual;
+    }
+
+    // Lo mismo con las constantes (empiezan en 0)
+    private boolean numerarConstantes(BufferTokens nuevos, int t0, int t1, int dTokens) {
+        int siguiente = constantes.tam();
+        int p = primeraDesde(primeraConstante, 0, siguiente, t0);
+        int q = primeraDesde(primeraConstante, 0, siguiente, t1);
+        int esperado = p;
+        int creadas = siguiente;
+        boolean igual = true;
+        for (int i = 0; i < nuevos.tam(); i++) {
+            int codigo = nuevos.codigo(i);
+            if (codigo != COD_CE && codigo != COD_CR && codigo != COD_CAD) {
+                continue;
+            }
+            int k = constantes.anadir(codigo, nuevos.literal(nuevos.atributo(i)), nuevos.valor(i));
+            nuevos.setAtributo(i, k);
+            if (!igual || k < p) {
+                continue;
+            }
+            if (k < q) {
+                if (k == esperado) {
+                    primeraConstante[k] = t0 + i;
+                    esperado++;
+                } else if (k > esperado) {
+                    igual = false;
+                }
+            } else if (k < siguiente) {
+                igual = false;
+            } else if (k == creadas) {
+                if (esperado < q || q < siguiente) {
+                    igual = false;
+                } else {
+                    primeraConstante = asegurar(primeraConstante, k);
+                    primeraConstante[k] = t0 + i;
+                }
+                creadas++;
+            }
+        }
+        if (esperado < q) {
+            igual = false;
+        }
+        if (igual && dTokens != 0) {
+            for (int k = q; k < siguiente; k++) {
+                primeraConstante[k] += dTokens;
+            }
+        }
+        return igual;
+    }
+
+    // Vuelve a numerar los ids y las constantes por orden de aparicion, como el lexer
+    private void renumerar() {
+        TablaSimbolos.Tabla global = ts.getTablaGlobal();
+        List<TablaSimbolos.Simbolo> orden = new ArrayList<>();
+        orden.add(global.simbolos.get(0)); // true
+        orden.add(global.simbolos.get(1)); // false
+        int[] nuevoId = new int[global.simbolos.size() + 1];
+        nuevoId[1] = 1;
+        nuevoId[2] = 2;
+        primeraId = new int[nuevoId.length];
+
+        TablaConstantes nuevas = new TablaConstantes();
+        primeraConstante = new int[Math.max(64, constantes.tam())];
+
+        for (int i = 0; i < tokens.tam(); i++) {
+            int codigo = tokens.codigo(i);
+            int atributo = tokens.atributo(i);
+            if (codigo == COD_ID) {
+                if (nuevoId[atributo] == 0) {
+                    orden.add(ts.getSimbolo(atributo));
+                    nuevoId[atributo] = orden.size();
+                    primeraId[orden.size()] = i;
+                }
+                tokens.setAtributo(i, nuevoId[atributo]);
+            } else if (codigo == COD_CE || codigo == COD_CR || codigo == COD_CAD) {
+                int antes = nuevas.tam();
+                int k = nuevas.anadir(codigo, constantes.texto(atributo), constantes.valor(atributo));
+                if (nuevas.tam() > antes) {
+                    primeraConstante[k] = i;
+                }
+                tokens.setAtributo(i, k);
+            }
+        }
+        ts.reordenarGlobales(orden); // los que ya no salen se quedan fuera
+        constantes = nuevas;
+    }
+
+    // Vuelve a analizar desde el E k hasta que coincide con lo que ya habia.
+    // 'desde' es el primer token de detras del cambio (ya en su sitio nuevo)
+    private void reanalizar(int k, int desde, int dTokens, int dLineas) throws IOException {
+        Elemento inicio = k < elementos.size() ? elementos.get(k) : fin;
+
+        // Los simbolos globales como estaban al llegar al E k
+        for (int u = elementos.size() - 1; u >= k; u--) {
+            Cambio[] cs = elementos.get(u).cambios;
+            for (int j = cs.length - 1; j >= 0; j--) {
+                cs[j].simbolo.copiarAtributos(cs[j].antes);
+            }
+        }
+        ts.olvidarLocales();
+
+        numNuevasReglas = 0;
+        nuevosErrores.clear();
+        nuevasTablas.clear();
+        Lector lector = new Lector(inicio.token);
+        AnalizadorSintactico parser = new AnalizadorSintactico(ctx, lector);
+        parser.restaurar(inicio.desp, inicio.ultimaLineaError, inicio.erroresEnLinea);
+
+        List<Elemento> nuevos = new ArrayList<>();
+        Map<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> apuntados = new LinkedHashMap<>();
+        // para comparar el estado: como dejan los simbolos los E viejos desde k y como estaban en k
+        Map<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> dejanViejos = new IdentityHashMap<>();
+        Map<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> antesNuevos = new IdentityHashMap<>();
+        int viejosVistos = k;
+        int m = -1; // el E viejo en el que se vuelve a coincidir
+        Elemento e;
+        while (true) {
+            e = estado(parser, lector, inicio);
+            if (e.token >= desde) {
+                int viejo = buscarElemento(e.token - dTokens, k);
+                if (viejo >= 0) {
+                    for (; viejosVistos < viejo; viejosVistos++) {
+                        for (Cambio c : elementos.get(viejosVistos).cambios) {
+                            dejanViejos.put(c.simbolo, c.despues);
+                        }
+                    }
+                    if (mismoEstado(e, elementos.get(viejo), dLineas, dejanViejos, antesNuevos)) {
+                        m = viejo;
+                        break;
+                    }
+                }
+            }
+
+            apuntados.clear();
+            ts.apuntarCambios(apuntados);
+            int porNumero = parser.getIdsPorNumero();
+            boolean hay;
+            try {
+                hay = parser.elemento();
+            } finally {
+                ts.apuntarCambios(null);
+            }
+            if (!hay) {
+                break;
+            }
+            if (!apuntados.isEmpty()) {
+                e.cambios = new Cambio[apuntados.size()];
+                int j = 0;
+                for (Map.Entry<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> c : apuntados.entrySet()) {
+                    e.cambios[j++] = new Cambio(c.getKey(), c.getValue());
+                    antesNuevos.putIfAbsent(c.getKey(), c.getValue());
+                }
+            }
+            e.idsPorNumero = parser.getIdsPorNumero() != porNumero;
+            nuevos.add(e);
+        }
+
+        // Se cambia lo de k..m-1 por lo nuevo (sin m, hasta el final). Lo de detras se queda en
+        // su sitio, con las lineas movidas; lo que hacia el resto se quita y se vuelve a hacer
+        numReglas = fin.regla;
+        erroresParser.subList(fin.error, erroresParser.size()).clear();
+        int hasta = m >= 0 ? m : elementos.size();
+        Elemento em = m >= 0 ? elementos.get(m) : fin;
+        int dReglas = e.regla - em.regla;
+        int dErrores = e.error - em.error;
+        int dTablas = e.tabla - em.tabla;
+
+        if (numReglas + dReglas > reglas.length) {
+            reglas = Arrays.copyOf(reglas, Math.max(numReglas + dReglas, reglas.length * 2));
+        }
+        if (dReglas != 0) {
+            System.arraycopy(reglas, em.regla, reglas, em.regla + dReglas, numReglas - em.regla);
+        }
+        System.arraycopy(nuevasReglas, 0, reglas, inicio.regla, numNuevasReglas);
+        numReglas += dReglas;
+
+        if (dLineas != 0) {
+            for (int i = em.error; i < erroresParser.size(); i++) {
+                Diagnostico d = erroresParser.get(i);
+                erroresParser.set(i, new Diagnostico(d.linea + dLineas, d.tipo, d.mensaje));
+            }
+            for (TablaSimbolos.Tabla t : tablas.subList(em.tabla, tablas.size())) {
+                t.lineaInicio += dLineas;
+                t.lineaFin += dLineas;
+                for (TablaSimbolos.Simbolo s : t.simbolos) {
+                    if (s.linea > 0) {
+                        s.linea += dLineas;
+                    }
+                }
+            }
+        }
+        erroresParser.subList(inicio.error, em.error).clear();
+        erroresParser.addAll(inicio.error, nuevosErrores);
+        tablas.subList(inicio.tabla, em.tabla).clear();
+        tablas.addAll(inicio.tabla, nuevasTablas);
+
+        for (Elemento v : elementos.subList(hasta, elementos.size())) {
+            rehacer(v, dLineas);
+            v.mover(dTokens, dReglas, dErrores, dTablas, dLineas);
+        }
+        elementos.subList(k, hasta).clear();
+        elementos.addAll(k, nuevos);
+        if (m >= 0) {
+            fin.mover(dTokens, dReglas, dErrores, dTablas, dLineas);
+        } else {
+            fin = e; // se ha acabado el programa antes
+        }
+        // la global es la 1; las de delante del cambio no se mueven
+        int ultimaTabla = dTablas == 0 ? inicio.tabla + nuevasTablas.size() : tablas.size();
+        for (int i = inicio.tabla; i < ultimaTabla; i++) {
+            tablas.get(i).id = i + 2;
+        }
+
+        // Lo de detras del ultimo E se hace siempre (son un par de tokens)
+        numNuevasReglas = 0;
+        nuevosErrores.clear();
+        AnalizadorSintactico cola = new AnalizadorSintactico(ctx, new Lector(fin.token));
+        cola.restaurar(fin.desp, fin.ultimaLineaError, fin.erroresEnLinea);
+        cola.terminar();
+        if (numReglas + numNuevasReglas > reglas.length) {
+            reglas = Arrays.copyOf(reglas, numReglas + numNuevasReglas);
+        }
+        System.arraycopy(nuevasReglas, 0, reglas, numReglas, numNuevasReglas);
+        numReglas += numNuevasReglas;
+        erroresParser.addAll(nuevosErrores);
+        nuevosErrores.clear();
+    }
+
+    // Como esta el parser ahora (antes de analizar el siguiente E)
+    private Elemento estado(AnalizadorSintactico parser, Lector lector, Elemento inicio) {
+        Elemento e = new Elemento();
+        e.token = lector.actual();
+        e.regla = inicio.regla + numNuevasReglas;
+        e.error = inicio.error + nuevosErrores.size();
+        e.tabla = inicio.tabla + nuevasTablas.size();
+        e.desp = parser.getDesp();
+        // los errores que vengan seran de la linea de este token o de despues, asi que el
+        // limite solo importa si el ultimo error fue en esta linea
+        LimiteErrores limite = parser.getLimiteErrores();
+        if (limite.getUltimaLinea() == tokens.linea(e.token)) {
+            e.ultimaLineaError = limite.getUltimaLinea();
+            e.erroresEnLinea = limite.getEnLinea();
+        }
+        return e;
+    }
+
+    // true si el parser esta igual que cuando llego al E viejo (con las lineas movidas)
+    private static boolean mismoEstado(Elemento e, Elemento viejo, int dLineas,
+                                       Map<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> dejanViejos,
+                                       Map<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> antesNuevos) {
+        if (e.desp != viejo.desp) {
+            return false;
+        }
+        int ultima = viejo.ultimaLineaError == -1 ? -1 : viejo.ultimaLineaError + dLineas;
+        if (e.ultimaLineaError != ultima || e.erroresEnLinea != viejo.erroresEnLinea) {
+            return false;
+        }
+        // solo pueden ser distintos los simbolos que han tocado los E viejos o los nuevos
+        for (Map.Entry<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> c : dejanViejos.entrySet()) {
+            if (!c.getKey().mismosAtributos(c.getValue())) {
+                return false;
+            }
+        }
+        for (Map.Entry<TablaSimbolos.Simbolo, TablaSimbolos.Simbolo> c : antesNuevos.entrySet()) {
+            if (!dejanViejos.containsKey(c.getKey()) && !c.getKey().mismosAtributos(c.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Vuelve a aplicar los cambios de un E viejo que se aprovecha. Los atributos quedan como
+    // los dejaba; la linea solo si la cambiaba el (y entonces movida). Las copias se ponen al dia
+    private static void rehacer(Elemento v, int dLineas) {
+        for (Cambio c : v.cambios) {
+            boolean cambiaLinea = c.despues.linea != c.antes.linea;
+            int linea = cambiaLinea ? c.despues.linea + dLineas : c.simbolo.linea;
+            c.antes.copiarAtributos(c.simbolo);
+            c.simbolo.copiarAtributos(c.despues);
+            c.simbolo.linea = linea;
+            c.despues.linea = linea;
+        }
+    }
+
+    // El E que tiene el token i (elementos.size() si esta detras del ultimo E)
+    private int elementoDe(int i) {
+        if (i < 0 || elementos.isEmpty()) {
+            return 0;
+        }
+        if (i >= fin.token) {
+            return elementos.size();
+        }
+        int bajo = 0;
+        int alto = elementos.size() - 1;
+        while (bajo < alto) {
+            int medio = (bajo + alto + 1) >>> 1;
+            if (elementos.get(medio).token <= i) {
+                bajo = medio;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return bajo;
+    }
+
+    // El E (de k en adelante) que empieza en el token i, o -1
+    private int buscarElemento(int i, int k) {
+        int bajo = k;
+        int alto = elementos.size() - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int t = elementos.get(medio).token;
+            if (t == i) {
+                return medio;
+            } else if (t < i) {
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int primerIdDesde(int token, int siguiente) {
+        return primeraDesde(primeraId, 3, siguiente, token);
+    }
+
+    // El primero de desde..hasta-1 que sale por primera vez en 'token' o despues (van en orden)
+    private static int primeraDesde(int[] primera, int desde, int hasta, int token) {
+        int bajo = desde;
+        int alto = hasta;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (primera[medio] < token) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    private int primerErrorLexico(int origen) {
+        int i = 0;
+        while (i < erroresLexicos.size() && erroresLexicos.get(i).origen < origen) {
+            i++;
+        }
+        return i;
+    }
+
+    // El EOF va en la linea siguiente a la ultima (una ultima linea vacia no cuenta)
+    private int lineaEof() {
+        int n = lineas.size();
+        return lineas.get(n - 1).isEmpty() ? n : n + 1;
+    }
+
+    private static int[] asegurar(int[] a, int i) {
+        return i < a.length ? a : Arrays.copyOf(a, Math.max(i + 1, a.length * 2));
+    }
+
+    // Parte el texto en lineas con su salto (siempre hay una ultima, sin salto y quiza vacia)
+    private static List<String> partir(String s) {
+        List<String> l = new ArrayList<>();
+        int ini = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < s.length() && s.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                l.add(s.substring(ini, i + 1));
+                ini = i + 1;
+            }
+        }
+        l.add(s.substring(ini));
+        return l;
+    }
+
+    // largo de la linea sin el salto
+    private static int largo(String l) {
+        int n = l.length();
+        if (n > 0 && l.charAt(n - 1) == '\n') {
+            n--;
+        }
+        if (n > 0 && l.charAt(n - 1) == '\r') {
+            n--;
+        }
+        return n;
+    }
+
+    private static int contarNulos(String l) {
+        int n = 0;
+        for (int i = l.indexOf('\0'); i >= 0; i = l.indexOf('\0', i + 1)) {
+            n++;
+        }
+        return n;
+    }
+
+    // Los tokens ya analizados, para el parser, desde uno cualquiera (despues del EOF, el EOF)
+    private class Lector implements FuenteTokens {
+
+        private int siguiente;
+
+        Lector(int desde) {
+            this.siguiente = desde;
+        }
+
+        @Override
+        public void siguienteToken(Token destino) {
+            tokens.leer(Math.min(siguiente, tokens.tam() - 1), destino);
+            siguiente++;
+        }
+
+        // el token actual del parser (el ultimo que ha pedido)
+        int actual() {
+            return Math.min(siguiente - 1, tokens.tam() - 1);
+        }
+    }
+
+    private class Reglas implements SalidaReglas {
+
+        @Override
+        public void cabecera() {
+        }
+
+        @Override
+        public void regla(int n) {
+            if (numNuevasReglas == nuevasReglas.length) {
+                nuevasReglas = Arrays.copyOf(nuevasReglas, numNuevasReglas * 2);
+            }
+            nuevasReglas[numNuevasReglas++] = n;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private class Tablas implements SalidaTablas {
+
+        @Override
+        public void tabla(TablaSimbolos.Tabla t) {
+            nuevasTablas.add(t);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,184 +1,236 @@
 package pl.ts;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+
+import static pl.ts.CodigoToken.*;
 
 // El Lexer se encarga de trocear el codigo en tokens
-public class AnalizadorLexico {
+public class AnalizadorLexico implements FuenteTokens {
 
-    private String codigo;
-    private int pos;                 // por donde vamos leyendo el string
+    private Entrada entrada;         // de donde leemos los caracteres
     private int linea;               // para saber en que linea estamos si hay error
-    private BufferedWriter tokOut;   // donde escribimos los tokens
-    private List<String> errores;    // para ir guardando los errores que salgan
-    private List<Token> listaTokens; // lista para pasarle luego al parser
-    private String rutaErrores;
+    private SalidaTokens tokOut;     // donde escribimos los tokens
+    private Token destino;           // donde dejamos el token que nos ha pedido el parser
+    private boolean hayToken;        // si escanear() ya ha rellenado destino
+    private boolean fin;             // ya hemos llegado al final del fichero
+    private int lineaFin;            // linea del EOF, para repetirlo
+    private ContextoCompilacion ctx;
+    private TablaSimbolos ts;
+    private TablaConstantes constantes; // numeros y cadenas, sin repetir
     
+    // Clases de caracteres para decidir que hacer con cada uno
+    private static final byte OTRO = 0, FIN = 1, BLANCO = 2, SALTO = 3, DIGITO = 4, LETRA = 5,
+            COMILLA = 6, BARRA = 7, SIMPLE = 8, IGUAL = 9, PORCENTAJE = 10;
+    private static final byte[] CLASES = new byte[256];
+    private static final int[] SIMPLES = new int[256]; // codigo de los simbolos de un caracter
+
+    // palabras reservadas colocadas por su hash (ver hashReservada)
+    private static final char[][] RESERVADAS = new char[16][];
+    private static final int[] CODIGOS_RESERVADAS = new int[16];
+
+    static {
+        CLASES['\0'] = FIN;
+        CLASES[' '] = BLANCO;
+        CLASES['\t'] = BLANCO;
+        CLASES['\r'] = BLANCO;
+        CLASES['\n'] = SALTO;
+        for (char c = '0'; c <= '9'; c++) CLASES[c] = DIGITO;
+        for (char c = 'a'; c <= 'z'; c++) CLASES[c] = LETRA;
+        for (char c = 'A'; c <= 'Z'; c++) CLASES[c] = LETRA;
+        CLASES['_'] = LETRA;
+        CLASES['"'] = COMILLA;
+        CLASES['/'] = BARRA;
+        CLASES['='] = IGUAL;
+        CLASES['%'] = PORCENTAJE;
+
+        String simbolos = "+!;(){},";
+        int[] codigos = {COD_SUM, COD_LOG, COD_PC, COD_PARIZQ, COD_PARDER, COD_LLIZQ, COD_LLDER, COD_COMA};
+        for (int i = 0; i < simbolos.length(); i++) {
+            CLASES[simbolos.charAt(i)] = SIMPLE;
+            SIMPLES[simbolos.charAt(i)] = codigos[i];
+        }
+
+        for (int codigo = PR_LET; codigo <= PR_READ; codigo++) {
+            // el nombre en tokens.txt es "PR_" + la palabra
+            char[] pr = CodigoToken.nombre(codigo).substring(3).toCharArray();
+            int h = hashReservada(pr, pr.length);
+            if (RESERVADAS[h] != null) {
+                throw new IllegalStateException("el hash de palabras reservadas tiene colisiones");
+            }
+            RESERVADAS[h] = pr;
+            CODIGOS_RESERVADAS[h] = codigo;
+        }
+    }
+
+    private char[] buf = new char[64]; // caracteres del id, numero o cadena que se esta leyendo
+
     // para no poner mil errores si en una linea todo esta mal
-    private int lineaUltimoErrorLexico = -1;
-    private int contadorErrores = 0;
+    private static final int MAX_ERRORES_POR_LINEA = 2;
+    private LimiteErrores limiteErrores = new LimiteErrores(MAX_ERRORES_POR_LINEA);
+
+    // Si no es null estamos leyendo solo un trozo del fichero (lexer paralelo) o un lote
+    // (lexer segmentado): los tokens y los errores se guardan ahi y la tabla de simbolos no se toca
+    private AnalizadorLexicoParalelo.Trozo trozo;
 
-    public AnalizadorLexico(String rutaFuente, String rutaTokens, String rutaErrores) throws IOException {
-        this.codigo = leerArchivo(rutaFuente);
-        this.pos = 0;
+    public AnalizadorLexico(ContextoCompilacion ctx, Entrada entrada) {
+        this.entrada = entrada;
         this.linea = 1;
-        this.tokOut = new BufferedWriter(new FileWriter(rutaTokens, false));
-        this.errores = new ArrayList<String>();
-        this.listaTokens = new ArrayList<Token>();
-        this.rutaErrores = rutaErrores;
+        this.ctx = ctx;
+        this.ts = ctx.getTablaSimbolos();
+        this.constantes = ctx.getConstantes();
+        this.tokOut = ctx.getSalidaTokens();
     }
 
-    // El metodo principal que recorre todo el fichero
-    public void analizar() throws IOException {
-        char c;
+    // Lexer para un trozo (las lineas se cuentan desde 1 dentro del trozo)
+    AnalizadorLexico(Entrada entrada, AnalizadorLexicoParalelo.Trozo trozo) {
+        this.entrada = entrada;
+        this.linea = 1;
+        this.trozo = trozo;
+    }
 
-        while (true) {
-            c = siguienteCaracter();
+    // Lee el trozo entero
+    void analizarTrozo() throws IOException {
+        while (!trozo.terminado) {
+            escanear();
+        }
+        trozo.lineas = linea - 1;
+    }
+
+    // Lexer segmentado: sigue donde se quedo y deja en t unos maxTokens (menos si se acaba
+    // el fichero). Las lineas vuelven a contar desde 1 en cada lote, como en los trozos
+    void analizarLote(AnalizadorLexicoParalelo.Trozo t, int maxTokens) throws IOException {
+        trozo = t;
+        linea = 1;
+        while (!t.terminado && t.tokens.tam() < maxTokens) {
+            escanear();
+        }
+        t.lineas = linea - 1;
+    }
+
+    // El parser nos va pidiendo los tokens de uno en uno
+    // Cuando se acaba el fichero devolvemos siempre el EOF
+    public void siguienteToken(Token destino) throws IOException {
+        if (fin) {
+            destino.codigo = COD_EOF;
+            destino.atributo = -1;
+            destino.linea = lineaFin;
+            return;
+        }
+        this.destino = destino;
+        hayToken = false;
+        while (!hayToken) {
+            escanear();
+        }
+        this.destino = null;
+    }
+
+    // Avanza hasta sacar un token, saltarse algo o apuntar un error
+    // Lo que hacer con el primer caracter se decide por su clase (una tabla), sin ir
+    // comparando con cada simbolo
+    private void escanear() throws IOException {
+        char c = siguienteCaracter();
 
-            if (c == '\0') {
+        switch (clase(c)) {
+            case FIN:
+                if (trozo != null && entrada.agotada()) {
+                    trozo.terminado = true; // se acabo el trozo, no el fichero
+                    return;
+                }
                 // fin del archivo, metemos el token de EOF
-                escribirToken("cod_eof", null);
-                break;
-            }
+                escribirToken(COD_EOF);
+                terminar();
+                return;
 
-            // ignoramos espacios, tabuladores y retornos de carro
-            if (c == ' ' || c == '\t' || c == '\r') {
-                continue;
-            }
+            case BLANCO:
+                // ignoramos espacios, tabuladores y retornos de carro
+                return;
 
-            // si es un salto de linea, sumamos 1 al contador
-            if (c == '\n') {
+            case SALTO:
+                // si es un salto de linea, sumamos 1 al contador
                 linea++;
-                continue;
-            }
+                return;
 
-            // si es un numero, vamos a leerlo entero
-            if (esDigito(c)) {
+            case DIGITO:
+                // si es un numero, vamos a leerlo entero
                 retroceder();
                 leerNumero();
-                continue;
-            }
+                return;
 
-            // si empieza por letra o _, puede ser id o palabra reservada
-            if (esLetra(c) || c == '_') {
-                retroceder();
-                leerIdentificador();
-                continue;
-            }
+            case LETRA:
+                // si empieza por letra o _, puede ser id o palabra reservada
+                leerIdentificador(c);
+                return;
 
-            // si empieza por comillas, es una cadena
-            if (c == '"') {
+            case COMILLA:
+                // si empieza por comillas, es una cadena
                 leerCadena();
-                continue;
-            }
+                return;
 
-            // comentarios que empiezan por // (solo de una linea)
-            if (c == '/') {
-                char sig = mirarSiguiente();
-                if (sig == '/') {
+            case BARRA:
+                // comentarios que empiezan por // (solo de una linea)
+                if (mirarSiguiente() == '/') {
                     siguienteCaracter(); // saltamos el segundo /
                     saltarComentario();
                 } else {
                     registrarError("caracter '/' no permitido (solo comentarios //)");
                 }
-                continue;
-            }
-            
-
-            // Simbolos simples
-            if (c == '+') {
-                escribirToken("cod_sum", null);
-                continue;
-            }
-
-            if (c == '!') {
-                escribirToken("cod_log", null);
-                continue;
-            }
-
-            if (c == ';') {
-                escribirToken("cod_pc", null);
-                continue;
-            }
-
-            if (c == '(') {
-                escribirToken("cod_parIzq", null);
-                continue;
-            }
-
-            if (c == ')') {
-                escribirToken("cod_parDer", null);
-                continue;
-            }
-
-            if (c == '{') {
-                escribirToken("cod_LLizq", null);
-                continue;
-            }
-
-            if (c == '}') {
-                escribirToken("cod_LLder", null);
-                continue;
-            }
+                return;
 
-            if (c == ',') {
-                escribirToken("cod_coma", null);
-                continue;
-            }
+            case SIMPLE:
+                // + ! ; ( ) { } , (el codigo sale de otra tabla)
+                escribirToken(SIMPLES[c]);
+                return;
 
-            // comprobamos si es = o ==
-            if (c == '=') {
-                char sig = mirarSiguiente();
-                if (sig == '=') {
+            case IGUAL:
+                // comprobamos si es = o ==
+                if (mirarSiguiente() == '=') {
                     siguienteCaracter();
-                    escribirToken("cod_rel", null); // ==
+                    escribirToken(COD_REL); // ==
                 } else {
-                    escribirToken("cod_asig", null); // =
+                    escribirToken(COD_ASIG); // =
                 }
-                continue;
-            }
+                return;
 
-            // comprobamos si es %=
-            if (c == '%') {
-                char sig = mirarSiguiente();
-                if (sig == '=') {
+            case PORCENTAJE:
+                // comprobamos si es %=
+                if (mirarSiguiente() == '=') {
                     siguienteCaracter();
-                    escribirToken("cod_asigRes", null); // %=
+                    escribirToken(COD_ASIGRES); // %=
                 } else {
                     registrarError("operador % sin = no permitido");
                 }
-                continue;
-            }
-
-            // si llegamos aqui es que no sabemos que es
-            registrarError("caracter no reconocido: '" + c + "'");
-        }
-
-        tokOut.close();
+                return;
 
-        // Al final, guardamos todos los errores en su fichero
-        BufferedWriter errOut = new BufferedWriter(new FileWriter(rutaErrores, false));
-        for (String e : errores) {
-            errOut.write(e);
-            errOut.newLine();
+            default:
+                // si llegamos aqui es que no sabemos que es
+                registrarError("caracter no reconocido: '" + c + "'");
         }
-        errOut.close();
     }
 
-    // para que el parser pueda pedirnos los tokens mas tarde
-    public List<Token> getTokens() {
-        return listaTokens;
+    // Se acabo el fichero: vaciamos los tokens y dejamos pasar los errores del parser
+    private void terminar() throws IOException {
+        if (trozo != null) {
+            trozo.eof = true;
+            trozo.terminado = true;
+            return;
+        }
+        fin = true;
+        lineaFin = linea;
+        tokOut.flush();
+        ctx.finLexico();
     }
 
     // funcion para leer numeros (pueden ser 123 o 12.34)
     private void leerNumero() throws IOException {
-        StringBuilder sb = new StringBuilder();
+        int len = 0;
+        int hash = 0;
         char c = siguienteCaracter();
 
         // parte de delante del punto
         while (esDigito(c)) {
-            sb.append(c);
+            len = guardar(len, c);
+            hash = 31 * hash + c;
             c = siguienteCaracter();
         }
 
@@ -189,10 +241,12 @@ public class AnalizadorLexico {
             char despuesPunto = mirarSiguiente();
             if (esDigito(despuesPunto)) {
                 esReal = true;
-                sb.append(c); 
+                len = guardar(len, c);
+                hash = 31 * hash + c;
                 c = siguienteCaracter(); 
                 while (esDigito(c)) {
-                    sb.append(c);
+                    len = guardar(len, c);
+                    hash = 31 * hash + c;
                     c = siguienteCaracter();
                 }
             } else {
@@ -203,13 +257,17 @@ public class AnalizadorLexico {
         // volvemos un paso atras para no comernos el siguiente token
         retroceder();
 
-        String lexema = sb.toString();
+        // si ya ha salido antes es valido y ya esta convertido
+        if (constanteRepetida(esReal ? COD_CR : COD_CE, len, hash)) {
+            return;
+        }
+        String lexema = new String(buf, 0, len);
 
         if (!esReal) {
             try {
                 int valor = Integer.parseInt(lexema);
                 if (valor < 32767) {
-                    escribirToken("cod_ce", lexema);
+                    escribirLiteral(COD_CE, lexema, valor);
                 } else {
                     registrarError("entero fuera de rango (debe ser menor que 32767)");
                 }
@@ -221,7 +279,7 @@ public class AnalizadorLexico {
                 double valor = Double.parseDouble(lexema);
                 // limite que nos han puesto en la documentacion
                 if (valor < 117549436.0) {
-                    escribirToken("cod_cr", lexema);
+                    escribirLiteral(COD_CR, lexema, valor);
                 } else {
                     registrarError("real fuera de rango (debe ser menor que 117549436.0)");
                 }
@@ -232,35 +290,42 @@ public class AnalizadorLexico {
     }
 
     // para leer variables o palabras como function, let...
-    private void leerIdentificador() throws IOException {
-        StringBuilder sb = new StringBuilder();
-        char c = siguienteCaracter();
-
-        while (esLetra(c) || esDigito(c) || c == '_') {
-            sb.append(c);
+    // Los caracteres se van dejando en 'buf' (se reutiliza) y de paso se calcula su
+    // hash; con eso la tabla de simbolos encuentra el id sin crear ningun String
+    private void leerIdentificador(char c) throws IOException {
+        int len = 0;
+        int hash = 0;
+        do {
+            len = guardar(len, c);
+            hash = 31 * hash + c;
             c = siguienteCaracter();
-        }
+        } while (esParteId(c));
 
         retroceder();
 
-        String lexema = sb.toString();
-        String codigoPR = codigoReservada(lexema);
+        int codigoPR = codigoReservada(buf, len);
 
         // si es palabra reservada mandamos su codigo, si no, es un ID normal
-        if (codigoPR != null) {
-            escribirToken(codigoPR, null);
+        if (codigoPR >= 0) {
+            escribirToken(codigoPR);
+        } else if (trozo != null) {
+            // en un trozo guardamos el lexema, el id se pone al juntar los trozos en orden
+            trozo.tokens.anadir(COD_ID, trozo.tokens.anadirLiteral(new String(buf, 0, len)), linea);
         } else {
-            // si es un ID, lo metemos en la tabla de simbolos
-            int handle = TablaSimbolos.gestionarId(lexema);
-            escribirToken("cod_id", String.valueOf(handle));
+            // si es un ID, lo metemos en la tabla de simbolos (siempre en la global,
+            // aunque el parser ya este dentro de una funcion)
+            int handle = ts.gestionarIdGlobal(buf, len, hash);
+            tokOut.id(handle);
+            dejarToken(COD_ID, handle);
         }
     }
 
     // lee cadenas que van entre " "
     private void leerCadena() throws IOException {
-        StringBuilder sb = new StringBuilder();
         int longitud = 0;
+        int hash = 0;
         boolean cerrada = false;
+        int lineaCadena = linea; // el segundo error de una cadena sin cerrar ya sale en la siguiente
 
         char c = siguienteCaracter();
 
@@ -274,18 +339,19 @@ public class AnalizadorLexico {
                 cerrada = true;
                 break;
             }
-            sb.append(c);
-            longitud++;
+            longitud = guardar(longitud, c);
+            hash = 31 * hash + c;
             c = siguienteCaracter();
         }
 
         if (!cerrada) {
-            registrarError("cadena no cerrada");
+            registrarError("cadena no cerrada", lineaCadena);
         } else {
             // maximo 64 caracteres
             if (longitud < 64) {
-                String lexema = sb.toString();
-                escribirToken("cod_cad", "\"" + lexema + "\"");
+                if (!constanteRepetida(COD_CAD, longitud, hash)) {
+                    escribirLiteral(COD_CAD, new String(buf, 0, longitud), 0);
+                }
             } else {
                 registrarError("cadena demasiado larga (maximo 63 caracteres)");
             }
@@ -294,101 +360,138 @@ public class AnalizadorLexico {
 
     // se salta lo que hay detras de // hasta el final de linea
     private void saltarComentario() {
+        entrada.saltarHastaFinDeLinea();
         char c = siguienteCaracter();
-        while (c != '\n' && c != '\0') {
-            c = siguienteCaracter();
-        }
         if (c == '\n') {
             linea++;
         }
     }
 
-    // para escribir el token tanto en el fichero como en la lista de memoria
-    private void escribirToken(String codigo, String atributo) throws IOException {
-        String attr = (atributo == null) ? "" : atributo;
+    // para escribir un token sin atributo en el fichero y dejarselo preparado al parser
+    private void escribirToken(int codigo) throws IOException {
+        if (trozo != null) {
+            trozo.tokens.anadir(codigo, -1, linea);
+            return;
+        }
+        tokOut.token(codigo);
+        dejarToken(codigo, -1);
+    }
 
-        if (attr.equals("")) {
-            tokOut.write("<" + codigo + ",>");
-        } else {
-            tokOut.write("<" + codigo + "," + attr + ">");
+    // mete c en buf[len] (agrandandolo si hace falta) y devuelve la nueva longitud
+    private int guardar(int len, char c) {
+        if (len == buf.length) {
+            buf = Arrays.copyOf(buf, len * 2);
         }
-        tokOut.newLine();
+        buf[len] = c;
+        return len + 1;
+    }
 
-        listaTokens.add(new Token(codigo, attr, linea));
+    // numeros y cadenas: van a la tabla de constantes y el token lleva su posicion
+    // (las cadenas sin comillas, se ponen al escribir tokens.txt)
+    private void escribirLiteral(int codigo, String texto, double valor) throws IOException {
+        if (trozo != null) {
+            trozo.tokens.anadir(codigo, trozo.tokens.anadirLiteral(texto), linea, valor);
+            return;
+        }
+        escribirConstante(constantes.anadir(codigo, texto, valor));
     }
 
-    // lee todo el fichero JS de golpe a un String
-    private String leerArchivo(String ruta) throws IOException {
-        BufferedReader br = new BufferedReader(new FileReader(ruta));
-        StringBuilder sb = new StringBuilder();
-        String lineaLeida;
-        while ((lineaLeida = br.readLine()) != null) {
-            sb.append(lineaLeida);
-            sb.append('\n');
+    // Si la constante que hay en buf ya esta en la tabla, saca el token sin crear nada
+    private boolean constanteRepetida(int codigo, int len, int hash) throws IOException {
+        if (trozo != null) {
+            return false; // los trozos no usan la tabla (se junta luego, en orden)
+        }
+        int k = constantes.buscar(codigo, buf, len, hash);
+        if (k < 0) {
+            return false;
         }
-        br.close();
-        return sb.toString();
+        escribirConstante(k);
+        return true;
+    }
+
+    private void escribirConstante(int k) throws IOException {
+        int codigo = constantes.codigo(k);
+        tokOut.constante(codigo, k, constantes.texto(k));
+        dejarToken(codigo, k);
+        destino.valorEntero = (int) constantes.valor(k);
+        destino.valorReal = constantes.valor(k);
+    }
+
+    private void dejarToken(int codigo, int atributo) {
+        destino.codigo = codigo;
+        destino.atributo = atributo;
+        destino.linea = linea;
+        destino.valorEntero = 0;
+        destino.valorReal = 0;
+        hayToken = true;
     }
 
     private char siguienteCaracter() {
-        if (pos >= codigo.length()) {
-            return '\0';
-        }
-        char c = codigo.charAt(pos);
-        pos++;
-        return c;
+        return entrada.siguiente();
     }
 
     private char mirarSiguiente() {
-        if (pos >= codigo.length()) {
-            return '\0';
-        }
-        return codigo.charAt(pos);
+        return entrada.mirar();
     }
 
     private void retroceder() {
-        if (pos > 0) {
-            pos--;
-        }
+        entrada.retroceder();
     }
 
-    private boolean esDigito(char c) {
-        return c >= '0' && c <= '9';
+    private static int clase(char c) {
+        return c < CLASES.length ? CLASES[c] : OTRO;
     }
 
-    private boolean esLetra(char c) {
-        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    private static boolean esDigito(char c) {
+        return clase(c) == DIGITO;
     }
 
-    // mapeo de palabras reservadas a sus codigos
-    private String codigoReservada(String lexema) {
-        if (lexema.equals("let")) return "PR_let";
-        if (lexema.equals("function")) return "PR_function";
-        if (lexema.equals("int")) return "PR_int";
-        if (lexema.equals("float")) return "PR_float";
-        if (lexema.equals("boolean")) return "PR_boolean";
-        if (lexema.equals("string")) return "PR_string";
-        if (lexema.equals("void")) return "PR_void";
-        if (lexema.equals("if")) return "PR_if";
-        if (lexema.equals("for")) return "PR_for";
-        if (lexema.equals("return")) return "PR_return";
-        if (lexema.equals("write")) return "PR_write";
-        if (lexema.equals("read")) return "PR_read";
-        return null;
+    // letras, digitos y _ pueden seguir a la primera letra de un id
+    private static boolean esParteId(char c) {
+        int k = clase(c);
+        return k == LETRA || k == DIGITO;
     }
 
-    // guarda el error y controla que no salgan demasiados seguidos
-    private void registrarError(String mensaje) {
-        if (linea == lineaUltimoErrorLexico) {
-            contadorErrores++;
-            if (contadorErrores > 2) {
-                return;
+    // Palabras reservadas con un hash perfecto: (primera + 9 * ultima + longitud) & 15
+    // da una casilla distinta para cada una, asi que basta comparar con una sola
+    private static int hashReservada(char[] buf, int len) {
+        return (buf[0] + 9 * buf[len - 1] + len) & 15;
+    }
+
+    // el codigo de la palabra reservada que hay en buf[0..len) (-1 si no lo es)
+    private static int codigoReservada(char[] buf, int len) {
+        if (len < 2 || len > 8) {
+            return -1;
+        }
+        int h = hashReservada(buf, len);
+        char[] pr = RESERVADAS[h];
+        if (pr == null || pr.length != len) {
+            return -1;
+        }
+        for (int i = 0; i < len; i++) {
+            if (pr[i] != buf[i]) {
+                return -1;
             }
-        } else {
-            lineaUltimoErrorLexico = linea;
-            contadorErrores = 1;
         }
-        
-        errores.add("Linea " + linea + " (LEXICO): " + mensaje);
+        return CODIGOS_RESERVADAS[h];
+    }
+
+    // guarda el error y controla que no salgan demasiados seguidos
+    private void registrarError(String mensaje) throws IOException {
+        registrarError(mensaje, linea);
+    }
+
+    // 'origen' es la linea que se estaba leyendo (casi siempre la del error)
+    private void registrarError(String mensaje, int origen) throws IOException {
+        if (trozo != null) {
+            // en un trozo se guardan todos, el limite se aplica al juntarlos
+            trozo.lineasError.add(linea);
+            trozo.origenesError.add(origen);
+            trozo.errores.add(mensaje);
+            return;
+        }
+        if (limiteErrores.admitir(linea)) {
+            ctx.escribirErrorLexico(new Diagnostico(linea, Diagnostico.LEXICO, mensaje));
+        }
     }
 }
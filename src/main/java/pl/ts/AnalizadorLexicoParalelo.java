@@ -0,0 +1,191 @@
+package pl.ts;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static pl.ts.CodigoToken.*;
+
+// Lexer para ficheros grandes: parte el fichero en trozos que acaban en salto
+// de linea y los analiza a la vez en un ForkJoinPool.
+// Se puede porque en MyJS casi todo acaba en la misma linea: los comentarios //
+// terminan en el salto de linea y las cadenas no pueden tener saltos de linea.
+// Lo unico que depende del orden son los ids de la tabla de simbolos, asi que
+// esos se ponen al juntar los trozos, en orden, como haria el lexer normal.
+// Los errores tambien se filtran al juntar (maximo 2 por linea).
+public class AnalizadorLexicoParalelo implements FuenteTokens {
+
+    public static final int TAM_TROZO = 1 << 20; // caracteres (o bytes) por trozo
+
+    // Lo que sale de analizar un trozo (las lineas cuentan desde 1 dentro del trozo)
+    static class Trozo {
+        BufferTokens tokens = new BufferTokens(); // los cod_id llevan el lexema, no el id
+        List<Integer> lineasError = new ArrayList<>();
+        List<Integer> origenesError = new ArrayList<>(); // linea que se leia (ver AnalisisIncremental)
+        List<String> errores = new ArrayList<>();
+        int lineas;                               // saltos de linea que habia en el trozo
+        boolean terminado;                        // ya se ha leido entero
+        boolean eof;                              // habia un '\0' y ahi se acaba el fichero
+
+        // para volver a usarlo (lexer segmentado)
+        void vaciar() {
+            tokens.vaciar();
+            lineasError.clear();
+            origenesError.clear();
+            errores.clear();
+            lineas = 0;
+            terminado = false;
+            eof = false;
+        }
+    }
+
+    private ContextoCompilacion ctx;
+    private SalidaTokens tokOut;
+    private LimiteErrores limiteErrores = new LimiteErrores(2);
+
+    private Entrada entrada;
+    private int tamTrozo;
+    private int inicioSiguiente = 0;   // donde empieza el proximo trozo por mandar
+    private ExecutorService pool;
+    private int maxEnCurso;            // trozos analizandose a la vez (para no llenar la memoria)
+    private ArrayDeque<Future<Trozo>> enCurso = new ArrayDeque<>();
+
+    private Trozo actual;              // el trozo del que estamos dando tokens
+    private int indice;                // siguiente token de ese trozo
+    private int lineaBase = 0;         // lineas de los trozos anteriores
+    private boolean fin;               // ya hemos dado el EOF
+    private int lineaFin;
+
+    public AnalizadorLexicoParalelo(ContextoCompilacion ctx, Entrada entrada) {
+        this(ctx, entrada, TAM_TROZO, ForkJoinPool.commonPool());
+    }
+
+    public AnalizadorLexicoParalelo(ContextoCompilacion ctx, Entrada entrada, int tamTrozo, ForkJoinPool pool) {
+        this.ctx = ctx;
+        this.tokOut = ctx.getSalidaTokens();
+        this.entrada = entrada;
+        this.tamTrozo = tamTrozo;
+        this.pool = pool;
+        this.maxEnCurso = 2 * pool.getParallelism();
+    }
+
+    @Override
+    public void siguienteToken(Token destino) throws IOException {
+        if (fin) {
+            destino.codigo = COD_EOF;
+            destino.atributo = -1;
+            destino.linea = lineaFin;
+            return;
+        }
+        while (actual == null || indice >= actual.tokens.tam()) {
+            actual = juntarSiguiente();
+            indice = 0;
+            if (actual == null) {
+                // no quedan trozos: EOF en la linea siguiente a la ultima
+                tokOut.token(COD_EOF);
+                terminar(lineaBase + 1);
+                siguienteToken(destino);
+                return;
+            }
+        }
+        actual.tokens.leer(indice++, destino);
+        if (actual.eof && indice == actual.tokens.tam()) {
+            terminar(destino.linea); // el '\0' del trozo acaba el fichero
+        }
+    }
+
+    // Espera al siguiente trozo (en orden) y lo junta con lo anterior:
+    // errores al fichero, ids a la tabla de simbolos y tokens a tokens.txt
+    private Trozo juntarSiguiente() throws IOException {
+        mandarTrozos();
+        if (enCurso.isEmpty()) {
+            return null;
+        }
+        Trozo t = esperar(enCurso.poll());
+        juntar(t, lineaBase, ctx, limiteErrores, tokOut);
+        lineaBase += t.lineas;
+
+        if (t.eof) {
+            // lo que venga detras del '\0' no se lee
+            for (Future<Trozo> f : enCurso) {
+                f.cancel(true);
+            }
+            enCurso.clear();
+            inicioSiguiente = entrada.longitud();
+        }
+        return t;
+    }
+
+    // Lo que se hace con cada trozo al juntarlo, en orden (tambien con los lotes del lexer
+    // segmentado): errores al fichero, ids a la tabla de simbolos, constantes a la suya
+    // y tokens a tokens.txt. Las lineas pasan a contar desde el principio del fichero
+    static void juntar(Trozo t, int lineaBase, ContextoCompilacion ctx, LimiteErrores limiteErrores,
+                       SalidaTokens tokOut) throws IOException {
+        TablaSimbolos ts = ctx.getTablaSimbolos();
+        TablaConstantes constantes = ctx.getConstantes();
+
+        for (int i = 0; i < t.errores.size(); i++) {
+            int linea = t.lineasError.get(i) + lineaBase;
+            if (limiteErrores.admitir(linea)) {
+                ctx.escribirErrorLexico(new Diagnostico(linea, Diagnostico.LEXICO, t.errores.get(i)));
+            }
+        }
+        BufferTokens tokens = t.tokens;
+        for (int i = 0; i < tokens.tam(); i++) {
+            tokens.setLinea(i, tokens.linea(i) + lineaBase);
+            int codigo = tokens.codigo(i);
+            if (codigo == COD_ID) {
+                int handle = ts.gestionarIdGlobal(tokens.literal(tokens.atributo(i)));
+                tokens.setAtributo(i, handle);
+                tokOut.id(handle);
+            } else if (tokens.atributo(i) >= 0) {
+                // literal: a la tabla de constantes, como en el lexer normal
+                String texto = tokens.literal(tokens.atributo(i));
+                int k = constantes.anadir(codigo, texto, tokens.valor(i));
+                tokens.setAtributo(i, k);
+                tokOut.constante(codigo, k, texto);
+            } else {
+                tokOut.token(codigo);
+            }
+        }
+    }
+
+    // Manda a analizar trozos hasta tener maxEnCurso en marcha
+    private void mandarTrozos() {
+        int longitud = entrada.longitud();
+        while (enCurso.size() < maxEnCurso && inicioSiguiente < longitud) {
+            int desde = inicioSiguiente;
+            int hasta = (longitud - desde <= tamTrozo) ? longitud : entrada.finDeLinea(desde + tamTrozo);
+            Entrada parte = entrada.trozo(desde, hasta);
+            enCurso.add(pool.submit(() -> {
+                Trozo t = new Trozo();
+                new AnalizadorLexico(parte, t).analizarTrozo();
+                return t;
+            }));
+            inicioSiguiente = hasta;
+        }
+    }
+
+    private Trozo esperar(Future<Trozo> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("lexer paralelo interrumpido");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("error en el lexer paralelo", e.getCause());
+        }
+    }
+
+    private void terminar(int linea) throws IOException {
+        fin = true;
+        lineaFin = linea;
+        tokOut.flush();
+        ctx.finLexico();
+    }
+}
@@ -0,0 +1,123 @@
+package pl.ts;
+
+import java.io.*;
+
+import static pl.ts.CodigoToken.*;
+
+// Compilacion segmentada (--segmentado): el lexer va en su propio hilo y le pasa al
+// parser lotes de tokens por un AnilloLotes, mientras los ficheros los escriben los
+// hilos de EscritorAsincrono. Asi las tres partes van a la vez y un fichero grande
+// tarda mas o menos lo que la mas lenta, no la suma.
+// El hilo del lexer no toca la tabla de simbolos ni el contexto: los lotes son como los
+// trozos del lexer paralelo (ids y constantes con su texto) y se juntan aqui, en el
+// hilo del parser y en orden, asi que la salida es la misma que sin segmentar.
+public class AnalizadorLexicoSegmentado implements FuenteTokens {
+
+    public static final int TAM_LOTE = 4096; // tokens por lote
+    private static final int NUM_LOTES = 8;  // los que hay dando vueltas (si el parser va lento, el lexer espera)
+
+    private final ContextoCompilacion ctx;
+    private final SalidaTokens tokOut;
+    private final LimiteErrores limiteErrores = new LimiteErrores(2);
+
+    // los lotes van llenos al parser y vuelven vacios al lexer
+    private final AnilloLotes<AnalizadorLexicoParalelo.Trozo> llenos = new AnilloLotes<>(NUM_LOTES);
+    private final AnilloLotes<AnalizadorLexicoParalelo.Trozo> libres = new AnilloLotes<>(NUM_LOTES);
+    private final Thread hilo;
+    private volatile Throwable fallo; // si el lexer ha petado
+
+    private AnalizadorLexicoParalelo.Trozo actual; // el lote del que estamos dando tokens
+    private int indice;                            // siguiente token de ese lote
+    private int lineaBase = 0;                     // lineas de los lotes anteriores
+    private boolean fin;                           // ya hemos dado el EOF
+    private int lineaFin;
+
+    public AnalizadorLexicoSegmentado(ContextoCompilacion ctx, Entrada entrada) throws IOException {
+        this.ctx = ctx;
+        this.tokOut = ctx.getSalidaTokens();
+        for (int i = 0; i < NUM_LOTES; i++) {
+            libres.poner(new AnalizadorLexicoParalelo.Trozo());
+        }
+        this.hilo = new Thread(() -> lexear(entrada), "lexer-segmentado");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    // Lo que hace el hilo del lexer: llenar lotes hasta el final del fichero
+    private void lexear(Entrada entrada) {
+        try {
+            AnalizadorLexico lexer = new AnalizadorLexico(entrada, (AnalizadorLexicoParalelo.Trozo) null);
+            while (true) {
+                AnalizadorLexicoParalelo.Trozo t = libres.sacar();
+                t.vaciar();
+                lexer.analizarLote(t, TAM_LOTE);
+                llenos.poner(t);
+                if (t.terminado) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            fallo = e;
+            llenos.cancelar();
+        }
+    }
+
+    @Override
+    public void siguienteToken(Token destino) throws IOException {
+        if (fin) {
+            destino.codigo = COD_EOF;
+            destino.atributo = -1;
+            destino.linea = lineaFin;
+            return;
+        }
+        while (actual == null || indice >= actual.tokens.tam()) {
+            if (actual != null && actual.terminado) {
+                // se acabo el fichero sin '\0': EOF en la linea siguiente a la ultima
+                tokOut.token(COD_EOF);
+                terminar(lineaBase + 1);
+                siguienteToken(destino);
+                return;
+            }
+            siguienteLote();
+        }
+        actual.tokens.leer(indice++, destino);
+        if (actual.eof && indice == actual.tokens.tam()) {
+            terminar(destino.linea); // el '\0' acaba el fichero
+        }
+    }
+
+    // Devuelve el lote gastado al lexer y junta el siguiente
+    private void siguienteLote() throws IOException {
+        if (actual != null) {
+            libres.poner(actual);
+        }
+        try {
+            actual = llenos.sacar();
+        } catch (InterruptedIOException e) {
+            if (fallo instanceof IOException) {
+                throw (IOException) fallo;
+            }
+            if (fallo != null) {
+                throw new IOException("error en el lexer segmentado", fallo);
+            }
+            throw e;
+        }
+        indice = 0;
+        AnalizadorLexicoParalelo.juntar(actual, lineaBase, ctx, limiteErrores, tokOut);
+        lineaBase += actual.lineas;
+    }
+
+    private void terminar(int linea) throws IOException {
+        fin = true;
+        lineaFin = linea;
+        tokOut.flush();
+        ctx.finLexico();
+    }
+
+    // Si el parser se ha parado por un fallo el lexer puede estar esperando un lote libre
+    @Override
+    public void cerrar() {
+        libres.cancelar();
+        llenos.cancelar();
+    }
+}
@@ -1,44 +1,54 @@
 package pl.ts;
 
 import java.io.*;
-import java.util.List;
+import java.util.Arrays;
+
+import static pl.ts.CodigoToken.*;
 
 // El Analizador Sintactico (Parser)
-// Usamos el metodo descendente LL(1)
+// Usamos el metodo descendente LL(1) con pila: la regla que toca se mira en la tabla LL(1) de
+// gramatica_vast.txt y su parte derecha (con las acciones semanticas) se mete en la pila.
+// Las expresiones van aparte, por niveles de prioridad (ver X())
 public class AnalizadorSintactico {
 
-    private List<Token> tokens;
-    private int pos;
+    // Filas de la tabla de prediccion: FILA[codigo del token] = regla (0 si no hay)
+    private static final TablaLL1 LL1 = TablaLL1.vast();
+    private static final int[] PRED_G = LL1.fila("G");
+    private static final int[] PRED_X19 = LL1.fila("X19");
+    private static final int[] PRED_X29 = LL1.fila("X29");
+    private static final int[] PRED_X3 = LL1.fila("X3");
+    private static final int[] PRED_V = LL1.fila("V");
+    private static final int[] PRED_V9 = LL1.fila("V9");
+    private static final int[] PRED_AO = LL1.fila("AO");
+    private static final int[] PRED_AL9 = LL1.fila("AL9");
+
+    private VentanaTokens tokens; // los tokens se piden al lexer segun hacen falta
     private Token actual;
+    private int lineaAnterior;    // la del ultimo token que hemos pasado
 
-    private BufferedWriter parseOut; // para guardar los numeros de las reglas
-    private BufferedWriter errOut;   // para guardar los errores sintacticos y semanticos
+    private SalidaReglas parseOut;   // para guardar los numeros de las reglas
+    private ContextoCompilacion ctx; // alli van los errores sintacticos y semanticos
+    private TablaSimbolos ts;        // la tabla de simbolos de esta compilacion
     
     // para no dar mil errores en la misma linea
-    private int ultimaLineaError = -1;
-    private int erroresEnLinea = 0;
     private static final int MAX_ERRORES_POR_LINEA = 1;
+    private LimiteErrores limiteErrores = new LimiteErrores(MAX_ERRORES_POR_LINEA);
 
     // estas variables nos sirven para la tabla de simbolos
     private int desp = 0;
-    private boolean zonaDeclaracion = false;
+    private int idsPorNumero = 0;
+    private boolean leidoHastaEof = false; // el lexer ya ha llegado al final (ver getLexema)
 
-    public AnalizadorSintactico(List<Token> tokens, String rutaParse, String rutaErrores) throws IOException {
-        this.tokens = tokens;
-        this.pos = 0;
-        if (tokens.size() > 0) {
-            this.actual = tokens.get(0);
-        } else {
-            this.actual = null;
-        }
-        this.parseOut = new BufferedWriter(new FileWriter(rutaParse, false));
+    public AnalizadorSintactico(ContextoCompilacion ctx, FuenteTokens fuente) throws IOException {
+        this.tokens = new VentanaTokens(fuente);
+        this.actual = tokens.actual();
+        // Los errores van detras de los que haya escrito el lexer
+        this.ctx = ctx;
+        this.ts = ctx.getTablaSimbolos();
+        this.parseOut = ctx.getSalidaParse();
 
         // Ponemos la D al principio del fichero de parse
-        parseOut.write("D");
-        parseOut.newLine();
-
-        // Usamos append para no borrar lo que haya escrito el lexer
-        this.errOut = new BufferedWriter(new FileWriter(rutaErrores, true));
+        parseOut.cabecera();
     }
 
     public void analizar() throws IOException {
@@ -48,36 +58,81 @@ public class AnalizadorSintactico {
         }
 
         // empezamos por el simbolo inicial de la gramatica (P)
-        P(); 
+        derivar(LL1.simbolo("P"));
+
+        comprobarFinal();
+        cerrar();
+    }
 
-        // si sobra algo despues del final del programa es error
-        if (actual != null && !"cod_eof".equals(actual.codigo)) {
+    // si sobra algo despues del final del programa es error
+    private void comprobarFinal() throws IOException {
+        if (actual != null && actual.codigo != COD_EOF) {
             error("sobra codigo despues del final del programa");
         }
+    }
+
+    // --- PARA EL ANALISIS INCREMENTAL (AnalisisIncremental) ---
+    // El programa es una lista de E (G -> E G), asi que se puede analizar de E en E y
+    // volver a empezar en cualquiera si se deja todo como estaba al llegar a el:
+    // la tabla de simbolos, el desplazamiento y el limite de errores
 
+    // Lo que hay detras del ultimo E: el final de G, el EOF y lo que sobre
+    void terminar() throws IOException {
+        derivar(NT_G); // aqui ya no empieza ningun E: es G -> lambda (o el error)
+        match(COD_EOF);
+        comprobarFinal();
         cerrar();
     }
 
+    int getDesp() {
+        return desp;
+    }
+
+    LimiteErrores getLimiteErrores() {
+        return limiteErrores;
+    }
+
+    void restaurar(int desp, int ultimaLineaError, int erroresEnLinea) {
+        this.desp = desp;
+        limiteErrores.restaurar(ultimaLineaError, erroresEnLinea);
+    }
+
+    // cuantas veces se ha cogido un entero como id (ver getLexema): eso depende de los
+    // numeros de la tabla de simbolos y no se puede analizar por partes
+    int getIdsPorNumero() {
+        return idsPorNumero;
+    }
+
+    // los ficheros los cierra el contexto, aqui solo vaciamos el buffer
     private void cerrar() throws IOException {
-        parseOut.close();
-        errOut.close();
+        parseOut.flush();
     }
 
     // Funciones que nos ayudan a mirar que token tenemos
-    private boolean es(String codigo) {
-        return actual != null && codigo.equals(actual.codigo);
+    private boolean es(int codigo) {
+        return actual != null && actual.codigo == codigo;
+    }
+
+    // regla que dice la tabla LL(1) para el token actual (0 si ninguna vale)
+    private int predecir(int[] fila) {
+        return actual == null ? 0 : fila[actual.codigo];
     }
     
     // para sacar el nombre real (lexema) de un ID usando su numero
-    private String getLexema(Token t) {
-        if (t == null) return "";
-        try {
-            int h = Integer.parseInt(t.atributo);
-            TablaSimbolos.Simbolo s = TablaSimbolos.getSimbolo(h);
-            return s.lexema;
-        } catch (Exception e) {
-            return "";
-        }
+    // (si en vez de un id viene un entero, el numero se usa como id, como siempre se ha hecho)
+    private String getLexema(Token t) throws IOException {
+        if (t == null || (t.codigo != COD_ID && t.codigo != COD_CE)) return "";
+        if (t.codigo == COD_CE) idsPorNumero++;
+        TablaSimbolos.Simbolo s = ts.getSimbolo(t.codigo == COD_ID ? t.atributo : t.valorEntero);
+        if (s == null && t.codigo == COD_CE && !leidoHastaEof) {
+            // antes el lexer leia el fichero entero antes de empezar el parser, asi que el numero
+            // se buscaba con todos los ids ya metidos: pedimos lo que queda y se vuelve a buscar
+            // (los ids no cambian, si ya estaba es el mismo)
+            tokens.leerHastaEof();
+            leidoHastaEof = true;
+            s = ts.getSimbolo(t.valorEntero);
+        }
+        return s == null ? "" : s.lexema;
     }
 
     // para saber cuanto ocupa cada tipo en memoria
@@ -86,881 +141,843 @@ public class AnalizadorSintactico {
         return 1; // int, float y boolean ocupan 1 unidad
     }
 
-    // pasar al siguiente token de la lista
-    private void avanzar() {
-        if (pos < tokens.size() - 1) {
-            pos++;
-            actual = tokens.get(pos);
-        } else {
-            actual = tokens.get(tokens.size() - 1); // nos quedamos en el EOF
-        }
+    // pasar al siguiente token (en el EOF nos quedamos en el EOF)
+    private void avanzar() throws IOException {
+        lineaAnterior = actual.linea;
+        tokens.avanzar();
+        actual = tokens.actual();
     }
 
     // comprobamos que el token es el que esperamos y avanzamos
-    private void match(String esperado) throws IOException {
+    private void match(int esperado) throws IOException {
         if (es(esperado)) {
             avanzar();
         } else {
             error("se esperaba " + nombreLegible(esperado) + " y se encontro " +
-                  nombreLegible(actual == null ? null : actual.codigo) + pista(esperado));
+                  (actual == null ? "fin de fichero" : nombreLegible(actual.codigo)) + pista(esperado));
             avanzar();
         }
     }
 
     // pequeños mensajes extra para ayudar
-    private String pista(String esperado) {
+    private String pista(int esperado) {
         switch (esperado) {
-            case "cod_pc": return " (falta ';' al final?)";
-            case "cod_parDer": return " (revisa los parentesis)";
-            case "cod_LLder": return " (falta '}' de cierre?)";
-            case "cod_LLizq": return " (falta '{' de apertura?)";
+            case COD_PC: return " (falta ';' al final?)";
+            case COD_PARDER: return " (revisa los parentesis)";
+            case COD_LLDER: return " (falta '}' de cierre?)";
+            case COD_LLIZQ: return " (falta '{' de apertura?)";
             default: return "";
         }
     }
 
     // apunta el numero de regla que hemos usado
     private void regla(int n) throws IOException {
-        parseOut.write(Integer.toString(n));
-        parseOut.newLine();
+        parseOut.regla(n);
     }
 
     private void error(String msg) throws IOException {
-        error(msg, "SINTACTICO");
+        error(msg, Diagnostico.SINTACTICO);
     }
 
     private void errorSemantico(String msg) throws IOException {
-        error(msg, "SEMANTICO");
+        error(msg, Diagnostico.SEMANTICO);
     }
 
     // para escribir el error en el fichero errores.txt
     private void error(String msg, String tipo) throws IOException {
         int linea = (actual == null ? -1 : actual.linea);
         
-        if (linea == ultimaLineaError) {
-            erroresEnLinea++;
-            if (erroresEnLinea > MAX_ERRORES_POR_LINEA) {
-                return; 
-            }
-        } else {
-            ultimaLineaError = linea;
-            erroresEnLinea = 1;
+        if (!limiteErrores.admitir(linea)) {
+            return;
         }
         
-        if (linea == -1) {
-            errOut.write("Linea ? (" + tipo + "): " + msg);
-        } else {
-            errOut.write("Linea " + linea + " (" + tipo + "): " + msg);
-        }
-        errOut.newLine();
+        ctx.escribirError(new Diagnostico(linea, tipo, msg));
     }
 
     // devuelve un nombre mas legible para los codigos internos
-    private String nombreLegible(String codigo) {
-        if (codigo == null) return "fin de fichero";
-        switch (codigo) {
-            case "cod_pc": return "';'";
-            case "cod_parIzq": return "'('";
-            case "cod_parDer": return "')'";
-            case "cod_LLizq": return "'{'";
-            case "cod_LLder": return "'}'";
-            case "cod_id": return "identificador";
-            case "cod_cad": return "cadena";
-            case "cod_ce": return "entero";
-            case "cod_cr": return "real";
-            case "cod_asig": return "'='";
-            case "cod_asigRes": return "'%='";
-            case "cod_coma": return "','";
-            case "cod_sum": return "'+'";
-            case "cod_rel": return "'=='";
-            case "cod_log": return "'!'";
-            case "PR_let": return "'let'";
-            case "PR_function": return "'function'";
-            case "PR_int": return "'int'";
-            case "PR_float": return "'float'";
-            case "PR_boolean": return "'boolean'";
-            case "PR_string": return "'string'";
-            case "PR_void": return "'void'";
-            case "PR_if": return "'if'";
-            case "PR_for": return "'for'";
-            case "PR_return": return "'return'";
-            case "PR_write": return "'write'";
-            case "PR_read": return "'read'";
-            case "cod_eof": return "fin de fichero";
-            default: return codigo;
-        }
-    }
-
-    // Auxiliares para no repetir condiciones largas de tipos o sentencias
-
-    private boolean esTipo() {
-        return es("PR_int") || es("PR_float") || es("PR_boolean") || es("PR_string");
+    private String nombreLegible(int codigo) {
+        return CodigoToken.legible(codigo);
     }
 
     private boolean esNumerico(String t) {
         return "entero".equals(t) || "real".equals(t);
     }
 
-    private boolean esInicioSentencia() {
-        return es("cod_id") || es("PR_for") || es("PR_if") || es("PR_read")
-                || es("PR_write") || es("PR_return") || es("cod_LLizq")
-                || es("cod_pc") || es("PR_let");
-    }
-
-    private boolean esInicioExpr() {
-        return es("cod_log") || es("cod_parIzq") || es("cod_cad")
-                || es("cod_ce") || es("cod_id") || es("cod_cr");
-    }
-
-    private boolean esInicioPrimario() {
-        return es("cod_id") || es("cod_ce") || es("cod_cr")
-                || es("cod_cad") || es("cod_parIzq");
-    }
-
     // REGLAS DE LA GRAMATICA
-    // 1: P  -> G eof
-    // 2: G  -> E G | 3: λ
-    // 4: E  -> D | 5: F | 6: S
-    // 7: D  -> let T id D1 ;
-    // 8: D1 -> = X | 9: λ
-    // 10: T  -> int | 11: float | 12: boolean | 13: string
-    // 14: F  -> function R id ( PO ) B
-    // 15: R  -> T | 16: void
-    // 17: PO -> PL | 18: λ
-    // 19: PL -> PA LP
-    // 20: LP -> , PA LP | 21: λ
-    // 22: PA -> T id
-    // 23: B  -> { LS }
-    // 24: LS -> S LS | 25: λ
-    // 26: S  -> SA | 27: SF | 28: SI | 29: SR | 30: SW | 31: ST | 32: B | 33: ;
-    // 34: SA -> id OP X ;
-    // 35: OP -> = | 36: %=
-    // 37: SF -> for ( F0 ; F1 ; F2 ) S
-    // 38: F0 -> id OP X | 39: let T id D1 | 40: λ
-    // 41: F1 -> X | 42: λ
-    // 43: F2 -> id OP X | 44: λ
-    // 45: SI -> if ( X ) S
-    // 46: SR -> read ( id ) ;
-    // 47: SW -> write ( X ) ;
-    // 48: ST -> return X0 ;
-    // 49: X0 -> X | 50: λ
-    // 51: X  -> X1
-    // 52: X1 -> X2 X1'
-    // 53: X1'-> == X2 X1' | 54: λ
-    // 55: X2 -> X3 X2'
-    // 56: X2'-> + X3 X2' | 57: λ
-    // 58: X3 -> ! X3 | 59: V
-    // 60: V  -> id V' | 61: entero | 62: real | 63: cadena | 64: ( X )
-    // 65: V' -> ( AO ) | 66: λ
-    // 67: AO -> AL | 68: λ
-    // 69: AL -> X AL'
-    // 70: AL'-> , X AL' | 71: λ
-
-    private void P() throws IOException {
-        regla(1);
-        G();
-        match("cod_eof");
-    }
-
-    private void G() throws IOException {
-        if (esInicioSentencia() || es("PR_let") || es("PR_function")) {
-            regla(2);
-            E();
-            G();
-        } else if (es("cod_eof")) {
-            regla(3);
-        } else {
-            error("se esperaba una declaracion, funcion o sentencia");
+    // Los numeros son los de las producciones de gramatica_vast.txt (1: P -> G eof, ...)
+    //
+    // Todo lo que no es una expresion se analiza con una pila en vez de un metodo por no terminal:
+    // en 'pila' van terminales (su codigo de token), no terminales (en negativo, como en TablaLL1)
+    // y acciones semanticas (desde ACCION). Se saca el de arriba: el terminal se empareja, el no
+    // terminal se cambia por la parte derecha de su regla (la que diga su fila de la tabla) y la
+    // accion se hace. Asi un programa o un bloque muy largo o muy anidado no gasta pila de Java.
+    // Lo que se pasan las acciones (tipos, lexemas, lineas...) va en 'valores'.
+    // La X es la excepcion: se analiza entera con X() (mas abajo), que deja su tipo en 'valores'.
+
+    private static final int NT_G = LL1.simbolo("G");
+    private static final int NT_S = LL1.simbolo("S");
+    private static final int NT_X = LL1.simbolo("X");
+    private static final int NT_AO = LL1.simbolo("AO");
+
+    // Acciones semanticas (van en la pila como un simbolo mas)
+    private static final int ACCION = 1 << 16; // por encima de cualquier codigo de token
+    private static final int SOLTAR = ACCION;          // tira el valor de arriba
+    private static final int LEXEMA = ACCION + 1;      // el lexema del token actual (antes de su match)
+    private static final int LINEA = ACCION + 2;       // la linea del token actual
+    private static final int DECLARAR = ACCION + 3;
+    private static final int INICIALIZAR = ACCION + 4;
+    private static final int ENTRAR_FUNCION = ACCION + 5;
+    private static final int PARAMETROS = ACCION + 6;
+    private static final int SALIR_FUNCION = ACCION + 7;
+    private static final int PARAMETRO = ACCION + 8;
+    private static final int ACUMULAR = ACCION + 9;
+    private static final int LLAMADA_O_ASIGNACION = ACCION + 10;
+    private static final int ASIGNAR = ACCION + 11;
+    private static final int VARIABLE_FOR = ACCION + 12;
+    private static final int INICIO_FOR = ACCION + 13;
+    private static final int DECLARAR_FOR = ACCION + 14;
+    private static final int CONDICION_FOR = ACCION + 15;
+    private static final int VARIABLE_INCREMENTO = ACCION + 16;
+    private static final int INCREMENTO_FOR = ACCION + 17;
+    private static final int CONDICION_IF = ACCION + 18;
+    private static final int LEER = ACCION + 19;
+    private static final int ESCRIBIR = ACCION + 20;
+    // y las que meten un valor fijo: VALOR + su indice en VALORES (ver valor())
+    private static final int VALOR = ACCION + 21;
+    private static final String[] VALORES = {"void", "entero", "real", "boolean", "cadena", "=", "%="};
+
+    private static final int NUM_NT = LL1.numNoTerminales();
+    private static final int[][] FILA = new int[NUM_NT][];
+    private static final int[] UNICA = new int[NUM_NT];        // su regla si solo tiene una (no se mira la tabla)
+    private static final String[] MENSAJE = new String[NUM_NT]; // el error si la tabla no da regla
+    private static final String[] DEFECTO = new String[NUM_NT]; // y el valor que deja entonces (null: ninguno)
+    private static final int[][] EXPANSION = new int[LL1.numReglas() + 1][];
+
+    static {
+        int[] numReglas = new int[NUM_NT];
+        for (int r = 1; r <= LL1.numReglas(); r++) {
+            numReglas[LL1.izquierda(r)]++;
+            UNICA[LL1.izquierda(r)] = r;
+        }
+        for (int nt = 0; nt < NUM_NT; nt++) {
+            FILA[nt] = LL1.fila(nt);
+            if (numReglas[nt] != 1) {
+                UNICA[nt] = 0;
+            }
         }
-    }
 
-    private void E() throws IOException {
-        if (es("PR_let")) {
-            regla(4);
-            D();
-        } else if (es("PR_function")) {
-            regla(5);
-            F();
-        } else if (esInicioSentencia()) {
-            regla(6);
-            S();
-        } else {
-            error("se esperaba 'let', 'function' o una sentencia");
+        expansion(1, "G", "eof");
+        // G -> E G: como va por la derecha la pila no crece con cada E
+        expansion(2, "E", "G");
+        expansion(3);
+        siFalla("G", "se esperaba una declaracion, funcion o sentencia", null);
+
+        expansion(4, "D");
+        expansion(5, "F");
+        expansion(6, "S", SOLTAR);
+        siFalla("E", "se esperaba 'let', 'function' o una sentencia", null);
+
+        // Declaracion de variables con let (el tipo se queda en 'valores' para D1)
+        expansion(7, "let", "T", LEXEMA, LINEA, "id", DECLARAR, "D1", SOLTAR, ";");
+        // Parte opcional de la declaracion ( = valor )
+        expansion(8, "=", "X", INICIALIZAR);
+        expansion(9); // no hay asignacion inicial
+        siFalla("D1", "se esperaba '=' o ';' en la declaracion", null);
+
+        expansion(10, "int", valor("entero"));
+        expansion(11, "float", valor("real"));
+        expansion(12, "boolean", valor("boolean"));
+        expansion(13, "string", valor("cadena"));
+        siFalla("T", "se esperaba un tipo: int, float, boolean o string", "error");
+
+        // Definicion de funciones
+        expansion(14, LINEA, "function", "R", LEXEMA, LINEA, "id", ENTRAR_FUNCION,
+                "(", "PO", ")", PARAMETROS, "B", SALIR_FUNCION);
+        // Tipo de retorno de funcion (incluye void)
+        expansion(15, "T");
+        expansion(16, "void", valor("void"));
+        siFalla("R", "se esperaba un tipo (int, float, boolean, string) o 'void'", "error");
+
+        // Parametros
+        expansion(17, "PL");
+        expansion(18); // no hay parametros
+        siFalla("PO", "parametro incorrecto: se esperaba un tipo o ')' para cerrar", null);
+        expansion(19, "PA", "LP");
+        expansion(20, ",", "PA", "LP");
+        expansion(21); // final de la lista
+        siFalla("LP", "se esperaba ',' o ')' en la lista de parametros", null);
+        expansion(22, "T", LEXEMA, LINEA, "id", PARAMETRO);
+
+        // Bloque entre llaves { ... }: su tipo es el de la primera sentencia que devuelva algo
+        // (no void); se empieza con void y cada S lo acumula
+        expansion(23, "{", valor("void"), "LS", "}");
+        expansion(24, "S", ACUMULAR, "LS");
+        expansion(25); // final del bloque
+        siFalla("LS", "se esperaba una sentencia o '}' para cerrar el bloque", null);
+
+        // Una sentencia cualquiera (deja su tipo: void salvo return y bloque)
+        expansion(26, "SA", valor("void"));
+        expansion(27, "SF", valor("void"));
+        expansion(28, "SI", valor("void"));
+        expansion(29, "SR", valor("void"));
+        expansion(30, "SW", valor("void"));
+        expansion(31, "ST");
+        expansion(32, "B");
+        expansion(33, "D", valor("void"));
+        expansion(34, ";", valor("void"));
+        siFalla("S", "sentencia no valida: se esperaba identificador, if, for, read, write, return, '{', 'let' o ';'", "void");
+
+        // Asignacion (variable = ... o variable %= ...) o llamada a funcion: la llamada no esta
+        // en la gramatica, si detras del id viene '(' la accion cambia OP X por ( AO )
+        expansion(35, LEXEMA, "id", LLAMADA_O_ASIGNACION, "OP", "X", ASIGNAR, ";");
+        expansion(36, "=", valor("="));
+        expansion(37, "%=", valor("%="));
+        siFalla("OP", "se esperaba '=' o '%='", "");
+
+        // Bucle for (F0 ; F1 ; F2) B
+        expansion(38, "for", "(", "F0", ";", "F1", ";", "F2", ")", "B", SOLTAR);
+        expansion(39, LEXEMA, "id", VARIABLE_FOR, "OP", "X", INICIO_FOR);
+        expansion(40, "let", "T", LEXEMA, LINEA, "id", DECLARAR_FOR, "D1", SOLTAR);
+        expansion(41); // parte vacia
+        siFalla("F0", "inicializacion del for: se esperaba asignacion, 'let' o nada", null);
+        expansion(42, "X", CONDICION_FOR);
+        expansion(43); // sin condicion
+        siFalla("F1", "condicion del for: se esperaba una expresion o nada", null);
+        expansion(44, LEXEMA, "id", VARIABLE_INCREMENTO, "OP", "X", INCREMENTO_FOR);
+        expansion(45); // sin incremento
+        siFalla("F2", "incremento del for: se esperaba asignacion o nada", null);
+
+        // if (X) S, read id ; y write X ; (sin parentesis)
+        expansion(46, "if", "(", "X", CONDICION_IF, ")", "S", SOLTAR);
+        expansion(47, "read", LEXEMA, "id", LEER, ";");
+        expansion(48, "write", "X", ESCRIBIR, ";");
+
+        // return X0 ; (su tipo es el de la sentencia)
+        expansion(49, "return", "X0", ";");
+        expansion(50, "X");
+        expansion(51, valor("void")); // return vacio
+        siFalla("X0", "return incorrecto, se esperaba una expresion o ';'", "error");
+
+        // Argumentos de una llamada que va como sentencia (en una expresion los lleva X); el
+        // tipo de cada uno no se mira
+        expansion(68, "AL");
+        expansion(69); // sin argumentos
+        siFalla("AO", "argumento incorrecto en llamada a funcion", null);
+        expansion(70, "X", SOLTAR, "AL9");
+        expansion(71, ",", "X", SOLTAR, "AL9");
+        expansion(72); // final de la lista
+        siFalla("AL9", "se esperaba ',' o ')' en los argumentos", null);
+
+        // cada no terminal que puede salir en la pila tiene que tener todas sus reglas
+        for (int[] e : EXPANSION) {
+            for (int s = 0; e != null && s < e.length; s++) {
+                if (e[s] < 0 && e[s] != NT_X) {
+                    for (int r = 1; r <= LL1.numReglas(); r++) {
+                        if (LL1.izquierda(r) == -e[s] - 1 && EXPANSION[r] == null) {
+                            throw new IllegalStateException("falta la regla " + r + " en el analizador");
+                        }
+                    }
+                }
+            }
         }
     }
 
-    // Declaracion de variables con let
-    private void D() throws IOException {
-        if (!es("PR_let")) {
-            error("se esperaba 'let' para declarar variable");
-        }
-        regla(7);
-        match("PR_let");
-        
-        zonaDeclaracion = true; // para saber que estamos declarando
-        String tipo = T();
-        
-        Token tId = actual;
-        String lexema = getLexema(tId); 
-        match("cod_id");
-
-        // Metemos la variable en la tabla de simbolos
-        if (!lexema.isEmpty()) {
-            int handle = TablaSimbolos.gestionarId(lexema);
-            TablaSimbolos.Simbolo s = TablaSimbolos.getSimbolo(handle);
-            if (s != null) {
-                // si el tipo no es -, es que ya estaba declarada antes
-                if (!"-".equals(s.tipo)) {
-                    errorSemantico("variable '" + lexema + "' ya declarada en este ambito");
-                } else {
-                    s.tipo = tipo;
-                    s.desp = desp;
-                    desp += getAncho(tipo);
-                }
+    // La regla con sus acciones: los String son simbolos de la gramatica (tienen que ser los de
+    // la regla en gramatica_vast.txt, en orden) y los int acciones
+    private static void expansion(int regla, Object... partes) {
+        int[] e = new int[partes.length];
+        int[] gramatica = new int[partes.length];
+        int n = 0;
+        for (int i = 0; i < partes.length; i++) {
+            if (partes[i] instanceof String) {
+                e[i] = LL1.simbolo((String) partes[i]);
+                gramatica[n++] = e[i];
+            } else {
+                e[i] = (Integer) partes[i];
             }
         }
-        zonaDeclaracion = false;
+        if (!Arrays.equals(Arrays.copyOf(gramatica, n), LL1.derecha(regla))) {
+            throw new IllegalStateException("la regla " + regla + " no coincide con " + TablaLL1.RECURSO);
+        }
+        EXPANSION[regla] = e;
+    }
 
-        D1(tipo); // por si tiene un = detras
-        match("cod_pc");
+    private static void siFalla(String noTerminal, String mensaje, String defecto) {
+        int nt = -LL1.simbolo(noTerminal) - 1;
+        MENSAJE[nt] = mensaje;
+        DEFECTO[nt] = defecto;
     }
 
-    // Parte opcional de la declaracion ( = valor )
-    private void D1(String tipoLhs) throws IOException {
-        if (es("cod_asig")) {
-            regla(8);
-            match("cod_asig");
-            String tipoRhs = X(); // miramos que tipo es lo de la derecha
-            if (!"error".equals(tipoLhs) && !"error".equals(tipoRhs)) {
-                if (!tipoLhs.equals(tipoRhs)) {
-                    errorSemantico("tipo incorrecto en inicializacion. Se esperaba " + tipoLhs + " pero se encontro " + tipoRhs);
-                }
-            }
-        } else if (es("cod_pc")) {
-            regla(9); // no hay asignacion inicial
-        } else {
-            error("se esperaba '=' o ';' en la declaracion");
-        }
+    private static int valor(String v) {
+        return VALOR + Arrays.asList(VALORES).indexOf(v);
     }
 
-    // Para leer el tipo de la variable
-    private String T() throws IOException {
-        if (es("PR_int")) {
-            regla(10);
-            match("PR_int");
-            return "entero";
-        } else if (es("PR_float")) {
-            regla(11);
-            match("PR_float");
-            return "real";
-        } else if (es("PR_boolean")) {
-            regla(12);
-            match("PR_boolean");
-            return "boolean";
-        } else if (es("PR_string")) {
-            regla(13);
-            match("PR_string");
-            return "cadena";
-        } else {
-            error("se esperaba un tipo: int, float, boolean o string");
-            return "error";
+    private int[] pila = new int[64];
+    private int numPila;
+    private Object[] valores = new Object[64];
+    private int numValores;
+
+    // Analiza desde el simbolo 'inicial' hasta acabarlo
+    private void derivar(int inicial) throws IOException {
+        int fondo = numPila;
+        apilar(inicial);
+        while (numPila > fondo) {
+            int s = pila[--numPila];
+            if (s >= ACCION) {
+                accion(s);
+            } else if (s >= 0) {
+                match(s);
+            } else if (s == NT_X) {
+                meter(X());
+            } else {
+                expandir(-s - 1);
+            }
         }
     }
 
-    // Definicion de funciones
-    private void F() throws IOException {
-        regla(14);
-        match("PR_function");
-        String retType = R(); // tipo de retorno
-        Token tId = actual;
-        String lexema = getLexema(tId);
-        match("cod_id");
-        
-        // Guardamos la funcion en la tabla global (actualmente estamos en global)
-        TablaSimbolos.Simbolo funcion = null;
-        if (!lexema.isEmpty()) {
-            int h = TablaSimbolos.gestionarId(lexema);
-            funcion = TablaSimbolos.getSimbolo(h);
-            if(funcion != null) {
-                funcion.tipo = retType;
-                funcion.tipoRetorno = retType;
+    private void expandir(int nt) throws IOException {
+        int r = UNICA[nt] != 0 ? UNICA[nt] : predecir(FILA[nt]);
+        if (r == 0) {
+            error(MENSAJE[nt]);
+            if (nt == -NT_S - 1) {
+                avanzar(); // se salta el token que no vale para que no se quede ahi
             }
-        }
-        
-        // Entramos en el nuevo ambito de la funcion
-        TablaSimbolos.entrarBloque(lexema);
-        int oldDesp = desp;
-        desp = 0; // el desplazamiento local empieza en 0
-        
-        match("cod_parIzq");
-        PO(); // parametros opcionales
-        match("cod_parDer");
-
-        // Rellenamos los datos de la funcion con sus parametros
-        if (funcion != null) {
-            TablaSimbolos.Tabla tablaLocal = TablaSimbolos.getTablaActual();
-            funcion.numParams = tablaLocal.simbolos.size();
-            for(int i=0; i<funcion.numParams; i++) {
-                if (i < 10) { 
-                    funcion.tipoParam[i] = tablaLocal.simbolos.get(i).tipo;
-                    funcion.modoParam[i] = "valor"; 
-                }
+            if (DEFECTO[nt] != null) {
+                meter(DEFECTO[nt]);
             }
+            return;
         }
-
-
-
-        String tipoEncontrado = B(); // cuerpo de la funcion { ... }
-        
-        // miramos si lo que devuelve el cuerpo coincide con lo que pide la funcion
-        if (!tipoEncontrado.equals(retType)) {
-             errorSemantico("Retorno no esperado");
-        }
-        
-        // Salimos del ambito y recuperamos el desplazamiento de antes
-        desp = oldDesp;
-        TablaSimbolos.salirBloque();
-    }
-
-    // Tipo de retorno de funcion (incluye void)
-    private String R() throws IOException {
-        if (esTipo()) {
-            regla(15);
-            return T();
-        } else if (es("PR_void")) {
-            regla(16);
-            match("PR_void");
-            return "void";
-        } else {
-            error("se esperaba un tipo (int, float, boolean, string) o 'void'");
-            return "error";
+        regla(r);
+        int[] e = EXPANSION[r];
+        for (int i = e.length - 1; i >= 0; i--) {
+            apilar(e[i]);
         }
     }
 
-    // Parametros opcionales
-    private void PO() throws IOException {
-        if (esTipo()) {
-            regla(17);
-            PL();
-        } else if (es("cod_parDer")) {
-            regla(18); // no hay parametros
-        } else {
-            error("parametro incorrecto: se esperaba un tipo o ')' para cerrar");
+    private void apilar(int s) {
+        if (numPila == pila.length) {
+            pila = Arrays.copyOf(pila, pila.length * 2);
         }
+        pila[numPila++] = s;
     }
 
-    // Lista de parametros
-    private void PL() throws IOException {
-        regla(19);
-        PA();
-        LP();
-    }
-
-    // Continuacion de lista de parametros con coma
-    private void LP() throws IOException {
-        if (es("cod_coma")) {
-            regla(20);
-            match("cod_coma");
-            PA();
-            LP();
-        } else if (es("cod_parDer")) {
-            regla(21); // final de la lista
-        } else {
-            error("se esperaba ',' o ')' en la lista de parametros");
+    private void meter(Object v) {
+        if (numValores == valores.length) {
+            valores = Arrays.copyOf(valores, valores.length * 2);
         }
+        valores[numValores++] = v;
     }
 
-    // Un parametro individual tipo id
-    private void PA() throws IOException {
-        regla(22);
-        String tipo = T();
-        Token tId = actual;
-        String lexema = getLexema(tId);
-        match("cod_id");
-        
-        // El parametro va a la tabla de simbolos local
-        if(!lexema.isEmpty()) {
-            int h = TablaSimbolos.gestionarId(lexema);
-            TablaSimbolos.Simbolo s = TablaSimbolos.getSimbolo(h);
-            if(s!=null) {
-                s.tipo = tipo;
-                s.desp = desp; 
-                s.esParametro = 1; // marcamos que es un parametro
-                desp += getAncho(tipo); 
-            }
-        }
+    private Object sacar() {
+        Object v = valores[--numValores];
+        valores[numValores] = null;
+        return v;
     }
 
-    // Bloque entre llaves { ... }
-    private String B() throws IOException {
-        regla(23);
-        match("cod_LLizq");
-        String t = LS();
-        match("cod_LLder");
-        return t;
+    private Object cima() {
+        return valores[numValores - 1];
     }
 
-    // Lista de sentencias dentro de un bloque
-    private String LS() throws IOException {
-        if (esInicioSentencia()) {
-            regla(24);
-            String tipoS = S();
-            String tipoLS = LS();
-            // si la sentencia S devuelve algo (no void), nos quedamos con eso
-            if (!"void".equals(tipoS)) return tipoS;
-            // si no, lo que diga el resto de la lista
-            return tipoLS;
-        } else if (es("cod_LLder")) {
-            regla(25); // final del bloque
-            return "void";
-        } else {
-            error("se esperaba una sentencia o '}' para cerrar el bloque");
-            return "void";
-        }
-    }
-
-    // Una sentencia cualquiera
-    private String S() throws IOException {
-        if (es("cod_id")) {
-            regla(26);
-            SA();
-            return "void";
-        } else if (es("PR_for")) {
-            regla(27);
-            SF();
-            return "void";
-        } else if (es("PR_if")) {
-            regla(28);
-            SI();
-            return "void";
-        } else if (es("PR_read")) {
-            regla(29);
-            SR();
-            return "void";
-        } else if (es("PR_write")) {
-            regla(30);
-            SW();
-            return "void";
-        } else if (es("PR_return")) {
-            regla(31);
-            return ST();
-        } else if (es("cod_LLizq")) {
-            regla(32);
-            return B();
-        } else if (es("cod_pc")) {
-            regla(34);
-            match("cod_pc");
-            return "void";
-        } else if (es("PR_let")) {
-            regla(33);
-            D();
-            return "void";
-        } else {
-            error("sentencia no valida: se esperaba identificador, if, for, read, write, return, '{', 'let' o ';'");
-            avanzar();
-            return "void";
+    // Las acciones semanticas
+    private void accion(int a) throws IOException {
+        if (a >= VALOR) {
+            meter(VALORES[a - VALOR]);
+            return;
         }
-    }
+        switch (a) {
+            case SOLTAR:
+                sacar();
+                break;
+            case LEXEMA:
+                meter(getLexema(actual));
+                break;
+            case LINEA:
+                meter(actual.linea);
+                break;
+            case DECLARAR: {
+                int lineaId = (Integer) sacar();
+                String lexema = (String) sacar();
+                String tipo = (String) cima();
+                // Metemos la variable en la tabla de simbolos
+                if (!lexema.isEmpty()) {
+                    int handle = ts.gestionarId(lexema);
+                    TablaSimbolos.Simbolo s = ts.getSimbolo(handle);
+                    if (s != null) {
+                        // si el tipo no es -, es que ya estaba declarada antes
+                        if (!"-".equals(s.tipo)) {
+                            errorSemantico("variable '" + lexema + "' ya declarada en este ambito");
+                        } else {
+                            s.tipo = tipo;
+                            s.desp = desp;
+                            s.linea = lineaId;
+                            desp += getAncho(tipo);
+                        }
+                    }
+                }
+                break;
+            }
+            case INICIALIZAR: {
+                // miramos que tipo es lo de la derecha
+                String tipoRhs = (String) sacar();
+                String tipoLhs = (String) cima();
+                if (!"error".equals(tipoLhs) && !"error".equals(tipoRhs)) {
+                    if (!tipoLhs.equals(tipoRhs)) {
+                        errorSemantico("tipo incorrecto en inicializacion. Se esperaba " + tipoLhs + " pero se encontro " + tipoRhs);
+                    }
+                }
+                break;
+            }
+            case ENTRAR_FUNCION: {
+                int lineaId = (Integer) sacar();
+                String lexema = (String) sacar();
+                String retType = (String) sacar();
+                int lineaFuncion = (Integer) sacar();
+
+                // Guardamos la funcion en la tabla global (actualmente estamos en global)
+                TablaSimbolos.Simbolo funcion = null;
+                if (!lexema.isEmpty()) {
+                    int h = ts.gestionarId(lexema);
+                    funcion = ts.getSimbolo(h);
+                    if (funcion != null) {
+                        funcion.tipo = retType;
+                        funcion.tipoRetorno = retType;
+                        funcion.linea = lineaId;
+                    }
+                }
 
-    // Sentencia de asignacion o llamada a funcion
-    private void SA() throws IOException {
-        regla(35);
-        Token tId = actual;
-        String lexema = getLexema(tId);
-        match("cod_id");
-        
-        if (es("cod_parIzq")) {
-            // Es una llamada a funcion
-            TablaSimbolos.Simbolo s = TablaSimbolos.buscar(lexema);
-            if (s == null) {
-                errorSemantico("funcion '" + lexema + "' no declarada");
-            }
-            match("cod_parIzq");
-            AO(); // argumentos
-            match("cod_parDer");
-        } else {
-            // Es una asignacion simple: variable = ... o variable %= ...
-            TablaSimbolos.Simbolo s = TablaSimbolos.buscar(lexema);
-            if (s == null || "-".equals(s.tipo)) {
-                errorSemantico("variable '" + lexema + "' no declarada");
-            }
-            // regla(35); // Eliminado: duplicado
-            
-            String op = "";
-            if (es("cod_asig")) {
-                regla(36);
-                match("cod_asig");
-                op = "=";
-            } else if (es("cod_asigRes")) {
-                regla(37);
-                match("cod_asigRes");
-                op = "%=";
-            } else {
-                error("se esperaba '=' o '%='");
+                // Entramos en el nuevo ambito de la funcion
+                ts.entrarBloque(lexema);
+                ts.getTablaActual().lineaInicio = lineaFuncion;
+                meter(retType);
+                meter(funcion);
+                meter(desp);
+                desp = 0; // el desplazamiento local empieza en 0
+                break;
             }
+            case PARAMETROS: {
+                // Rellenamos los datos de la funcion con sus parametros
+                TablaSimbolos.Simbolo funcion = (TablaSimbolos.Simbolo) valores[numValores - 2];
+                if (funcion != null) {
+                    TablaSimbolos.Tabla tablaLocal = ts.getTablaActual();
+                    funcion.numParams = tablaLocal.simbolos.size();
+                    for (int i = 0; i < funcion.numParams; i++) {
+                        if (i < 10) {
+                            funcion.tipoParam[i] = tablaLocal.simbolos.get(i).tipo;
+                            funcion.modoParam[i] = "valor";
+                        }
+                    }
+                }
+                break;
+            }
+            case SALIR_FUNCION: {
+                String tipoEncontrado = (String) sacar(); // el del cuerpo de la funcion
+                int oldDesp = (Integer) sacar();
+                sacar();
+                String retType = (String) sacar();
+
+                // miramos si lo que devuelve el cuerpo coincide con lo que pide la funcion
+                if (!tipoEncontrado.equals(retType)) {
+                    errorSemantico("Retorno no esperado");
+                }
 
-            String tipoRhs = X(); // evaluamos la expresion de la derecha
-            
-            if (s != null && !"error".equals(tipoRhs)) {
-                if ("=".equals(op)) {
-                    if (!s.tipo.equals(tipoRhs)) {
-                        errorSemantico("tipos incompatibles en asignacion: " + s.tipo + " = " + tipoRhs);
+                // Salimos del ambito y recuperamos el desplazamiento de antes
+                desp = oldDesp;
+                ts.getTablaActual().lineaFin = lineaAnterior; // la de la '}'
+                ts.salirBloque();
+                break;
+            }
+            case PARAMETRO: {
+                int lineaId = (Integer) sacar();
+                String lexema = (String) sacar();
+                String tipo = (String) sacar();
+                // El parametro va a la tabla de simbolos local
+                if (!lexema.isEmpty()) {
+                    int h = ts.gestionarId(lexema);
+                    TablaSimbolos.Simbolo s = ts.getSimbolo(h);
+                    if (s != null) {
+                        s.tipo = tipo;
+                        s.desp = desp;
+                        s.esParametro = 1; // marcamos que es un parametro
+                        s.linea = lineaId;
+                        desp += getAncho(tipo);
                     }
-                } else if ("%=".equals(op)) {
-                    if (!"entero".equals(s.tipo) || !"entero".equals(tipoRhs)) {
-                        errorSemantico("operador %= requiere tipos enteros");
+                }
+                break;
+            }
+            case ACUMULAR: {
+                String tipoS = (String) sacar();
+                if ("void".equals(cima())) {
+                    valores[numValores - 1] = tipoS;
+                }
+                break;
+            }
+            case LLAMADA_O_ASIGNACION: {
+                String lexema = (String) sacar();
+                TablaSimbolos.Simbolo s = ts.buscar(lexema);
+                if (es(COD_PARIZQ)) {
+                    // Es una llamada a funcion: lo que queda en la pila (OP X ASIGNAR) se cambia por ( AO )
+                    if (s == null) {
+                        errorSemantico("funcion '" + lexema + "' no declarada");
+                    }
+                    numPila -= 3;
+                    apilar(COD_PARDER);
+                    apilar(NT_AO);
+                    apilar(COD_PARIZQ);
+                } else {
+                    // Es una asignacion simple
+                    if (s == null || "-".equals(s.tipo)) {
+                        errorSemantico("variable '" + lexema + "' no declarada");
                     }
+                    meter(s);
                 }
+                break;
             }
-        }
-        match("cod_pc");
-    }
-
-    // Bucle for (F0 ; F1 ; F2) S
-    private void SF() throws IOException {
-        regla(38);
-        match("PR_for");
-        match("cod_parIzq");
-        
-        F0(); // inicializacion
-        match("cod_pc");
-        F1(); // condicion
-        match("cod_pc");
-        F2(); // paso/incremento
-        
-        match("cod_parDer");
-        B(); // cuerpo del for (tiene que ser un bloque entre llaves)
-    }
-
-    // Inicializacion del for
-    private void F0() throws IOException {
-        if (es("cod_id")) {
-             // id = X
-            regla(39);
-            Token tId = actual;
-            String lexema = getLexema(tId);
-            match("cod_id");
-            TablaSimbolos.Simbolo s = TablaSimbolos.buscar(lexema);
-            if(s==null || "-".equals(s.tipo)) errorSemantico("variable en for no declarada");
-            
-            String op = "";
-            if (es("cod_asig")) {
-                regla(36);
-                match("cod_asig");
-                op = "=";
-            } else if (es("cod_asigRes")) {
-                regla(37);
-                match("cod_asigRes");
-                op = "%=";
-            } else {
-                error("se esperaba '=' o '%='");
-            }
-
-            String tX = X();
-            if(s!=null && !"error".equals(tX)) {
-               if(!s.tipo.equals(tX)) errorSemantico("tipos incompatibles en init for");
-            }
-        } else if (es("PR_let")) {
-            // let T id = X
-            regla(40);
-            match("PR_let");
-            zonaDeclaracion = true;
-            String tipo = T();
-            Token tId = actual;
-            String lexema = getLexema(tId);
-            match("cod_id");
-            if(!lexema.isEmpty()) {
-                int h = TablaSimbolos.gestionarId(lexema);
-                TablaSimbolos.Simbolo s = TablaSimbolos.getSimbolo(h);
-                if(s!=null) { s.tipo=tipo; s.desp=desp; desp+=getAncho(tipo); }
-            }
-            zonaDeclaracion = false;
-            
-            D1(tipo);
-        } else if (es("cod_pc")) {
-            regla(41); // parte vacia
-        } else {
-            error("inicializacion del for: se esperaba asignacion, 'let' o nada");
-        }
-    }
-
-    // Condicion del for
-    private void F1() throws IOException {
-        if (esInicioExpr()) {
-            regla(42);
-            String t = X();
-            if(!"error".equals(t) && !"boolean".equals(t)) errorSemantico("condicion for debe ser boolean");
-        } else if (es("cod_pc")) {
-            regla(43); // sin condicion
-        } else {
-            error("condicion del for: se esperaba una expresion o nada");
-        }
-    }
-
-    // Incremento del for
-    private void F2() throws IOException {
-        if (es("cod_id")) {
-            regla(44);
-            Token tId = actual;
-            String lexema = getLexema(tId);
-            match("cod_id");
-            TablaSimbolos.Simbolo s = TablaSimbolos.buscar(lexema);
-            if(s==null || "-".equals(s.tipo)) errorSemantico("variable en incr for no declarada");
-            
-            String op = "";
-            if (es("cod_asig")) {
-                regla(36);
-                match("cod_asig");
-                op = "=";
-            } else if (es("cod_asigRes")) {
-                regla(37);
-                match("cod_asigRes");
-                op = "%=";
-            } else {
-                error("se esperaba '=' o '%='");
+            case ASIGNAR: {
+                String tipoRhs = (String) sacar(); // la expresion de la derecha
+                String op = (String) sacar();
+                TablaSimbolos.Simbolo s = (TablaSimbolos.Simbolo) sacar();
+                if (s != null && !"error".equals(tipoRhs)) {
+                    if ("=".equals(op)) {
+                        if (!s.tipo.equals(tipoRhs)) {
+                            errorSemantico("tipos incompatibles en asignacion: " + s.tipo + " = " + tipoRhs);
+                        }
+                    } else if ("%=".equals(op)) {
+                        if (!"entero".equals(s.tipo) || !"entero".equals(tipoRhs)) {
+                            errorSemantico("operador %= requiere tipos enteros");
+                        }
+                    }
+                }
+                break;
             }
-
-            String tX = X();
-            if(s!=null && !"error".equals(tX)) {
-               if("=".equals(op) && !s.tipo.equals(tX)) errorSemantico("tipos incompatibles en incr for");
-               if("%=".equals(op) && (!"entero".equals(s.tipo) || !"entero".equals(tX))) errorSemantico("%= requiere enteros");
+            case VARIABLE_FOR: {
+                TablaSimbolos.Simbolo s = ts.buscar((String) sacar());
+                if (s == null || "-".equals(s.tipo)) errorSemantico("variable en for no declarada");
+                meter(s);
+                break;
             }
-        } else if (es("cod_parDer")) {
-            regla(45); // sin incremento
-        } else {
-            error("incremento del for: se esperaba asignacion o nada");
+            case INICIO_FOR: {
+                String tX = (String) sacar();
+                sacar(); // el operador no se mira
+                TablaSimbolos.Simbolo s = (TablaSimbolos.Simbolo) sacar();
+                if (s != null && !"error".equals(tX)) {
+                    if (!s.tipo.equals(tX)) errorSemantico("tipos incompatibles en init for");
+                }
+                break;
+            }
+            case DECLARAR_FOR: {
+                // let T id = X (aqui no se mira si ya estaba)
+                int lineaId = (Integer) sacar();
+                String lexema = (String) sacar();
+                String tipo = (String) cima();
+                if (!lexema.isEmpty()) {
+                    int h = ts.gestionarId(lexema);
+                    TablaSimbolos.Simbolo s = ts.getSimbolo(h);
+                    if (s != null) { s.tipo = tipo; s.desp = desp; s.linea = lineaId; desp += getAncho(tipo); }
+                }
+                break;
+            }
+            case CONDICION_FOR: {
+                String t = (String) sacar();
+                if (!"error".equals(t) && !"boolean".equals(t)) errorSemantico("condicion for debe ser boolean");
+                break;
+            }
+            case VARIABLE_INCREMENTO: {
+                TablaSimbolos.Simbolo s = ts.buscar((String) sacar());
+                if (s == null || "-".equals(s.tipo)) errorSemantico("variable en incr for no declarada");
+                meter(s);
+                break;
+            }
+            case INCREMENTO_FOR: {
+                String tX = (String) sacar();
+                String op = (String) sacar();
+                TablaSimbolos.Simbolo s = (TablaSimbolos.Simbolo) sacar();
+                if (s != null && !"error".equals(tX)) {
+                    if ("=".equals(op) && !s.tipo.equals(tX)) errorSemantico("tipos incompatibles en incr for");
+                    if ("%=".equals(op) && (!"entero".equals(s.tipo) || !"entero".equals(tX))) errorSemantico("%= requiere enteros");
+                }
+                break;
+            }
+            case CONDICION_IF: {
+                String t = (String) sacar();
+                if (!"error".equals(t) && !"boolean".equals(t)) {
+                    errorSemantico("Condicion del if debe ser booleana");
+                }
+                break;
+            }
+            case LEER: {
+                TablaSimbolos.Simbolo s = ts.buscar((String) sacar());
+                if (s == null || "-".equals(s.tipo)) errorSemantico("Variable no declarada en read");
+                else if ("boolean".equals(s.tipo)) errorSemantico("No se puede hacer read de boolean");
+                break;
+            }
+            case ESCRIBIR: {
+                // la expresion a escribir
+                if ("boolean".equals(sacar())) errorSemantico("No se puede hacer write de boolean");
+                break;
+            }
+            default:
+                throw new IllegalStateException("accion desconocida: " + (a - ACCION));
         }
     }
 
-    // Sentencia if (X) S
-    private void SI() throws IOException {
-        regla(46);
-        match("PR_if");
-        match("cod_parIzq");
-        String t = X();
-        if(!"error".equals(t) && !"boolean".equals(t)) {
-             errorSemantico("Condicion del if debe ser booleana");
+    // Un E de G: false si lo que viene no empieza un E (y entonces no se toca nada)
+    boolean elemento() throws IOException {
+        if (predecir(PRED_G) != 2) {
+            return false;
         }
-        match("cod_parDer");
-        S();
+        regla(2);
+        derivar(LL1.simbolo("E"));
+        return true;
     }
 
-    // Sentencia read id ; (sin parentesis)
-    private void SR() throws IOException {
-        regla(47);
-        match("PR_read");
-        
-        Token tId = actual;
-        String lexema = getLexema(tId);
-        match("cod_id");
-        
-        TablaSimbolos.Simbolo s = TablaSimbolos.buscar(lexema);
-        if(s==null || "-".equals(s.tipo)) errorSemantico("Variable no declarada en read");
-        else if("boolean".equals(s.tipo)) errorSemantico("No se puede hacer read de boolean");
-        
-        match("cod_pc");
-    }
+    // Expresiones por niveles de prioridad (de menos a mas): 0 es '==' (X1/X19), 1 es '+' (X2/X29)
+    // y debajo el '!' (X3). Cada nivel es un bucle, asi que una cadena larga como
+    // a + b + c + ... no anida llamadas. Lo que si anida es una X dentro de un operando (entre
+    // parentesis o como argumento de una llamada): tampoco va en la pila de Java, la X de fuera
+    // se deja a medias en 'marcos' (como el '(' en la pila de operadores de shunting-yard) y se
+    // sigue con la de dentro; al acabar esta se saca y se sigue donde se quedo.
+    // En parse.txt sale lo mismo que con la gramatica: al entrar al nivel su regla (53/56),
+    // por cada operador la suya (54/57) y al acabar la lambda de la cola (55/58).
+    private static final int NUM_NIVELES = 2;
+    private static final int[] REGLA_NIVEL = {53, 56};
+    private static final int[] REGLA_OPERADOR = {54, 57};
+    private static final int[] REGLA_FIN = {55, 58};
+    private static final int[] OPERADOR = {COD_REL, COD_SUM};
+    private static final int[][] PRED_COLA = {PRED_X19, PRED_X29};
 
-    // Sentencia write X ; (sin parentesis)
-    private void SW() throws IOException {
-        regla(48);
-        match("PR_write");
-        
-        String t = X(); // expresion a escribir
-        
-        if("boolean".equals(t)) errorSemantico("No se puede hacer write de boolean");
-        
-        match("cod_pc");
-    }
-
-    // Sentencia return X
-    private String ST() throws IOException {
-        regla(49);
-        match("PR_return");
-        String tipo = X0();
-        match("cod_pc");
-        return tipo;
-    }
-
-    // Expresion opcional de retorno
-    private String X0() throws IOException {
-        if (esInicioExpr()) {
-            regla(50);
-            return X();
-        } else if (es("cod_pc")) {
-            regla(51); // return vacio
-            return "void";
-        } else {
-            error("return incorrecto, se esperaba una expresion o ';'");
-            return "error";
-        }
-    }
+    // a que espera una X a medias: a la X de dentro de '( X )' o a un argumento de una llamada
+    private static final int PARENTESIS = 1;
+    private static final int ARGUMENTO = 2;
 
-    // Una expresion (la mas general)
-    private String X() throws IOException {
-        regla(52);
-        return X1();
+    // Una X a medias
+    private static final class Marco {
+        final String[] tipos = new String[NUM_NIVELES]; // lo que lleva cada nivel (null si aun nada)
+        int negaciones; // los '!' del operando que se esta leyendo
+        int espera;     // PARENTESIS o ARGUMENTO
+        String lexema;  // la funcion que se llama (con ARGUMENTO)
     }
 
-    // Nivel 1: Igualdades (==)
-    private String X1() throws IOException {
-        regla(53);
-        String t = X2();
-        return X12(t);
-    }
+    private Marco[] marcos = new Marco[16]; // se reutilizan entre expresiones
+    private int numMarcos;
 
-    // Parte derecha de la igualdad
-    private String X12(String inh) throws IOException {
-        if (es("cod_rel")) { // ==
-            regla(54);
-            match("cod_rel");
-            String t2 = X2();
-            if (!"error".equals(inh) && !"error".equals(t2)) {
-                 // la regla dice que ambos tienen que ser numericos
-                 if (!esNumerico(inh) || !esNumerico(t2)) {
-                     errorSemantico("== requiere numéricos");
-                 }
+    // Una expresion (la mas general)
+    private String X() throws IOException {
+        int fondo = numMarcos;
+        abrirX();
+        String tipo = null; // el del operando que se acaba de leer (null: hay que leer uno)
+        while (true) {
+            if (tipo == null) {
+                tipo = empezarOperando();
+                if (tipo == null) {
+                    continue; // se ha abierto una X dentro: a por su primer operando
+                }
             }
-            return X12("boolean");
-        } else {
-            regla(55);
-            return inh;
+            Marco m = marcos[numMarcos - 1];
+            String x = cerrarNiveles(m, negar(m, tipo));
+            if (x == null) {
+                tipo = null; // ha venido un operador: otro operando
+                continue;
+            }
+            numMarcos--;
+            if (numMarcos == fondo) {
+                return x;
+            }
+            // era la X de dentro de un operando de la de fuera
+            tipo = seguirOperando(marcos[numMarcos - 1], x);
         }
     }
 
-    // Nivel 2: Sumas (+)
-    private String X2() throws IOException {
-        regla(56);
-        String t = X3();
-        return X22(t);
-    }
-
-    // Parte derecha de la suma
-    private String X22(String inh) throws IOException {
-        if (es("cod_sum")) {
-            regla(57);
-            match("cod_sum");
-            String t2 = X3();
-            if (!"error".equals(inh) && !"error".equals(t2)) {
-                if (inh.equals("entero") && t2.equals("entero")) {
-                    // sigue siendo entero
-                } else if ((inh.equals("entero") || inh.equals("real")) && (t2.equals("entero") || t2.equals("real"))) {
-                    if (inh.equals("real") || t2.equals("real")) return X22("real");
-                } else {
-                    errorSemantico("operacion + no valida para tipos: " + inh + ", " + t2);
-                }
-            }
-            return X22(inh);
-        } else {
-            regla(58);
-            return inh;
+    // Empieza una X: su regla y la de entrar a cada nivel
+    private void abrirX() throws IOException {
+        if (numMarcos == marcos.length) {
+            marcos = Arrays.copyOf(marcos, marcos.length * 2);
+        }
+        Marco m = marcos[numMarcos];
+        if (m == null) {
+            m = marcos[numMarcos] = new Marco();
+        }
+        numMarcos++;
+        Arrays.fill(m.tipos, null);
+        regla(52);
+        for (int nivel = 0; nivel < NUM_NIVELES; nivel++) {
+            regla(REGLA_NIVEL[nivel]);
         }
     }
 
-    // Nivel 3: Negacion logica (!)
-    private String X3() throws IOException {
-        if (es("cod_log")) {
+    // Nivel 3 (X3 y V): los '!' se cuentan y se comprueban luego (negar), de dentro a fuera.
+    // Devuelve el tipo del valor, o null si el valor lleva una X dentro (que ya esta abierta)
+    private String empezarOperando() throws IOException {
+        Marco m = marcos[numMarcos - 1];
+        m.negaciones = 0;
+        int r = predecir(PRED_X3);
+        while (r == 59) {
             regla(59);
-            match("cod_log");
-            String t = X3();
-            if (!"error".equals(t) && !"boolean".equals(t)) {
-                errorSemantico("operador ! requiere boolean");
-            }
-            return "boolean";
-        } else if (esInicioPrimario()) {
-            regla(60);
-            return V();
-        } else {
+            match(COD_LOG);
+            m.negaciones++;
+            r = predecir(PRED_X3);
+        }
+        if (r != 60) {
             error("se esperaba una expresion (identificador, numero, cadena o '(')");
             return "error";
         }
-    }
+        regla(60);
 
-    // Valores básicos (id, numero, cadena, parentesis)
-    private String V() throws IOException {
-        if (es("cod_id")) {
+        // Valores básicos (id, numero, cadena, parentesis)
+        r = predecir(PRED_V);
+        if (r == 61) {
             regla(61);
-            Token tId = actual;
-            match("cod_id");
-            return V2(tId);
-        } else if (es("cod_ce")) {
+            String lexema = getLexema(actual); // antes de avanzar, que el token se reutiliza
+            match(COD_ID);
+            // variable normal o llamada a funcion
+            if (predecir(PRED_V9) != 66) {
+                regla(67);
+                return variable(lexema);
+            }
+            regla(66);
+            match(COD_PARIZQ);
+            // argumentos opcionales
+            int ra = predecir(PRED_AO);
+            if (ra == 68) {
+                regla(68);
+                regla(70);
+                m.espera = ARGUMENTO;
+                m.lexema = lexema;
+                abrirX();
+                return null;
+            }
+            if (ra == 69) {
+                regla(69); // sin argumentos
+            } else {
+                error("argumento incorrecto en llamada a funcion");
+            }
+            return llamada(lexema);
+        } else if (r == 62) {
             regla(62);
-            match("cod_ce");
+            match(COD_CE);
             return "entero";
-        } else if (es("cod_cr")) {
+        } else if (r == 63) {
             regla(63);
-            match("cod_cr");
+            match(COD_CR);
             return "real";
-        } else if (es("cod_cad")) {
+        } else if (r == 64) {
             regla(64);
-            match("cod_cad");
+            match(COD_CAD);
             return "cadena";
-        } else if (es("cod_parIzq")) {
+        } else if (r == 65) {
             regla(65);
-            match("cod_parIzq");
-            String t = X();
-            match("cod_parDer");
-            return t;
+            match(COD_PARIZQ);
+            m.espera = PARENTESIS;
+            abrirX();
+            return null;
         } else {
             error("se esperaba identificador, constante o '('");
             return "error";
         }
     }
 
-    // Para distinguir entre variable normal o llamada a funcion
-    private String V2(Token tId) throws IOException {
-        String lexema = getLexema(tId);
-        if (es("cod_parIzq")) {
-            regla(66);
-            match("cod_parIzq");
-            AO();
-            match("cod_parDer");
-            TablaSimbolos.Simbolo s = TablaSimbolos.buscar(lexema);
-            if (s == null || "-".equals(s.tipo)) {
-                errorSemantico("funcion '" + lexema + "' no declarada");
-                return "error";
-            }
-            return s.tipoRetorno != null ? s.tipoRetorno : s.tipo;
+    // Acaba el operando de 'm' que esperaba a la X de dentro (de tipo x). Devuelve su tipo, o
+    // null si viene otro argumento (y ya esta abierta su X)
+    private String seguirOperando(Marco m, String x) throws IOException {
+        if (m.espera == PARENTESIS) {
+            match(COD_PARDER);
+            return x;
+        }
+        // mas argumentos separados por coma (el tipo de cada uno no se mira)
+        int r = predecir(PRED_AL9);
+        if (r == 71) {
+            regla(71);
+            match(COD_COMA);
+            abrirX();
+            return null;
+        }
+        if (r == 72) {
+            regla(72); // final de la lista
         } else {
-            regla(67);
-            TablaSimbolos.Simbolo s = TablaSimbolos.buscar(lexema);
-            if (s == null || "-".equals(s.tipo)) {
-                errorSemantico("variable '" + lexema + "' no declarada");
-                return "error";
+            error("se esperaba ',' o ')' en los argumentos");
+        }
+        return llamada(m.lexema);
+    }
+
+    // los '!' que habia delante del operando
+    private String negar(Marco m, String t) throws IOException {
+        for (int i = 0; i < m.negaciones; i++) {
+            if (!"error".equals(t) && !"boolean".equals(t)) {
+                errorSemantico("operador ! requiere boolean");
             }
-            return s.tipo;
+            t = "boolean";
         }
+        return t;
     }
 
-    // Argumentos opcionales de una funcion
-    private void AO() throws IOException {
-        if (esInicioExpr()) {
-            regla(68);
-            AL();
-        } else if (es("cod_parDer")) {
-            regla(69); // sin argumentos
-        } else {
-            error("argumento incorrecto en llamada a funcion");
+    // Mete el operando en el nivel de abajo y cierra los niveles que no siguen. Devuelve el tipo
+    // de la X si se acaba, o null si viene un operador (y entonces hay que leer otro operando)
+    private String cerrarNiveles(Marco m, String t) throws IOException {
+        int nivel = NUM_NIVELES - 1;
+        while (true) {
+            String antes = m.tipos[nivel];
+            m.tipos[nivel] = antes == null ? t : nivel == 0 ? tipoIgualdad(antes, t) : tipoSuma(antes, t);
+            // si no viene el operador de este nivel, la cola es lambda (sea lo que sea lo que venga)
+            if (predecir(PRED_COLA[nivel]) == REGLA_OPERADOR[nivel]) {
+                regla(REGLA_OPERADOR[nivel]);
+                match(OPERADOR[nivel]);
+                for (int n = nivel + 1; n < NUM_NIVELES; n++) {
+                    regla(REGLA_NIVEL[n]);
+                }
+                return null;
+            }
+            regla(REGLA_FIN[nivel]);
+            t = m.tipos[nivel];
+            m.tipos[nivel] = null;
+            if (nivel == 0) {
+                return t;
+            }
+            nivel--;
         }
     }
 
-    // Lista de argumentos
-    private void AL() throws IOException {
-        regla(70);
-        X();
-        AL2();
+    // x == y
+    private String tipoIgualdad(String t1, String t2) throws IOException {
+        if (!"error".equals(t1) && !"error".equals(t2)) {
+             // la regla dice que ambos tienen que ser numericos
+             if (!esNumerico(t1) || !esNumerico(t2)) {
+                 errorSemantico("== requiere numéricos");
+             }
+        }
+        return "boolean";
     }
 
-    // Mas argumentos separados por coma
-    private void AL2() throws IOException {
-        if (es("cod_coma")) {
-            regla(71);
-            match("cod_coma");
-            X();
-            AL2();
-        } else if (es("cod_parDer")) {
-            regla(72); // final de la lista
-        } else {
-            error("se esperaba ',' o ')' en los argumentos");
+    // x + y (entero + entero es entero, si hay algun real es real)
+    private String tipoSuma(String t1, String t2) throws IOException {
+        if (!"error".equals(t1) && !"error".equals(t2)) {
+            if (t1.equals("entero") && t2.equals("entero")) {
+                // sigue siendo entero
+            } else if ((t1.equals("entero") || t1.equals("real")) && (t2.equals("entero") || t2.equals("real"))) {
+                return "real";
+            } else {
+                errorSemantico("operacion + no valida para tipos: " + t1 + ", " + t2);
+            }
+        }
+        return t1;
+    }
+
+    // un id que no es llamada
+    private String variable(String lexema) throws IOException {
+        TablaSimbolos.Simbolo s = ts.buscar(lexema);
+        if (s == null || "-".equals(s.tipo)) {
+            errorSemantico("variable '" + lexema + "' no declarada");
+            return "error";
+        }
+        return s.tipo;
+    }
+
+    // el final de una llamada, despues de los argumentos
+    private String llamada(String lexema) throws IOException {
+        match(COD_PARDER);
+        TablaSimbolos.Simbolo s = ts.buscar(lexema);
+        if (s == null || "-".equals(s.tipo)) {
+            errorSemantico("funcion '" + lexema + "' no declarada");
+            return "error";
         }
+        return s.tipoRetorno != null ? s.tipoRetorno : s.tipo;
     }
 }
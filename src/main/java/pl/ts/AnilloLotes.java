@@ -0,0 +1,101 @@
+package pl.ts;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Cola de tamaño fijo entre dos hilos: uno solo pone y otro solo saca (lotes de tokens,
+// buffers de texto...). No usa locks: cada hilo mueve su contador y mira el del otro.
+// Si esta llena, poner() espera a que el otro saque (asi el hilo rapido no se come la
+// memoria) y si esta vacia, sacar() espera a que le pongan algo.
+// Para esperar primero se da unas vueltas y luego se duerme hasta que el otro le avisa.
+public class AnilloLotes<T> {
+
+    private static final int VUELTAS = 64; // antes de dormirse
+
+    private final Object[] huecos;
+    private final int mascara;
+    private final AtomicLong cabeza = new AtomicLong(); // siguiente por sacar (lo mueve el que saca)
+    private final AtomicLong cola = new AtomicLong();   // siguiente por poner (lo mueve el que pone)
+
+    // el hilo que esta dormido esperando (para despertarlo)
+    private volatile Thread esperaSacar;
+    private volatile Thread esperaPoner;
+    private volatile boolean cancelado;
+
+    // la capacidad tiene que ser potencia de 2
+    public AnilloLotes(int capacidad) {
+        if (capacidad <= 0 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("la capacidad tiene que ser potencia de 2: " + capacidad);
+        }
+        huecos = new Object[capacidad];
+        mascara = capacidad - 1;
+    }
+
+    public void poner(T x) throws InterruptedIOException {
+        long c = cola.get();
+        for (int vuelta = 0; c - cabeza.get() == huecos.length; vuelta++) {
+            esperar(vuelta, true, c);
+        }
+        huecos[(int) c & mascara] = x;
+        cola.set(c + 1);
+        despertar(esperaSacar);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T sacar() throws InterruptedIOException {
+        long c = cabeza.get();
+        for (int vuelta = 0; c == cola.get(); vuelta++) {
+            esperar(vuelta, false, c);
+        }
+        int i = (int) c & mascara;
+        T x = (T) huecos[i];
+        huecos[i] = null;
+        cabeza.set(c + 1);
+        despertar(esperaPoner);
+        return x;
+    }
+
+    // Para que el otro hilo deje de esperar (si uno de los dos falla o se va antes)
+    public void cancelar() {
+        cancelado = true;
+        despertar(esperaSacar);
+        despertar(esperaPoner);
+    }
+
+    private void esperar(int vuelta, boolean poniendo, long c) throws InterruptedIOException {
+        if (cancelado) {
+            throw new InterruptedIOException("cola cancelada");
+        }
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("hilo interrumpido");
+        }
+        if (vuelta < VUELTAS) {
+            Thread.onSpinWait();
+            return;
+        }
+        // nos apuntamos y volvemos a mirar antes de dormir, por si el otro
+        // ha movido su contador justo antes de ver que estabamos esperando
+        Thread yo = Thread.currentThread();
+        if (poniendo) {
+            esperaPoner = yo;
+            if (c - cabeza.get() == huecos.length && !cancelado) {
+                LockSupport.park(this);
+            }
+            esperaPoner = null;
+        } else {
+            esperaSacar = yo;
+            if (c == cola.get() && !cancelado) {
+                LockSupport.park(this);
+            }
+            esperaSacar = null;
+        }
+    }
+
+    private static void despertar(Thread t) {
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+}
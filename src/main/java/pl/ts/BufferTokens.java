@@ -0,0 +1,148 @@
+package pl.ts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Muchos tokens guardados en arrays (uno por campo) en vez de un objeto por token
+// Los literales (numeros y cadenas) guardan su texto en 'literales' y el atributo es su posicion;
+// el valor de los numeros va en 'valores' (un int cabe entero en un double)
+public class BufferTokens {
+
+    private int[] codigos;
+    private int[] atributos;
+    private int[] lineas;
+    private double[] valores;
+    private int tam = 0;
+    private List<String> literales = new ArrayList<>();
+
+    public BufferTokens() {
+        this(256);
+    }
+
+    public BufferTokens(int capacidad) {
+        codigos = new int[capacidad];
+        atributos = new int[capacidad];
+        lineas = new int[capacidad];
+        valores = new double[capacidad];
+    }
+
+    public void anadir(int codigo, int atributo, int linea) {
+        anadir(codigo, atributo, linea, 0);
+    }
+
+    public void anadir(int codigo, int atributo, int linea, double valor) {
+        if (tam == codigos.length) {
+            int nueva = Math.max(16, tam * 2);
+            codigos = Arrays.copyOf(codigos, nueva);
+            atributos = Arrays.copyOf(atributos, nueva);
+            lineas = Arrays.copyOf(lineas, nueva);
+            valores = Arrays.copyOf(valores, nueva);
+        }
+        codigos[tam] = codigo;
+        atributos[tam] = atributo;
+        lineas[tam] = linea;
+        valores[tam] = valor;
+        tam++;
+    }
+
+    // Guarda el texto de un literal y devuelve su posicion (para usarla de atributo)
+    public int anadirLiteral(String texto) {
+        literales.add(texto);
+        return literales.size() - 1;
+    }
+
+    public int tam() {
+        return tam;
+    }
+
+    public int codigo(int i) {
+        return codigos[i];
+    }
+
+    public int atributo(int i) {
+        return atributos[i];
+    }
+
+    public int linea(int i) {
+        return lineas[i];
+    }
+
+    public void setAtributo(int i, int atributo) {
+        atributos[i] = atributo;
+    }
+
+    public double valor(int i) {
+        return valores[i];
+    }
+
+    public void setLinea(int i, int linea) {
+        lineas[i] = linea;
+    }
+
+    public String literal(int indice) {
+        return literales.get(indice);
+    }
+
+    // Copia el token i en t (sin crear objetos)
+    public void leer(int i, Token t) {
+        t.codigo = codigos[i];
+        t.atributo = atributos[i];
+        t.linea = lineas[i];
+        t.valorEntero = (int) valores[i];
+        t.valorReal = valores[i];
+    }
+
+    // --- Para el analisis incremental ---
+
+    // Cambia los tokens [desde, hasta) por todos los de 'otros' (los literales no se copian)
+    public void reemplazar(int desde, int hasta, BufferTokens otros) {
+        int nuevo = tam - (hasta - desde) + otros.tam;
+        if (nuevo > codigos.length) {
+            int capacidad = Math.max(nuevo, tam * 2);
+            codigos = Arrays.copyOf(codigos, capacidad);
+            atributos = Arrays.copyOf(atributos, capacidad);
+            lineas = Arrays.copyOf(lineas, capacidad);
+            valores = Arrays.copyOf(valores, capacidad);
+        }
+        int destino = desde + otros.tam;
+        if (destino != hasta) { // si son los mismos que habia no se mueve el resto
+            System.arraycopy(codigos, hasta, codigos, destino, tam - hasta);
+            System.arraycopy(atributos, hasta, atributos, destino, tam - hasta);
+            System.arraycopy(lineas, hasta, lineas, destino, tam - hasta);
+            System.arraycopy(valores, hasta, valores, destino, tam - hasta);
+        }
+        System.arraycopy(otros.codigos, 0, codigos, desde, otros.tam);
+        System.arraycopy(otros.atributos, 0, atributos, desde, otros.tam);
+        System.arraycopy(otros.lineas, 0, lineas, desde, otros.tam);
+        System.arraycopy(otros.valores, 0, valores, desde, otros.tam);
+        tam = nuevo;
+    }
+
+    // Suma 'delta' a la linea de los tokens de 'desde' en adelante
+    public void desplazarLineas(int desde, int delta) {
+        for (int i = desde; i < tam; i++) {
+            lineas[i] += delta;
+        }
+    }
+
+    // El primer token que esta en la linea 'linea' o despues (tam si no hay); las lineas van en orden
+    public int buscarLinea(int linea) {
+        int bajo = 0;
+        int alto = tam;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (lineas[medio] < linea) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    public void vaciar() {
+        tam = 0;
+        literales.clear();
+    }
+}
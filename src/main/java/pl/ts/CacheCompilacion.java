@@ -0,0 +1,320 @@
+package pl.ts;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Cache en disco de compilaciones (opcion --cache carpeta): si un fuente ya se ha compilado
+// con el mismo compilador y las mismas opciones, sus ficheros de salida se copian de la
+// cache en vez de pasar el lexer y el parser.
+// La clave es el SHA-256 del fuente, del compilador (sus clases y recursos, como la gramatica
+// de TablaLL1: cualquier cambio es otra version), de lo que cambia los bytes de la salida (--binario,
+// --check-only, --mmap, --errores-al-vuelo, el charset y el salto de linea del sistema) y de como llegan los
+// tokens al parser (--paralelo, --segmentado). Estos ultimos tienen que dar lo mismo, pero
+// si por un fallo no es asi, una entrada de un modo no se le da al otro.
+// Cada entrada es una carpeta <cache>/<2 primeros>/<clave>/ con los ficheros de salida y
+// 'info' (numero de errores). Se escribe en una carpeta temporal y se renombra, asi que se
+// puede usar a la vez desde varios hilos y varios procesos.
+// Cuando pasa del tamaño maximo se borran las entradas usadas hace mas tiempo (LRU; la fecha
+// de 'info' se actualiza en cada acierto).
+public class CacheCompilacion {
+
+    public static final long TAM_MAX_DEFECTO = 1024L << 20; // 1 GB
+
+    private static final String FORMATO = "MYJS-CACHE 2"; // cambiarlo si cambia como se guarda o la clave
+    private static final String INFO = "info";
+    private static final String TEMPORALES = "tmp";
+
+    // una por carpeta en toda la JVM (en el servidor cada peticion tiene su SesionCompilador)
+    private static final Map<Path, CacheCompilacion> abiertas = new ConcurrentHashMap<>();
+    private static volatile String versionCompilador;
+
+    private final Path carpeta;
+    private long tamMax; // el del ultimo que la ha abierto (ver abrir)
+    // entradas y su tamaño, de la usada hace mas tiempo a la ultima
+    private final LinkedHashMap<String, Long> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long tamTotal;
+
+    private final AtomicInteger aciertos = new AtomicInteger();
+    private final AtomicInteger fallos = new AtomicInteger();
+
+    // Un fichero de salida: su nombre en la entrada y donde va
+    public static class Salida {
+        final String nombre;
+        final Path ruta;
+
+        public Salida(String nombre, String ruta) {
+            this.nombre = nombre;
+            this.ruta = Paths.get(ruta);
+        }
+    }
+
+    private CacheCompilacion(Path carpeta, long tamMax) throws IOException {
+        this.carpeta = carpeta;
+        this.tamMax = tamMax;
+        Files.createDirectories(carpeta.resolve(TEMPORALES));
+        cargar();
+    }
+
+    // Si la carpeta ya estaba abierta (en el servidor, por otra peticion) se queda con el tamaño
+    // maximo que se pide ahora, y si es menor se recorta ya: el limite es el de la carpeta, no
+    // puede haber uno por peticion
+    public static CacheCompilacion abrir(String carpeta, long tamMax) throws IOException {
+        Path ruta = Paths.get(carpeta).toAbsolutePath().normalize();
+        CacheCompilacion cache;
+        try {
+            cache = abiertas.computeIfAbsent(ruta, r -> {
+                try {
+                    return new CacheCompilacion(r, tamMax);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        synchronized (cache) {
+            if (cache.tamMax != tamMax) {
+                cache.tamMax = tamMax;
+                cache.recortar();
+            }
+        }
+        return cache;
+    }
+
+    public int getAciertos() {
+        return aciertos.get();
+    }
+
+    public int getFallos() {
+        return fallos.get();
+    }
+
+    // --- CLAVE ---
+
+    public String clave(String archivoFuente, OpcionesCompilacion opciones) throws IOException {
+        MessageDigest md = sha256();
+        String cabecera = FORMATO + '\n' + versionCompilador() + '\n'
+                + opciones.formatoBinario + ' ' + opciones.soloComprobar + ' ' + opciones.mapearFuente
+                + ' ' + opciones.erroresAlVuelo + '\n'
+                + opciones.lexicoParalelo + ' ' + opciones.compilacionSegmentada + '\n'
+                + Charset.defaultCharset().name() + '\n' + System.lineSeparator() + '\n';
+        md.update(cabecera.getBytes(StandardCharsets.UTF_8));
+        actualizar(md, Paths.get(archivoFuente));
+        return hex(md.digest());
+    }
+
+    // El compilador: el jar entero o todos los ficheros de la carpeta de clases (no solo los
+    // .class: gramatica_vast.txt decide los numeros de regla del parse)
+    static String versionCompilador() throws IOException {
+        String v = versionCompilador;
+        if (v == null) {
+            MessageDigest md = sha256();
+            Path origen = origenClases();
+            if (Files.isDirectory(origen)) {
+                List<Path> clases;
+                try (Stream<Path> s = Files.walk(origen)) {
+                    // ordenadas, para que no dependa del sistema de ficheros
+                    clases = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path p : clases) {
+                    md.update(origen.relativize(p).toString().getBytes(StandardCharsets.UTF_8));
+                    actualizar(md, p);
+                }
+            } else {
+                actualizar(md, origen);
+            }
+            v = hex(md.digest());
+            versionCompilador = v;
+        }
+        return v;
+    }
+
+    private static Path origenClases() throws IOException {
+        CodeSource cs = CacheCompilacion.class.getProtectionDomain().getCodeSource();
+        if (cs == null || cs.getLocation() == null) {
+            throw new IOException("no se encuentran las clases del compilador para la cache");
+        }
+        try {
+            return Paths.get(cs.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void actualizar(MessageDigest md, Path fichero) throws IOException {
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(fichero)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // todas las JVM lo tienen
+        }
+    }
+
+    private static String hex(byte[] b) {
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (byte x : b) {
+            sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    // --- LEER Y GUARDAR ---
+
+    // Si la clave esta, copia sus ficheros a las salidas y devuelve el numero de errores;
+    // si no (o si la han borrado mientras tanto), -1
+    public int restaurar(String clave, List<Salida> salidas) {
+        Path entrada = entrada(clave);
+        try {
+            int numErrores = Integer.parseInt(new String(Files.readAllBytes(entrada.resolve(INFO)),
+                    StandardCharsets.UTF_8).trim());
+            for (Salida s : salidas) {
+                copiar(entrada.resolve(s.nombre), s.ruta);
+            }
+            Files.setLastModifiedTime(entrada.resolve(INFO), FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                if (entradas.get(clave) == null) {
+                    anotar(clave, tamano(entrada)); // la ha guardado otro proceso
+                }
+            }
+            aciertos.incrementAndGet();
+            return numErrores;
+        } catch (IOException | NumberFormatException e) {
+            fallos.incrementAndGet();
+            return -1;
+        }
+    }
+
+    // Guarda las salidas de una compilacion. Si falla no pasa nada: la compilacion ya esta hecha
+    public void guardar(String clave, List<Salida> salidas, int numErrores) {
+        Path temporal = null;
+        try {
+            temporal = Files.createTempDirectory(carpeta.resolve(TEMPORALES), clave.substring(0, 8));
+            for (Salida s : salidas) {
+                copiar(s.ruta, temporal.resolve(s.nombre));
+            }
+            Files.write(temporal.resolve(INFO), (numErrores + "\n").getBytes(StandardCharsets.UTF_8));
+            long tam = tamano(temporal);
+
+            Path entrada = entrada(clave);
+            Files.createDirectories(entrada.getParent());
+            try {
+                Files.move(temporal, entrada, StandardCopyOption.ATOMIC_MOVE);
+                temporal = null;
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                return; // la ha guardado otro a la vez, es la misma
+            }
+            synchronized (this) {
+                anotar(clave, tam);
+                recortar();
+            }
+        } catch (IOException e) {
+            // sin cache para este fichero
+        } finally {
+            if (temporal != null) {
+                borrar(temporal);
+            }
+        }
+    }
+
+    private Path entrada(String clave) {
+        return carpeta.resolve(clave.substring(0, 2)).resolve(clave);
+    }
+
+    // Con transferTo el sistema copia sin pasar los bytes por la JVM
+    private static void copiar(Path de, Path a) throws IOException {
+        try (FileChannel in = FileChannel.open(de, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(a, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long tam = in.size();
+            long hecho = 0;
+            while (hecho < tam) {
+                hecho += in.transferTo(hecho, tam - hecho, out);
+            }
+        }
+    }
+
+    // --- TAMAÑO Y LRU ---
+
+    // Lee las entradas que hay en la carpeta, ordenadas por su ultimo uso
+    private void cargar() throws IOException {
+        List<Object[]> encontradas = new ArrayList<>(); // {clave, tam, fecha}
+        try (DirectoryStream<Path> grupos = Files.newDirectoryStream(carpeta)) {
+            for (Path grupo : grupos) {
+                if (!Files.isDirectory(grupo) || grupo.getFileName().toString().equals(TEMPORALES)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> claves = Files.newDirectoryStream(grupo)) {
+                    for (Path entrada : claves) {
+                        Path info = entrada.resolve(INFO);
+                        if (Files.isRegularFile(info)) {
+                            encontradas.add(new Object[]{entrada.getFileName().toString(), tamano(entrada),
+                                    Files.getLastModifiedTime(info).toMillis()});
+                        }
+                    }
+                }
+            }
+        }
+        encontradas.sort(Comparator.comparingLong(e -> (Long) e[2]));
+        for (Object[] e : encontradas) {
+            anotar((String) e[0], (Long) e[1]);
+        }
+        recortar();
+    }
+
+    private void anotar(String clave, long tam) {
+        Long antes = entradas.put(clave, tam);
+        tamTotal += tam - (antes != null ? antes : 0);
+    }
+
+    private void recortar() {
+        Iterator<Map.Entry<String, Long>> it = entradas.entrySet().iterator();
+        while (tamTotal > tamMax && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            borrar(entrada(e.getKey()));
+            tamTotal -= e.getValue();
+            it.remove();
+        }
+    }
+
+    private static long tamano(Path entrada) throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> ficheros = Files.newDirectoryStream(entrada)) {
+            for (Path f : ficheros) {
+                total += Files.size(f);
+            }
+        }
+        return total;
+    }
+
+    private static void borrar(Path carpeta) {
+        try (Stream<Path> s = Files.walk(carpeta)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            // si no se puede borrar se queda (otro proceso la estara usando)
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package pl.ts;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Cliente del ServidorCompilador: se usa igual que Main y escribe lo mismo,
+// pero compila el servidor (que ya esta arrancado y caliente)
+//   java -cp target/classes pl.ts.ClienteCompilador [--puerto N | --socket ruta] [--plazo ms] <argumentos de Main>
+//   java -cp target/classes pl.ts.ClienteCompilador [--puerto N | --socket ruta] --parar
+// Si se corta el cliente (Ctrl+C) el servidor cancela la compilacion.
+// Sin --puerto ni --socket va al socket de Unix por defecto del usuario; con --puerto lee la
+// clave que ha dejado el servidor en la carpeta del usuario y la manda.
+public class ClienteCompilador {
+
+    private static final String USO =
+              "Uso: java -cp target/classes pl.ts.ClienteCompilador [--puerto N | --socket ruta] [--plazo ms] <argumentos de Main>\n"
+            + "     java -cp target/classes pl.ts.ClienteCompilador [--puerto N | --socket ruta] --parar";
+
+    public static void main(String[] args) {
+        String socket = null;
+        Integer puerto = null;
+        long plazo = 0;
+        boolean parar = false;
+        List<String> resto = new ArrayList<>(); // lo que va a Main
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--socket") && i + 1 < args.length) {
+                socket = args[++i];
+            } else if (a.equals("--puerto") && i + 1 < args.length) {
+                long n = Main.numero(args[++i], 65535);
+                if (n < 0) {
+                    System.err.println("Valor no valido para --puerto: " + args[i]);
+                    System.err.println(USO);
+                    System.exit(ServidorCompilador.SALIDA_FALLO);
+                }
+                puerto = (int) n;
+            } else if (a.equals("--plazo") && i + 1 < args.length) {
+                plazo = Main.numero(args[++i], Long.MAX_VALUE);
+                if (plazo < 0) {
+                    System.err.println("Valor no valido para --plazo: " + args[i]);
+                    System.err.println(USO);
+                    System.exit(ServidorCompilador.SALIDA_FALLO);
+                }
+            } else if (a.equals("--parar")) {
+                parar = true;
+            } else {
+                resto.add(a);
+            }
+        }
+
+        int codigo = ServidorCompilador.SALIDA_FALLO;
+        String donde = socket != null ? socket : puerto != null ? "localhost:" + puerto : "el socket por defecto";
+        StringBuilder peticion = new StringBuilder();
+        peticion.append(ServidorCompilador.VERSION).append('\n');
+        if (socket == null && puerto != null) {
+            try {
+                peticion.append("CLAVE ").append(new String(Files.readAllBytes(
+                        ServidorCompilador.rutaClave(puerto)), StandardCharsets.UTF_8).trim()).append('\n');
+            } catch (IOException e) {
+                System.err.println("No se puede leer la clave del servidor en " + donde + ": " + e.getMessage());
+                System.exit(codigo);
+            }
+        }
+        peticion.append("DIR ").append(Paths.get("").toAbsolutePath()).append('\n');
+        if (plazo > 0) {
+            peticion.append("PLAZO ").append(plazo).append('\n');
+        }
+        for (String a : resto) {
+            peticion.append("ARG ").append(a).append('\n');
+        }
+        peticion.append(parar ? "PARAR" : "FIN").append('\n');
+
+        try (SocketChannel canal = SocketChannel.open(ServidorCompilador.direccion(socket, puerto))) {
+            ByteBuffer buf = ByteBuffer.wrap(peticion.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                canal.write(buf);
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    ServidorCompilador.entrada(canal), StandardCharsets.UTF_8));
+            String linea;
+            while ((linea = in.readLine()) != null) {
+                if (linea.startsWith("OUT ")) {
+                    System.out.println(linea.substring(4));
+                } else if (linea.startsWith("ERR ")) {
+                    System.err.println(linea.substring(4));
+                } else if (linea.startsWith("SALIDA ")) {
+                    codigo = Integer.parseInt(linea.substring(7).trim());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("No se puede hablar con el servidor en " + donde + ": " + e.getMessage());
+        }
+        if (codigo != 0) {
+            System.exit(codigo);
+        }
+    }
+}
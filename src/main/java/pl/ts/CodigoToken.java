@@ -0,0 +1,89 @@
+package pl.ts;
+
+// Codigos de los tokens como enteros (0, 1, 2...) para no comparar Strings
+// El nombre de texto ("cod_id", "PR_let"...) es el que sale en tokens.txt
+public final class CodigoToken {
+
+    public static final int COD_EOF = 0;
+    public static final int COD_ID = 1;
+    public static final int COD_CE = 2;        // constante entera
+    public static final int COD_CR = 3;        // constante real
+    public static final int COD_CAD = 4;       // cadena
+    public static final int COD_SUM = 5;       // +
+    public static final int COD_REL = 6;       // ==
+    public static final int COD_LOG = 7;       // !
+    public static final int COD_ASIG = 8;      // =
+    public static final int COD_ASIGRES = 9;   // %=
+    public static final int COD_PC = 10;       // ;
+    public static final int COD_PARIZQ = 11;   // (
+    public static final int COD_PARDER = 12;   // )
+    public static final int COD_LLIZQ = 13;    // {
+    public static final int COD_LLDER = 14;    // }
+    public static final int COD_COMA = 15;     // ,
+    public static final int PR_LET = 16;
+    public static final int PR_FUNCTION = 17;
+    public static final int PR_INT = 18;
+    public static final int PR_FLOAT = 19;
+    public static final int PR_BOOLEAN = 20;
+    public static final int PR_STRING = 21;
+    public static final int PR_VOID = 22;
+    public static final int PR_IF = 23;
+    public static final int PR_FOR = 24;
+    public static final int PR_RETURN = 25;
+    public static final int PR_WRITE = 26;
+    public static final int PR_READ = 27;
+
+    public static final int NUM_CODIGOS = 28;
+
+    // nombre de cada codigo en tokens.txt
+    private static final String[] NOMBRES = {
+        "cod_eof", "cod_id", "cod_ce", "cod_cr", "cod_cad",
+        "cod_sum", "cod_rel", "cod_log", "cod_asig", "cod_asigRes",
+        "cod_pc", "cod_parIzq", "cod_parDer", "cod_LLizq", "cod_LLder", "cod_coma",
+        "PR_let", "PR_function", "PR_int", "PR_float", "PR_boolean", "PR_string",
+        "PR_void", "PR_if", "PR_for", "PR_return", "PR_write", "PR_read"
+    };
+
+    // como se ve en los mensajes de error
+    private static final String[] LEGIBLES = {
+        "fin de fichero", "identificador", "entero", "real", "cadena",
+        "'+'", "'=='", "'!'", "'='", "'%='",
+        "';'", "'('", "')'", "'{'", "'}'", "','",
+        "'let'", "'function'", "'int'", "'float'", "'boolean'", "'string'",
+        "'void'", "'if'", "'for'", "'return'", "'write'", "'read'"
+    };
+
+    // linea completa de tokens.txt para los tokens que no llevan atributo: "<cod_pc,>"
+    private static final String[] SIN_ATRIBUTO = new String[NUM_CODIGOS];
+
+    static {
+        for (int i = 0; i < NUM_CODIGOS; i++) {
+            SIN_ATRIBUTO[i] = "<" + NOMBRES[i] + ",>";
+        }
+    }
+
+    private CodigoToken() {
+    }
+
+    public static String nombre(int codigo) {
+        return NOMBRES[codigo];
+    }
+
+    public static String legible(int codigo) {
+        return LEGIBLES[codigo];
+    }
+
+    public static String sinAtributo(int codigo) {
+        return SIN_ATRIBUTO[codigo];
+    }
+
+    // el codigo de un nombre de tokens.txt (-1 si no existe)
+    public static int buscar(String nombre) {
+        for (int i = 0; i < NUM_CODIGOS; i++) {
+            if (NOMBRES[i].equals(nombre)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
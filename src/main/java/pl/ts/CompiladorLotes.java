@@ -0,0 +1,143 @@
+package pl.ts;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Modo lote: compila muchos ficheros en la misma JVM con un grupo de hilos
+// Cada fichero tiene su carpeta de salida con tokens.txt, ts.txt, parse.txt y errores.txt
+public class CompiladorLotes {
+
+    // Lo que ha pasado con cada fichero
+    public static class Resultado {
+        public String fuente;
+        public String carpeta;   // donde estan sus ficheros de salida
+        public int numErrores;   // errores del propio programa MyJS
+        public String fallo;     // mensaje si no se pudo compilar (null si fue bien)
+
+        public Resultado(String fuente, String carpeta) {
+            this.fuente = fuente;
+            this.carpeta = carpeta;
+        }
+    }
+
+    private int numHilos;
+    private Path carpetaSalida;
+    private SesionCompilador sesion; // la misma para todos los hilos
+
+    public CompiladorLotes(int numHilos, String carpetaSalida, OpcionesCompilacion opciones) {
+        this.numHilos = numHilos;
+        this.carpetaSalida = Paths.get(carpetaSalida);
+        this.sesion = new SesionCompilador(opciones);
+    }
+
+    // La entrada puede ser una carpeta (se cogen todos los .js que haya dentro)
+    // o un fichero de texto con una ruta por linea
+    public static List<String> leerEntrada(String entrada) throws IOException {
+        Path ruta = Paths.get(entrada);
+        List<String> fuentes = new ArrayList<>();
+        if (Files.isDirectory(ruta)) {
+            try (Stream<Path> s = Files.walk(ruta)) {
+                // ordenados, para que el resultado no dependa del sistema de ficheros
+                fuentes = s.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".js"))
+                           .map(Path::toString)
+                           .sorted()
+                           .collect(Collectors.toList());
+            }
+        } else {
+            for (String linea : Files.readAllLines(ruta)) {
+                linea = linea.trim();
+                if (!linea.isEmpty() && !linea.startsWith("#")) {
+                    fuentes.add(linea);
+                }
+            }
+        }
+        return fuentes;
+    }
+
+    // Compila todos los ficheros y devuelve los resultados en el mismo orden de entrada
+    public List<Resultado> compilar(List<String> fuentes) throws IOException, InterruptedException {
+        Files.createDirectories(carpetaSalida);
+
+        // Primero decidimos la carpeta de cada fichero (si dos se llaman igual les ponemos -2, -3...)
+        // Se apuntan todos los nombres que se dan, tambien los de -N: si no, a/x.js, b/x.js y
+        // x-2.js acabarian los dos ultimos en x-2 y dos hilos escribirian en la misma carpeta
+        List<Resultado> resultados = new ArrayList<>();
+        Set<String> usados = new HashSet<>();
+        for (String fuente : fuentes) {
+            String base = Paths.get(fuente).getFileName().toString();
+            if (base.endsWith(".js")) {
+                base = base.substring(0, base.length() - 3);
+            }
+            String nombre = base;
+            for (int n = 2; !usados.add(nombre); n++) {
+                nombre = base + "-" + n;
+            }
+            resultados.add(new Resultado(fuente, carpetaSalida.resolve(nombre).toString()));
+        }
+
+        ExecutorService hilos = Executors.newFixedThreadPool(numHilos);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (Resultado r : resultados) {
+                tareas.add(hilos.submit(() -> compilarUno(r)));
+            }
+            for (Future<?> t : tareas) {
+                try {
+                    t.get();
+                } catch (ExecutionException e) {
+                    // compilarUno ya guarda sus fallos, aqui no deberia llegar nada
+                }
+            }
+        } finally {
+            // si nos han interrumpido (cancelar en el servidor) tambien paran los que queden
+            hilos.shutdownNow();
+        }
+        return resultados;
+    }
+
+    private void compilarUno(Resultado r) {
+        try {
+            Path carpeta = Paths.get(r.carpeta);
+            Files.createDirectories(carpeta);
+            r.numErrores = sesion.compilarFicheros(r.fuente,
+                    carpeta.resolve("tokens.txt").toString(),
+                    carpeta.resolve("ts.txt").toString(),
+                    carpeta.resolve("parse.txt").toString(),
+                    carpeta.resolve("errores.txt").toString());
+        } catch (Exception e) {
+            r.fallo = e.getClass().getSimpleName() + ": " + e.getMessage();
+        } catch (StackOverflowError e) {
+            r.fallo = "StackOverflowError (programa demasiado anidado)";
+        } catch (Throwable e) {
+            // OutOfMemoryError con un fichero enorme y demas: es un fallo de ese fichero,
+            // los otros siguen (lo que ocupaba ya se puede liberar)
+            r.fallo = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    // Resumen final: cuantos han ido bien, con errores, fallidos y la velocidad
+    public static void imprimirResumen(List<Resultado> resultados, long nanos, PrintStream out) {
+        int correctos = 0, conErrores = 0, fallidos = 0;
+        for (Resultado r : resultados) {
+            if (r.fallo != null) {
+                fallidos++;
+                out.println("FALLO " + r.fuente + ": " + r.fallo);
+            } else if (r.numErrores > 0) {
+                conErrores++;
+            } else {
+                correctos++;
+            }
+        }
+        double segundos = nanos / 1e9;
+        out.println("Ficheros: " + resultados.size()
+                + " | correctos: " + correctos
+                + " | con errores: " + conErrores
+                + " | fallidos: " + fallidos);
+        out.println(String.format(Locale.ROOT, "Tiempo: %.3f s | %.1f ficheros/s",
+                segundos, segundos > 0 ? resultados.size() / segundos : 0.0));
+    }
+}
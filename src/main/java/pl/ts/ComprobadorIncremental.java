@@ -0,0 +1,152 @@
+package pl.ts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Comprueba que AnalisisIncremental da siempre lo mismo que compilar el texto entero: hace
+// cambios al azar (los trozos que salen al escribir: declaraciones, llaves, parentesis,
+// errores...) y despues de cada uno compara tokens, parse, tablas y errores con los de
+// SesionCompilador. Sin ficheros usa programas de GeneradorMyJS (con y sin errores).
+//   java -cp target/classes pl.ts.ComprobadorIncremental [--semilla N] [--ediciones N] [fuente.js ...]
+// Con la misma semilla hace siempre los mismos cambios. El codigo de salida es 1 si alguno no
+// coincide; el texto con el que falla se deja en incremental-fallo-<n>.js para repetirlo.
+public class ComprobadorIncremental {
+
+    private static final String USO =
+            "Uso: java -cp target/classes pl.ts.ComprobadorIncremental [--semilla N] [--ediciones N] [fuente.js ...]";
+
+    // lo que se mete en cada cambio (o se borra, con "")
+    private static final String[] TROZOS = {
+        "", "\n", "\r\n", "let int q;\n", "x", "}", "{", "function int g(int a) { return a; }\n",
+        "(", ")", "+ 1", ";", "\"s\"", "write 3;\n", "if (true) ", "let float z = 2.5;", "/", "//c",
+        "99999", "7", "!", "==", "return;", "let string t", "\n}\n", "a = b;\n", "0x", "@",
+        "for (i = 0; i == 3; i = i + 1) {", "read q;", "let boolean b = !(1 == 2);\n", "/* */", "'"
+    };
+
+    private final Random azar;
+    private final int ediciones;
+    private int fallos;
+
+    public ComprobadorIncremental(long semilla, int ediciones) {
+        this.azar = new Random(semilla);
+        this.ediciones = ediciones;
+    }
+
+    // Hace los cambios sobre 'fuente' y devuelve cuantos no han coincidido
+    public int comprobar(String nombre, String fuente) throws IOException {
+        int antes = fallos;
+        AnalisisIncremental inc = new AnalisisIncremental(fuente);
+        comparar(nombre, "inicio", inc);
+        for (int n = 0; n < ediciones; n++) {
+            int numLineas = inc.numLineas();
+            int l1 = azar.nextInt(numLineas);
+            int c1 = azar.nextInt(inc.linea(l1).length() + 1);
+            // casi siempre en la misma linea; a veces hasta un par de lineas mas abajo
+            int l2 = azar.nextInt(4) == 0 ? Math.min(numLineas - 1, l1 + azar.nextInt(3)) : l1;
+            int c2 = l2 == l1
+                    ? c1 + azar.nextInt(inc.linea(l1).length() - c1 + 1)
+                    : azar.nextInt(inc.linea(l2).length() + 1);
+            String trozo = TROZOS[azar.nextInt(TROZOS.length)];
+            inc.editar(l1, c1, l2, c2, trozo);
+            if (!comparar(nombre, "cambio " + n + " (" + l1 + ":" + c1 + "-" + l2 + ":" + c2 + " por \""
+                    + trozo.replace("\r", "\\r").replace("\n", "\\n") + "\")", inc)) {
+                inc = new AnalisisIncremental(inc.texto()); // se sigue desde un analisis bueno
+            }
+        }
+        return fallos - antes;
+    }
+
+    private boolean comparar(String nombre, String que, AnalisisIncremental inc) throws IOException {
+        String texto = inc.texto();
+        String[] esperado = volcar(new SesionCompilador().compilar(texto));
+        String[] obtenido = volcar(inc.resultado());
+        String[] partes = {"tokens", "parse", "tablas", "errores"};
+        for (int i = 0; i < partes.length; i++) {
+            if (!esperado[i].equals(obtenido[i])) {
+                fallos++;
+                String fichero = "incremental-fallo-" + fallos + ".js";
+                Files.write(Paths.get(fichero), texto.getBytes(StandardCharsets.UTF_8));
+                System.out.println("FALLO " + nombre + ", " + que + ": " + partes[i]
+                        + " no coincide con la compilacion entera (texto en " + fichero + ")");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] volcar(ResultadoCompilacion r) throws IOException {
+        StringWriter tokens = new StringWriter();
+        r.escribirTokens(new SalidaTokens.Texto(new BufferedWriter(tokens)));
+        StringWriter parse = new StringWriter();
+        r.escribirReglas(new SalidaReglas.Texto(new BufferedWriter(parse)));
+        StringWriter tablas = new StringWriter();
+        r.escribirTablas(new SalidaTablas.Texto(tablas));
+        StringWriter errores = new StringWriter();
+        r.escribirErrores(errores);
+        return new String[]{tokens.toString(), parse.toString(), tablas.toString(), errores.toString()};
+    }
+
+    public static void main(String[] args) {
+        long semilla = 1;
+        long ediciones = 500;
+        List<String> ficheros = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--semilla") && i + 1 < args.length) {
+                try {
+                    semilla = Long.parseLong(args[++i].trim());
+                } catch (NumberFormatException e) {
+                    System.err.println("Valor no valido para --semilla: " + args[i]);
+                    System.err.println(USO);
+                    System.exit(2);
+                }
+            } else if (a.equals("--ediciones") && i + 1 < args.length) {
+                ediciones = Main.numero(args[++i], Integer.MAX_VALUE);
+                if (ediciones < 0) {
+                    System.err.println("Valor no valido para --ediciones: " + args[i]);
+                    System.err.println(USO);
+                    System.exit(2);
+                }
+            } else if (!a.startsWith("--")) {
+                ficheros.add(a);
+            } else {
+                System.err.println(USO);
+                System.exit(2);
+            }
+        }
+
+        ComprobadorIncremental c = new ComprobadorIncremental(semilla, (int) ediciones);
+        int fallos = 0;
+        try {
+            if (ficheros.isEmpty()) {
+                // pequeños, para que cada cambio toque una parte que se nota del programa
+                for (double errores : new double[]{0, 0.1, 0.3}) {
+                    GeneradorMyJS g = new GeneradorMyJS();
+                    g.semilla = semilla;
+                    g.funciones = 3;
+                    g.sentencias = 4;
+                    g.errores = errores;
+                    StringWriter programa = new StringWriter();
+                    g.generar(programa);
+                    fallos += c.comprobar("generado (errores " + errores + ")", programa.toString());
+                }
+            } else {
+                for (String f : ficheros) {
+                    fallos += c.comprobar(f, new String(Files.readAllBytes(Paths.get(f)), StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error al comprobar: " + e.getMessage());
+            System.exit(2);
+        }
+        System.out.println(fallos == 0 ? "Incremental igual que la compilacion entera" : "Fallos: " + fallos);
+        if (fallos > 0) {
+            System.exit(1);
+        }
+    }
+}
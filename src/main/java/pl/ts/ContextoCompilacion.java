@@ -0,0 +1,146 @@
+package pl.ts;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Todo lo que necesita una compilacion: su tabla de simbolos y sus ficheros de salida
+// (o, compilando en memoria, a donde van los tokens, las reglas, las tablas y los errores)
+// Cada fichero fuente usa su propio contexto, asi que se pueden compilar
+// varios a la vez en la misma JVM sin compartir nada
+public class ContextoCompilacion {
+
+    private TablaSimbolos tablaSimbolos;
+    private TablaConstantes constantes = new TablaConstantes();
+    private SalidaTokens tokOut;     // tokens (lo escribe el lexer)
+    private SalidaReglas parseOut;   // numeros de las reglas (lo escribe el parser)
+    private BufferedWriter errOut;   // errores lexicos, sintacticos y semanticos (null en memoria)
+    private List<Diagnostico> diagnosticos; // los mismos errores, si alguien los quiere (si no, null)
+    private int numErrores = 0;      // cuantos errores se han escrito
+
+    // En errores.txt van primero los del lexer y luego los del parser.
+    // Como el parser va pidiendo tokens mientras el lexer lee, sus errores
+    // se guardan aqui hasta que el lexer llega al final del fichero
+    // (con --errores-al-vuelo no se espera: se escriben segun salen)
+    private List<Diagnostico> erroresPendientes = new ArrayList<>();
+    private boolean lexicoTerminado = false;
+    private boolean esperarLexico = true;
+
+    public ContextoCompilacion(String rutaTokens, String rutaTS, String rutaParse, String rutaErrores) throws IOException {
+        this(rutaTokens, rutaTS, rutaParse, rutaErrores, new OpcionesCompilacion());
+    }
+
+    // Las opciones dicen a donde van los ficheros (ver DestinoSalida):
+    // con --async (o --segmentado) los escribe otro hilo, y con --check-only solo se escribe errores.txt.
+    // Con --binario los tokens, el parse y la tabla van en binario (ver FormatoBinario)
+    // y con --errores-al-vuelo los errores del parser no esperan a los del lexer
+    public ContextoCompilacion(String rutaTokens, String rutaTS, String rutaParse, String rutaErrores,
+                               OpcionesCompilacion opciones) throws IOException {
+        boolean enOtroHilo = opciones.salidaAsincrona || opciones.compilacionSegmentada;
+        DestinoSalida destino = enOtroHilo ? DestinoSalida.ASINCRONO : DestinoSalida.FICHEROS;
+        this.esperarLexico = !opciones.erroresAlVuelo;
+        this.errOut = new BufferedWriter(destino.abrir(rutaErrores));
+        if (opciones.soloComprobar) {
+            // ni tokens ni parse ni tablas: no se escribe nada y tampoco se pasa a texto
+            this.tablaSimbolos = new TablaSimbolos((SalidaTablas) null);
+            this.tokOut = SalidaTokens.NULA;
+            this.parseOut = SalidaReglas.NULA;
+        } else if (opciones.formatoBinario) {
+            this.tablaSimbolos = new TablaSimbolos(new FormatoBinario.Tablas(abrirBinario(rutaTS)));
+            this.tokOut = new FormatoBinario.Tokens(abrirBinario(rutaTokens));
+            this.parseOut = new FormatoBinario.Reglas(abrirBinario(rutaParse));
+        } else {
+            this.tablaSimbolos = new TablaSimbolos(new SalidaTablas.Texto(destino.abrir(rutaTS)));
+            this.tokOut = new SalidaTokens.Texto(new BufferedWriter(destino.abrir(rutaTokens)));
+            this.parseOut = new SalidaReglas.Texto(new BufferedWriter(destino.abrir(rutaParse)));
+        }
+    }
+
+    // Compilando en memoria (SesionCompilador): las salidas las pone quien llama
+    // (tablas puede ser null) y los errores van a la lista en el orden de errores.txt
+    public ContextoCompilacion(SalidaTokens tokOut, SalidaReglas parseOut, SalidaTablas tablas,
+                               List<Diagnostico> diagnosticos) {
+        this.tokOut = tokOut;
+        this.parseOut = parseOut;
+        this.tablaSimbolos = new TablaSimbolos(tablas);
+        this.diagnosticos = diagnosticos;
+    }
+
+    // "tokens.txt" -> "tokens.bin"
+    public static String rutaBinaria(String ruta) {
+        return ruta.endsWith(".txt") ? ruta.substring(0, ruta.length() - 4) + ".bin" : ruta + ".bin";
+    }
+
+    private static OutputStream abrirBinario(String ruta) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(rutaBinaria(ruta)), 1 << 16);
+    }
+
+    public TablaSimbolos getTablaSimbolos() {
+        return tablaSimbolos;
+    }
+
+    // numeros y cadenas del fuente (los tokens de constantes llevan su posicion)
+    public TablaConstantes getConstantes() {
+        return constantes;
+    }
+
+    public SalidaTokens getSalidaTokens() {
+        return tokOut;
+    }
+
+    public SalidaReglas getSalidaParse() {
+        return parseOut;
+    }
+
+    // errores del lexer: se escriben en cuanto aparecen
+    public void escribirErrorLexico(Diagnostico d) throws IOException {
+        escribir(d);
+        numErrores++;
+    }
+
+    // errores del parser: esperan a que termine el lexer (si no es --errores-al-vuelo)
+    public void escribirError(Diagnostico d) throws IOException {
+        numErrores++;
+        if (esperarLexico && !lexicoTerminado) {
+            erroresPendientes.add(d);
+            return;
+        }
+        escribir(d);
+    }
+
+    // lo llama el lexer al llegar al EOF
+    public void finLexico() throws IOException {
+        lexicoTerminado = true;
+        for (Diagnostico d : erroresPendientes) {
+            escribir(d);
+        }
+        erroresPendientes.clear();
+    }
+
+    private void escribir(Diagnostico d) throws IOException {
+        if (errOut != null) {
+            errOut.write(d.texto());
+            errOut.newLine();
+        }
+        if (diagnosticos != null) {
+            diagnosticos.add(d);
+        }
+    }
+
+    public int getNumErrores() {
+        return numErrores;
+    }
+
+    // Al terminar: volcamos las tablas que queden abiertas y cerramos los ficheros
+    public void cerrar() throws IOException {
+        if (!lexicoTerminado) {
+            finLexico(); // si algo ha fallado a medias, que no se pierdan los errores
+        }
+        tablaSimbolos.finalizar();
+        tokOut.close();
+        parseOut.close();
+        if (errOut != null) {
+            errOut.close();
+        }
+    }
+}
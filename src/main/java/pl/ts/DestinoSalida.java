@@ -0,0 +1,15 @@
+package pl.ts;
+
+import java.io.*;
+
+// A donde van los ficheros de salida de una compilacion (tokens, parse, tabla y errores)
+public interface DestinoSalida {
+
+    Writer abrir(String ruta) throws IOException;
+
+    // lo normal: cada fichero con su FileWriter
+    DestinoSalida FICHEROS = ruta -> new FileWriter(ruta, false);
+
+    // un hilo aparte escribe en el fichero mientras se sigue compilando
+    DestinoSalida ASINCRONO = ruta -> new EscritorAsincrono(new FileWriter(ruta, false));
+}
@@ -0,0 +1,30 @@
+package pl.ts;
+
+// Un error del programa MyJS: en que linea, de que tipo y que pasa
+// texto() es la linea tal cual sale en errores.txt
+public class Diagnostico {
+
+    public static final String LEXICO = "LEXICO";
+    public static final String SINTACTICO = "SINTACTICO";
+    public static final String SEMANTICO = "SEMANTICO";
+
+    public final int linea;       // -1 si no se sabe
+    public final String tipo;     // LEXICO, SINTACTICO o SEMANTICO
+    public final String mensaje;
+
+    public Diagnostico(int linea, String tipo, String mensaje) {
+        this.linea = linea;
+        this.tipo = tipo;
+        this.mensaje = mensaje;
+    }
+
+    // "Linea 3 (SINTACTICO): se esperaba ';'"
+    public String texto() {
+        return "Linea " + (linea == -1 ? "?" : Integer.toString(linea)) + " (" + tipo + "): " + mensaje;
+    }
+
+    @Override
+    public String toString() {
+        return texto();
+    }
+}
@@ -0,0 +1,55 @@
+package pl.ts;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+// De donde lee el lexer los caracteres del fichero fuente
+// Los saltos de linea (\n, \r\n o \r) llegan siempre como '\n', el final como '\0'
+// y si el fichero no acaba en salto de linea se anade uno al final
+public abstract class Entrada {
+
+    // Abre el fichero: leyendolo entero a un String (como siempre)
+    // o mapeandolo en memoria y leyendo los bytes en UTF-8
+    public static Entrada abrir(String ruta, boolean mapear) throws IOException {
+        if (mapear) {
+            return new EntradaMapeada(ruta);
+        }
+        return new EntradaTexto(ruta);
+    }
+
+    // El fuente ya en memoria (los saltos de linea quedan igual que leyendo el fichero)
+    public static Entrada deTexto(CharSequence fuente) throws IOException {
+        return new EntradaTexto(new StringReader(fuente.toString()));
+    }
+
+    // Devuelve el siguiente caracter y avanza ('\0' al final)
+    public abstract char siguiente();
+
+    // Devuelve el siguiente caracter sin avanzar
+    public abstract char mirar();
+
+    // Deshace el ultimo siguiente()
+    public abstract void retroceder();
+
+    // Avanza hasta justo antes del proximo salto de linea (o del final)
+    // Lo usan los comentarios, que no hace falta decodificar
+    public abstract void saltarHastaFinDeLinea();
+
+    // true si ya no queda nada por leer (el '\0' que sale despues es el final de verdad
+    // y no un caracter nulo que estuviera en el fichero)
+    public abstract boolean agotada();
+
+    // --- Para trocear el fichero (lexer paralelo) ---
+    // Las posiciones son caracteres o bytes, segun la entrada
+
+    // Tamano total de la entrada
+    public abstract int longitud();
+
+    // Posicion justo despues del primer salto de linea que haya desde 'desde'
+    // (o longitud() si ya no hay mas)
+    public abstract int finDeLinea(int desde);
+
+    // Una entrada nueva que solo lee de 'desde' a 'hasta' (hasta tiene que ser
+    // un fin de linea o el final, asi ningun token queda partido)
+    public abstract Entrada trozo(int desde, int hasta);
+}
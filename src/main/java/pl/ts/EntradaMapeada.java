@@ -0,0 +1,183 @@
+package pl.ts;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Entrada para ficheros muy grandes: se mapea el fichero en memoria y se leen
+// los bytes directamente, sin copiarlo entero a un String.
+// El fichero se lee como UTF-8. Lo normal es que todo sea ASCII y solo haya
+// que decodificar algo dentro de las cadenas.
+public class EntradaMapeada extends Entrada {
+
+    private MappedByteBuffer buf;
+    private int tam;             // hasta donde podemos leer (todo el fichero salvo en los trozos)
+    private boolean saltoFinal;  // si hay que anadir un '\n' al final (como hace readLine)
+
+    private int pos;             // siguiente byte a leer
+    private char bajo;           // segunda mitad de un caracter que no cabe en un char (si no, 0)
+
+    // como estabamos antes del ultimo siguiente(), para poder retroceder
+    private int posAnterior;
+    private char bajoAnterior;
+
+    public EntradaMapeada(String ruta) throws IOException {
+        try (FileChannel canal = FileChannel.open(Paths.get(ruta), StandardOpenOption.READ)) {
+            long longitud = canal.size();
+            if (longitud > Integer.MAX_VALUE) {
+                throw new IOException("fichero demasiado grande para mapearlo: " + ruta);
+            }
+            this.buf = canal.map(FileChannel.MapMode.READ_ONLY, 0, longitud);
+            this.tam = (int) longitud;
+        }
+        if (tam > 0) {
+            byte ultimo = buf.get(tam - 1);
+            saltoFinal = ultimo != '\n' && ultimo != '\r';
+        }
+        this.pos = 0;
+    }
+
+    private EntradaMapeada(MappedByteBuffer buf, int desde, int hasta, boolean saltoFinal) {
+        this.buf = buf;
+        this.pos = desde;
+        this.tam = hasta;
+        this.saltoFinal = saltoFinal;
+    }
+
+    @Override
+    public char siguiente() {
+        posAnterior = pos;
+        bajoAnterior = bajo;
+        return leer();
+    }
+
+    @Override
+    public char mirar() {
+        int p = pos, pa = posAnterior;
+        char b = bajo, ba = bajoAnterior;
+        char c = leer();
+        pos = p;
+        posAnterior = pa;
+        bajo = b;
+        bajoAnterior = ba;
+        return c;
+    }
+
+    @Override
+    public void retroceder() {
+        pos = posAnterior;
+        bajo = bajoAnterior;
+    }
+
+    @Override
+    public void saltarHastaFinDeLinea() {
+        if (bajo != 0) {
+            return;
+        }
+        while (pos < tam) {
+            byte b = buf.get(pos);
+            if (b == '\n' || b == '\r' || b == 0) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    @Override
+    public boolean agotada() {
+        return bajo == 0 && (pos > tam || (pos == tam && !saltoFinal));
+    }
+
+    @Override
+    public int longitud() {
+        return tam;
+    }
+
+    @Override
+    public int finDeLinea(int desde) {
+        for (int i = desde; i < tam; i++) {
+            byte b = buf.get(i);
+            if (b == '\n') {
+                return i + 1;
+            }
+            if (b == '\r') {
+                // el \r\n no se puede partir
+                return (i + 1 < tam && buf.get(i + 1) == '\n') ? i + 2 : i + 1;
+            }
+        }
+        return tam;
+    }
+
+    @Override
+    public Entrada trozo(int desde, int hasta) {
+        // el salto de linea que anadimos al final solo lo ve el ultimo trozo
+        return new EntradaMapeada(buf, desde, hasta, saltoFinal && hasta == tam);
+    }
+
+    private char leer() {
+        if (bajo != 0) {
+            char c = bajo;
+            bajo = 0;
+            return c;
+        }
+        if (pos >= tam) {
+            if (saltoFinal && pos == tam) {
+                pos++;
+                return '\n';
+            }
+            return '\0';
+        }
+        byte b = buf.get(pos);
+        if (b >= 0) {
+            pos++;
+            if (b == '\r') {
+                // \r\n y \r solos cuentan como un salto de linea
+                if (pos < tam && buf.get(pos) == '\n') {
+                    pos++;
+                }
+                return '\n';
+            }
+            return (char) b;
+        }
+        return decodificar(b & 0xFF);
+    }
+
+    // Caracter de varios bytes en UTF-8 (si esta mal formado sale '�')
+    private char decodificar(int b0) {
+        int n;
+        int cp;
+        if ((b0 & 0xE0) == 0xC0) {
+            n = 2;
+            cp = b0 & 0x1F;
+        } else if ((b0 & 0xF0) == 0xE0) {
+            n = 3;
+            cp = b0 & 0x0F;
+        } else if ((b0 & 0xF8) == 0xF0) {
+            n = 4;
+            cp = b0 & 0x07;
+        } else {
+            pos++;
+            return '�';
+        }
+        if (pos + n > tam) {
+            pos++;
+            return '�';
+        }
+        for (int i = 1; i < n; i++) {
+            int bi = buf.get(pos + i) & 0xFF;
+            if ((bi & 0xC0) != 0x80) {
+                pos++;
+                return '�';
+            }
+            cp = (cp << 6) | (bi & 0x3F);
+        }
+        pos += n;
+        if (cp >= 0x10000) {
+            bajo = Character.lowSurrogate(cp);
+            return Character.highSurrogate(cp);
+        }
+        return (char) cp;
+    }
+}
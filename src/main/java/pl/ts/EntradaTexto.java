@@ -0,0 +1,97 @@
+package pl.ts;
+
+import java.io.*;
+
+// Entrada de siempre: el fichero entero en un String
+public class EntradaTexto extends Entrada {
+
+    private String codigo;
+    private int pos; // por donde vamos leyendo el string
+    private int fin; // hasta donde podemos leer (todo el string salvo en los trozos)
+
+    public EntradaTexto(String ruta) throws IOException {
+        this(new FileReader(ruta));
+    }
+
+    public EntradaTexto(Reader lector) throws IOException {
+        this.codigo = leerTodo(lector);
+        this.pos = 0;
+        this.fin = codigo.length();
+    }
+
+    private EntradaTexto(String codigo, int desde, int hasta) {
+        this.codigo = codigo;
+        this.pos = desde;
+        this.fin = hasta;
+    }
+
+    // lee todo el fichero JS de golpe a un String
+    private static String leerTodo(Reader lector) throws IOException {
+        BufferedReader br = new BufferedReader(lector);
+        StringBuilder sb = new StringBuilder();
+        String lineaLeida;
+        while ((lineaLeida = br.readLine()) != null) {
+            sb.append(lineaLeida);
+            sb.append('\n');
+        }
+        br.close();
+        return sb.toString();
+    }
+
+    @Override
+    public char siguiente() {
+        if (pos >= fin) {
+            return '\0';
+        }
+        char c = codigo.charAt(pos);
+        pos++;
+        return c;
+    }
+
+    @Override
+    public char mirar() {
+        if (pos >= fin) {
+            return '\0';
+        }
+        return codigo.charAt(pos);
+    }
+
+    @Override
+    public void retroceder() {
+        if (pos > 0) {
+            pos--;
+        }
+    }
+
+    @Override
+    public void saltarHastaFinDeLinea() {
+        while (pos < fin) {
+            char c = codigo.charAt(pos);
+            if (c == '\n' || c == '\0') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    @Override
+    public boolean agotada() {
+        return pos >= fin;
+    }
+
+    @Override
+    public int longitud() {
+        return fin;
+    }
+
+    @Override
+    public int finDeLinea(int desde) {
+        int i = codigo.indexOf('\n', desde);
+        return (i < 0 || i >= fin) ? fin : i + 1;
+    }
+
+    @Override
+    public Entrada trozo(int desde, int hasta) {
+        return new EntradaTexto(codigo, desde, hasta);
+    }
+}
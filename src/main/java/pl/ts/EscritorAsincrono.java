@@ -0,0 +1,153 @@
+package pl.ts;
+
+import java.io.*;
+
+// Writer que va llenando un buffer grande y, cuando se llena, se lo pasa a un hilo
+// que lo escribe en el Writer de verdad. Asi el lexer y el parser no esperan al disco.
+// Hay unos pocos buffers que se van turnando (si el disco va mas lento que la
+// compilacion, write() acaba esperando a que quede uno libre). Los buffers van y
+// vuelven por dos AnilloLotes (el hilo que compila llena y el otro vacia).
+public class EscritorAsincrono extends Writer {
+
+    public static final int TAM_BUFFER = 1 << 18; // caracteres
+    private static final int NUM_BUFFERS = 3;
+
+    // un buffer y cuanto tiene escrito
+    private static class Bloque {
+        char[] datos;
+        int len;
+
+        Bloque(int tam) {
+            datos = new char[tam];
+        }
+    }
+
+    private static final Bloque FIN = new Bloque(0); // marca para que el hilo termine
+
+    private final Writer destino;
+    private final AnilloLotes<Bloque> llenos = new AnilloLotes<>(NUM_BUFFERS + 1);
+    private final AnilloLotes<Bloque> libres = new AnilloLotes<>(NUM_BUFFERS + 1);
+    private final Thread hilo;
+    private volatile IOException fallo; // si el hilo no ha podido escribir
+
+    private Bloque actual;  // el que se esta llenando
+    private char[] buf;     // = actual.datos
+    private int n = 0;
+    private boolean cerrado = false;
+
+    public EscritorAsincrono(Writer destino) throws IOException {
+        this.destino = destino;
+        for (int i = 1; i < NUM_BUFFERS; i++) {
+            libres.poner(new Bloque(TAM_BUFFER));
+        }
+        this.actual = new Bloque(TAM_BUFFER);
+        this.buf = actual.datos;
+        this.hilo = new Thread(this::escribirPendientes, "escritor-asincrono");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (n == buf.length) {
+                enviar();
+            }
+            int k = Math.min(len, buf.length - n);
+            System.arraycopy(cbuf, off, buf, n, k);
+            n += k;
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(String s, int off, int len) throws IOException {
+        while (len > 0) {
+            if (n == buf.length) {
+                enviar();
+            }
+            int k = Math.min(len, buf.length - n);
+            s.getChars(off, off + k, buf, n);
+            n += k;
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (n == buf.length) {
+            enviar();
+        }
+        buf[n++] = (char) c;
+    }
+
+    // Pasa lo que haya al hilo, sin esperar a que llegue al disco
+    @Override
+    public void flush() throws IOException {
+        if (n > 0) {
+            enviar();
+        }
+    }
+
+    // Espera a que el hilo lo escriba todo y cierra el fichero
+    @Override
+    public void close() throws IOException {
+        if (cerrado) {
+            return;
+        }
+        cerrado = true;
+        try {
+            if (n > 0) {
+                enviar();
+            }
+            llenos.poner(FIN);
+            hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("escritura interrumpida");
+        } finally {
+            destino.close();
+        }
+        comprobarFallo();
+    }
+
+    private void enviar() throws IOException {
+        comprobarFallo();
+        actual.len = n;
+        llenos.poner(actual);
+        actual = libres.sacar();
+        buf = actual.datos;
+        n = 0;
+    }
+
+    // Lo que hace el hilo: escribir los buffers que le llegan y devolverlos
+    private void escribirPendientes() {
+        try {
+            while (true) {
+                Bloque b = llenos.sacar();
+                if (b == FIN) {
+                    destino.flush();
+                    return;
+                }
+                if (fallo == null) {
+                    try {
+                        destino.write(b.datos, 0, b.len);
+                    } catch (IOException e) {
+                        fallo = e;
+                    }
+                }
+                libres.poner(b);
+            }
+        } catch (IOException e) {
+            fallo = e;
+        }
+    }
+
+    private void comprobarFallo() throws IOException {
+        if (fallo != null) {
+            throw fallo;
+        }
+    }
+}
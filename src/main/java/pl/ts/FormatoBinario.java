@@ -0,0 +1,326 @@
+package pl.ts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static pl.ts.CodigoToken.*;
+
+// Version binaria de tokens.txt, parse.txt y ts.txt (opcion --binario) y el conversor
+// que la vuelve a pasar a texto, igual byte a byte que si se hubiera escrito en texto:
+//   java -cp target/classes pl.ts.FormatoBinario fichero.bin [salida.txt]
+//
+// Todos los ficheros empiezan por 'M' 'J' 'B', el tipo ('T' tokens, 'P' parse, 'S' tablas)
+// y la version. Los enteros van como varint (7 bits por byte, el bit alto dice si sigue)
+// y los textos como longitud + bytes en UTF-8.
+//  - Tokens: el codigo y, segun el codigo, el id o la posicion de la constante. La primera
+//    vez que sale una constante se pone detras su texto (las posiciones van en orden).
+//  - Parse: un numero por regla; el 0 es la cabecera (la "D").
+//  - Tablas: por cada tabla que se cierra, su id, su nombre y cuantos simbolos tiene, y
+//    luego los campos por columnas (todos los lexemas, todos los tipos...). Los textos
+//    van a un diccionario: 0 es null y k es el texto k-1, que se pone la primera vez.
+public class FormatoBinario {
+
+    public static final int VERSION = 1;
+    public static final char TOKENS = 'T';
+    public static final char PARSE = 'P';
+    public static final char TABLAS = 'S';
+
+    private FormatoBinario() {
+    }
+
+    // --- ESCRITURA ---
+
+    private static void escribirCabecera(OutputStream out, char tipo) throws IOException {
+        out.write('M');
+        out.write('J');
+        out.write('B');
+        out.write(tipo);
+        out.write(VERSION);
+    }
+
+    static void varint(OutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    static void cadena(OutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        varint(out, b.length);
+        out.write(b);
+    }
+
+    public static class Tokens implements SalidaTokens {
+
+        private final OutputStream out;
+        private int constantesEscritas = 0;
+
+        public Tokens(OutputStream out) throws IOException {
+            this.out = out;
+            escribirCabecera(out, TOKENS);
+        }
+
+        @Override
+        public void token(int codigo) throws IOException {
+            varint(out, codigo);
+        }
+
+        @Override
+        public void id(int handle) throws IOException {
+            varint(out, COD_ID);
+            varint(out, handle);
+        }
+
+        @Override
+        public void constante(int codigo, int k, String texto) throws IOException {
+            varint(out, codigo);
+            varint(out, k);
+            if (k == constantesEscritas) {
+                cadena(out, texto);
+                constantesEscritas++;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static class Reglas implements SalidaReglas {
+
+        private final OutputStream out;
+
+        public Reglas(OutputStream out) throws IOException {
+            this.out = out;
+            escribirCabecera(out, PARSE);
+        }
+
+        @Override
+        public void cabecera() throws IOException {
+            varint(out, 0);
+        }
+
+        @Override
+        public void regla(int n) throws IOException {
+            varint(out, n);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static class Tablas implements SalidaTablas {
+
+        private final OutputStream out;
+        private final Map<String, Integer> diccionario = new HashMap<>();
+
+        public Tablas(OutputStream out) throws IOException {
+            this.out = out;
+            escribirCabecera(out, TABLAS);
+        }
+
+        @Override
+        public void tabla(TablaSimbolos.Tabla t) throws IOException {
+            varint(out, t.id);
+            cadena(out, t.nombre);
+            varint(out, t.simbolos.size());
+            for (TablaSimbolos.Simbolo s : t.simbolos) texto(s.lexema);
+            for (TablaSimbolos.Simbolo s : t.simbolos) texto(s.tipo);
+            for (TablaSimbolos.Simbolo s : t.simbolos) varint(out, s.desp);
+            for (TablaSimbolos.Simbolo s : t.simbolos) varint(out, s.numParams);
+            for (TablaSimbolos.Simbolo s : t.simbolos) texto(s.tipoRetorno);
+            for (TablaSimbolos.Simbolo s : t.simbolos) texto(s.etiqFuncion);
+            for (TablaSimbolos.Simbolo s : t.simbolos) varint(out, s.esParametro);
+            // los parametros, solo de los que tienen (como mucho caben 10)
+            for (TablaSimbolos.Simbolo s : t.simbolos) {
+                for (int i = 0; i < Math.min(s.numParams, s.tipoParam.length); i++) {
+                    texto(s.tipoParam[i]);
+                    texto(s.modoParam[i]);
+                }
+            }
+        }
+
+        private void texto(String s) throws IOException {
+            if (s == null) {
+                varint(out, 0);
+                return;
+            }
+            Integer k = diccionario.get(s);
+            if (k != null) {
+                varint(out, k + 1);
+                return;
+            }
+            k = diccionario.size();
+            diccionario.put(s, k);
+            varint(out, k + 1);
+            cadena(out, s);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // --- LECTURA (de binario a texto) ---
+
+    // Lee un fichero binario de cualquiera de los tres tipos y escribe su texto
+    public static void aTexto(InputStream in, Writer salida) throws IOException {
+        if (in.read() != 'M' || in.read() != 'J' || in.read() != 'B') {
+            throw new IOException("no es un fichero binario del compilador");
+        }
+        int tipo = in.read();
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IOException("version del formato binario no soportada: " + version);
+        }
+        BufferedWriter out = new BufferedWriter(salida);
+        switch (tipo) {
+            case TOKENS:
+                leerTokens(in, new SalidaTokens.Texto(out));
+                break;
+            case PARSE:
+                leerReglas(in, new SalidaReglas.Texto(out));
+                break;
+            case TABLAS:
+                leerTablas(in, new SalidaTablas.Texto(out));
+                break;
+            default:
+                throw new IOException("tipo de fichero binario desconocido: " + tipo);
+        }
+        out.flush();
+    }
+
+    private static void leerTokens(InputStream in, SalidaTokens.Texto texto) throws IOException {
+        java.util.List<String> constantes = new java.util.ArrayList<>();
+        int b;
+        while ((b = in.read()) >= 0) {
+            int codigo = varint(in, b);
+            if (codigo == COD_ID) {
+                texto.id(varint(in));
+            } else if (codigo == COD_CE || codigo == COD_CR || codigo == COD_CAD) {
+                int k = varint(in);
+                if (k == constantes.size()) {
+                    constantes.add(cadena(in));
+                }
+                texto.constante(codigo, k, constantes.get(k));
+            } else {
+                texto.token(codigo);
+            }
+        }
+        texto.flush();
+    }
+
+    private static void leerReglas(InputStream in, SalidaReglas.Texto texto) throws IOException {
+        int b;
+        while ((b = in.read()) >= 0) {
+            int n = varint(in, b);
+            if (n == 0) {
+                texto.cabecera();
+            } else {
+                texto.regla(n);
+            }
+        }
+        texto.flush();
+    }
+
+    private static void leerTablas(InputStream in, SalidaTablas.Texto texto) throws IOException {
+        java.util.List<String> diccionario = new java.util.ArrayList<>();
+        int b;
+        while ((b = in.read()) >= 0) {
+            TablaSimbolos.Tabla t = new TablaSimbolos.Tabla(varint(in, b), cadena(in));
+            int n = varint(in);
+            TablaSimbolos.Simbolo[] sims = new TablaSimbolos.Simbolo[n];
+            for (int i = 0; i < n; i++) {
+                sims[i] = new TablaSimbolos.Simbolo(texto(in, diccionario), 0);
+                t.simbolos.add(sims[i]);
+            }
+            for (TablaSimbolos.Simbolo s : sims) s.tipo = texto(in, diccionario);
+            for (TablaSimbolos.Simbolo s : sims) s.desp = varint(in);
+            for (TablaSimbolos.Simbolo s : sims) s.numParams = varint(in);
+            for (TablaSimbolos.Simbolo s : sims) s.tipoRetorno = texto(in, diccionario);
+            for (TablaSimbolos.Simbolo s : sims) s.etiqFuncion = texto(in, diccionario);
+            for (TablaSimbolos.Simbolo s : sims) s.esParametro = varint(in);
+            for (TablaSimbolos.Simbolo s : sims) {
+                for (int i = 0; i < Math.min(s.numParams, s.tipoParam.length); i++) {
+                    s.tipoParam[i] = texto(in, diccionario);
+                    s.modoParam[i] = texto(in, diccionario);
+                }
+            }
+            texto.tabla(t);
+        }
+    }
+
+    static int varint(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("fichero binario cortado");
+        }
+        return varint(in, b);
+    }
+
+    // el primer byte ya leido
+    private static int varint(InputStream in, int b) throws IOException {
+        int v = b & 0x7F;
+        for (int desp = 7; (b & 0x80) != 0; desp += 7) {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException("fichero binario cortado");
+            }
+            v |= (b & 0x7F) << desp;
+        }
+        return v;
+    }
+
+    static String cadena(InputStream in) throws IOException {
+        int len = varint(in);
+        byte[] b = in.readNBytes(len);
+        if (b.length != len) {
+            throw new EOFException("fichero binario cortado");
+        }
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static String texto(InputStream in, java.util.List<String> diccionario) throws IOException {
+        int k = varint(in);
+        if (k == 0) {
+            return null;
+        }
+        if (k - 1 == diccionario.size()) {
+            diccionario.add(cadena(in));
+        }
+        return diccionario.get(k - 1);
+    }
+
+    // Conversor: el texto sale con la codificacion por defecto, igual que los .txt
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Uso: java -cp target/classes pl.ts.FormatoBinario fichero.bin [salida.txt]");
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(args[0]), 1 << 16);
+             Writer out = args.length == 2 ? new FileWriter(args[1], false)
+                                           : new OutputStreamWriter(System.out)) {
+            aTexto(in, out);
+        } catch (IOException e) {
+            System.err.println("Error al convertir " + args[0] + ": " + e.getMessage());
+        }
+    }
+}
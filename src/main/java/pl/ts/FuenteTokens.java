@@ -0,0 +1,24 @@
+package pl.ts;
+
+import java.io.IOException;
+
+// De donde saca el parser los tokens
+// Se piden de uno en uno, asi no hace falta tener todo el fichero troceado en memoria
+public interface FuenteTokens {
+
+    // Rellena 'destino' con el siguiente token (asi no se crea un objeto por token)
+    // Al llegar al final da siempre el de EOF
+    void siguienteToken(Token destino) throws IOException;
+
+    // Recorre lo que quede hasta el EOF (el parser no tiene por que haber pedido todo)
+    default void analizar() throws IOException {
+        Token t = new Token();
+        do {
+            siguienteToken(t);
+        } while (t.codigo != CodigoToken.COD_EOF);
+    }
+
+    // Para las que usan otros hilos: que paren aunque no se haya llegado al EOF
+    default void cerrar() {
+    }
+}
@@ -0,0 +1,662 @@
+package pl.ts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+// Generador de programas MyJS (segun gramatica_vast.txt) para probar el compilador con
+// ficheros grandes. Con la misma semilla y las mismas opciones sale siempre el mismo programa.
+// Sin errores (--errores 0) el programa es correcto tambien para el semantico: se lleva la
+// cuenta de las variables y funciones declaradas y de sus tipos, y las expresiones se
+// construyen ya con el tipo que toca. Con --errores P cada sentencia tiene probabilidad P de
+// salir con un error lexico, sintactico o semantico.
+// El programa se hace por tandas (unas sentencias de fuera y luego las funciones) y se escribe
+// segun se genera, asi que puede ser de varios GB sin tenerlo en memoria.
+public class GeneradorMyJS {
+
+    private static final String USO =
+          "Uso: java -cp target/classes pl.ts.GeneradorMyJS [opciones] [salida.js]   (sin salida, a la salida estandar)\n"
+        + "Opciones:\n"
+        + "     --semilla N       semilla del generador (1)\n"
+        + "     --funciones N     funciones por tanda (10)\n"
+        + "     --parametros N    parametros de cada funcion, como mucho (3)\n"
+        + "     --sentencias N    sentencias por bloque y fuera de las funciones en cada tanda (8)\n"
+        + "     --profundidad N   anidamiento maximo de las expresiones (parentesis y llamadas) (3)\n"
+        + "     --anidamiento N   anidamiento maximo de bloques (if, for y { }) (3)\n"
+        + "     --vocabulario N   nombres distintos de variables (50)\n"
+        + "     --errores P       probabilidad de que una sentencia tenga un error, de 0 a 1 (0)\n"
+        + "     --tam N[KB|MB|GB] tamaño del programa: se repiten tandas hasta llegar (una tanda si no se pone)";
+
+    // tipos (el orden de TIPOS y de los nombres en el parser)
+    private static final int ENTERO = 0, REAL = 1, BOOLEAN = 2, CADENA = 3, VOID = 4;
+    private static final String[] TIPOS = {"int", "float", "boolean", "string", "void"};
+    private static final int MAX_ENTERO = 32767;  // los enteros tienen que ser menores
+    private static final int MAX_CADENA = 63;
+
+    private static final String[] NOMBRES = {"x", "y", "n", "i", "j", "k", "suma", "total", "cont", "media",
+            "valor", "dato", "aux", "tmp", "indice", "nombre", "texto", "precio", "edad", "nota", "res", "acum",
+            "base", "lim", "paso", "marca", "clave", "peso", "altura", "saldo"};
+    private static final String[] VERBOS = {"calcular", "procesar", "sumar", "mostrar", "validar", "leerDatos",
+            "contar", "buscar", "actualizar", "comprobar", "convertir", "iniciar"};
+    private static final String[] PALABRAS = {"hola", "mundo", "dato", "error", "ok", "fin", "valor", "texto",
+            "myjs", "prueba", "resultado", "nombre"};
+    private static final String RAROS = "@#$&?~^|";
+
+    // Opciones (las de la linea de comandos)
+    public long semilla = 1;
+    public int funciones = 10;
+    public int parametros = 3;
+    public int sentencias = 8;
+    public int profundidad = 3;
+    public int anidamiento = 3;
+    public int vocabulario = 50;
+    public double errores = 0;
+    public long tam = 0; // bytes; 0 es una sola tanda
+
+    // Lo que ha salido en la ultima llamada a generar
+    public long bytes;
+    public long lineas;
+    public int numFunciones;
+    public int numErrores;
+
+    private Random rnd;
+    private int operandos; // los que quedan en la sentencia (ver operando)
+    private StringBuilder sb;
+    private String[] vocabulario_;
+    private Ambito global;
+    private final List<Funcion> todas = new ArrayList<>();
+    private final List<List<Funcion>> porRetorno = new ArrayList<>();
+
+    // Variables declaradas en la tabla global o en la de una funcion (los bloques no abren ambito)
+    private static class Ambito {
+        final Ambito padre;
+        final Map<String, Integer> tipos = new HashMap<>();
+        final List<List<String>> porTipo = new ArrayList<>();
+
+        Ambito(Ambito padre) {
+            this.padre = padre;
+            for (int t = ENTERO; t <= CADENA; t++) {
+                porTipo.add(new ArrayList<>());
+            }
+        }
+
+        void declarar(String nombre, int tipo) {
+            tipos.put(nombre, tipo);
+            porTipo.get(tipo).add(nombre);
+        }
+    }
+
+    private static class Funcion {
+        final String nombre;
+        final int retorno;
+        final int[] params;
+
+        Funcion(String nombre, int retorno, int[] params) {
+            this.nombre = nombre;
+            this.retorno = retorno;
+            this.params = params;
+        }
+    }
+
+    // Escribe el programa en 'out' (no lo cierra) y devuelve los bytes escritos
+    public long generar(Writer out) throws IOException {
+        rnd = new Random(semilla);
+        sb = new StringBuilder(1 << 16);
+        vocabulario_ = new String[Math.max(1, vocabulario)];
+        for (int i = 0; i < vocabulario_.length; i++) {
+            vocabulario_[i] = NOMBRES[i % NOMBRES.length] + (i < NOMBRES.length ? "" : Integer.toString(i / NOMBRES.length));
+        }
+        global = new Ambito(null);
+        todas.clear();
+        porRetorno.clear();
+        for (int t = ENTERO; t <= CADENA; t++) {
+            porRetorno.add(new ArrayList<>());
+        }
+        bytes = 0;
+        lineas = 0;
+        numFunciones = 0;
+        numErrores = 0;
+
+        for (int tanda = 1; ; tanda++) {
+            sb.append("// tanda ").append(tanda).append('\n');
+            for (int i = 0; i < sentencias; i++) {
+                sentencia(global, 0);
+                if (volcar(out)) {
+                    return bytes;
+                }
+            }
+            for (int i = 0; i < funciones; i++) {
+                sb.append('\n');
+                funcion();
+                if (volcar(out)) {
+                    return bytes;
+                }
+            }
+            sb.append('\n');
+            if (tam <= 0 || sentencias + funciones == 0) {
+                volcar(out);
+                return bytes;
+            }
+        }
+    }
+
+    // Pasa lo generado a 'out'; true si ya se ha llegado al tamaño pedido
+    private boolean volcar(Writer out) throws IOException {
+        for (int i = 0; i < sb.length(); i++) {
+            if (sb.charAt(i) == '\n') {
+                lineas++;
+            }
+        }
+        out.append(sb);
+        bytes += sb.length(); // todo es ASCII: un caracter es un byte
+        sb.setLength(0);
+        return tam > 0 && bytes >= tam;
+    }
+
+    // --- FUNCIONES ---
+
+    private void funcion() {
+        int retorno = rnd.nextInt(5);
+        String nombre = VERBOS[numFunciones % VERBOS.length] + numFunciones;
+        int[] params = new int[rnd.nextInt(parametros + 1)];
+        Ambito local = new Ambito(global);
+
+        sb.append("function ").append(TIPOS[retorno]).append(' ').append(nombre).append('(');
+        for (int i = 0; i < params.length; i++) {
+            String p = nombreLibre(local);
+            if (p == null) {
+                params = Arrays.copyOf(params, i); // no quedan nombres
+                break;
+            }
+            params[i] = rnd.nextInt(4);
+            local.declarar(p, params[i]);
+            sb.append(i > 0 ? ", " : "").append(TIPOS[params[i]]).append(' ').append(p);
+        }
+        sb.append(") {\n");
+        for (int i = 0; i < sentencias; i++) {
+            sentencia(local, 1);
+        }
+        // el tipo del cuerpo es el del primer return de fuera de los if y for: solo va al final
+        if (retorno != VOID) {
+            int tipo = retorno;
+            if (errores > 0 && rnd.nextDouble() < errores) {
+                tipo = (retorno + 1 + rnd.nextInt(3)) % 4; // Retorno no esperado
+                numErrores++;
+            }
+            operandos = maxOperandos();
+            sangria(1).append("return ").append(expresion(local, tipo, profundidad)).append(";\n");
+        } else if (rnd.nextBoolean()) {
+            sangria(1).append("return;\n");
+        }
+        sb.append("}\n");
+
+        Funcion f = new Funcion(nombre, retorno, params);
+        todas.add(f);
+        if (retorno != VOID) {
+            porRetorno.get(retorno).add(f);
+        }
+        numFunciones++;
+    }
+
+    // --- SENTENCIAS ---
+
+    // pesos de cada tipo de sentencia: let, asignacion, llamada, if, for, write, read, bloque, ';'
+    private static final int[] PESOS = {18, 26, 8, 10, 6, 10, 5, 3, 1};
+    private static final boolean[] COMPUESTA = {false, false, false, true, true, false, false, true, false};
+
+    private void sentencia(Ambito a, int nivel) {
+        sangria(nivel);
+        operandos = maxOperandos();
+        if (errores > 0 && rnd.nextDouble() < errores) {
+            sentenciaErronea(a);
+            numErrores++;
+            sb.append('\n');
+            return;
+        }
+        boolean compuesta = nivel < anidamiento;
+        int total = 0;
+        for (int k = 0; k < PESOS.length; k++) {
+            total += compuesta || !COMPUESTA[k] ? PESOS[k] : 0;
+        }
+        for (;;) {
+            int r = rnd.nextInt(total);
+            int k = 0;
+            while (r >= PESOS[k] || (!compuesta && COMPUESTA[k])) {
+                r -= compuesta || !COMPUESTA[k] ? PESOS[k] : 0;
+                k++;
+            }
+            if (hacer(k, a, nivel)) {
+                break;
+            }
+        }
+        sb.append('\n');
+    }
+
+    // false si esa sentencia no se puede hacer aqui (sin variables, sin funciones...)
+    private boolean hacer(int k, Ambito a, int nivel) {
+        switch (k) {
+            case 0:
+                return declaracion(a);
+            case 1:
+                return asignacion(a);
+            case 2:
+                return llamada(a);
+            case 3:
+                sb.append("if (").append(booleana(a, profundidad)).append(") ");
+                if (rnd.nextInt(3) == 0) {
+                    // sin llaves, una sentencia simple
+                    if (!asignacion(a)) {
+                        sb.append("write ").append(expresion(a, ENTERO, profundidad)).append(';');
+                    }
+                } else {
+                    bloque(a, nivel);
+                }
+                return true;
+            case 4:
+                return bucle(a, nivel);
+            case 5:
+                sb.append("write ").append(expresion(a, escribible(), profundidad)).append(';');
+                return true;
+            case 6: {
+                int t = escribible();
+                String v = variable(a, t);
+                if (v == null) {
+                    return false;
+                }
+                sb.append("read ").append(v).append(';');
+                return true;
+            }
+            case 7:
+                bloque(a, nivel);
+                return true;
+            default:
+                sb.append(';');
+                return true;
+        }
+    }
+
+    private void bloque(Ambito a, int nivel) {
+        sb.append("{\n");
+        int n = 1 + rnd.nextInt(Math.max(1, sentencias));
+        for (int i = 0; i < n; i++) {
+            sentencia(a, nivel + 1);
+        }
+        sangria(nivel).append('}');
+    }
+
+    private boolean declaracion(Ambito a) {
+        String v = nombreLibre(a);
+        if (v == null) {
+            return false;
+        }
+        int t = rnd.nextInt(4);
+        // el parser la declara antes de mirar el valor: desde ahi ya tapa a una global que se llame igual
+        a.declarar(v, t);
+        sb.append("let ").append(TIPOS[t]).append(' ').append(v);
+        if (rnd.nextInt(4) != 0) {
+            sb.append(" = ").append(expresion(a, t, profundidad));
+        }
+        sb.append(';');
+        return true;
+    }
+
+    private boolean asignacion(Ambito a) {
+        int t = rnd.nextInt(4);
+        String v = variable(a, t);
+        if (v == null) {
+            return false;
+        }
+        if (t == ENTERO && rnd.nextInt(5) == 0) {
+            sb.append(v).append(" %= ").append(expresion(a, ENTERO, profundidad)).append(';');
+        } else {
+            sb.append(v).append(" = ").append(expresion(a, t, profundidad)).append(';');
+        }
+        return true;
+    }
+
+    private boolean llamada(Ambito a) {
+        if (todas.isEmpty()) {
+            return false;
+        }
+        Funcion f = todas.get(rnd.nextInt(todas.size()));
+        sb.append(argumentos(a, f, profundidad)).append(';');
+        return true;
+    }
+
+    // for (let int i = 0; !(i == 10); i = i + 1) { ... } y parecidos
+    private boolean bucle(Ambito a, int nivel) {
+        String i;
+        sb.append("for (");
+        int r = rnd.nextInt(4);
+        if (r < 2 && (i = nombreLibre(a)) != null) {
+            sb.append("let int ").append(i).append(" = ").append(rnd.nextInt(10));
+            a.declarar(i, ENTERO);
+        } else if (r < 3 && (i = variable(a, ENTERO)) != null) {
+            sb.append(i).append(" = ").append(expresion(a, ENTERO, profundidad));
+        } else {
+            i = variable(a, ENTERO);
+        }
+        sb.append("; ");
+        if (i != null && rnd.nextBoolean()) {
+            sb.append("!(").append(i).append(" == ").append(1 + rnd.nextInt(100)).append(')');
+        } else if (rnd.nextInt(4) != 0) {
+            sb.append(booleana(a, profundidad));
+        }
+        sb.append("; ");
+        if (i != null) {
+            if (rnd.nextInt(4) == 0) {
+                sb.append(i).append(" %= ").append(2 + rnd.nextInt(10));
+            } else {
+                sb.append(i).append(" = ").append(i).append(" + 1");
+            }
+        }
+        sb.append(") ");
+        bloque(a, nivel);
+        return true;
+    }
+
+    // Una sentencia con un error que no se sale de su linea: el parser, cuando no encuentra lo
+    // que espera, se salta un token, y si ese token es una llave ya no vuelve a cuadrar (sin
+    // errores detras). Por eso los errores sintacticos no tocan llaves ni dejan sin cerrar nada
+    private void sentenciaErronea(Ambito a) {
+        String v;
+        switch (rnd.nextInt(19)) {
+            // lexicos
+            case 0:
+                sb.append("write ").append(MAX_ENTERO + rnd.nextInt(MAX_ENTERO)).append(';');
+                break;
+            case 1:
+                sb.append("write ").append(expresion(a, ENTERO, 1)).append(' ')
+                        .append(RAROS.charAt(rnd.nextInt(RAROS.length()))).append(';');
+                break;
+            case 2:
+                sb.append("write ").append(rnd.nextInt(100)).append(".;");
+                break;
+            case 3:
+                sb.append("write \"");
+                for (int i = 0; i <= MAX_CADENA; i++) {
+                    sb.append((char) ('a' + rnd.nextInt(26)));
+                }
+                sb.append("\";");
+                break;
+            case 4:
+                sb.append("write ").append(rnd.nextInt(100)).append(" % 2;");
+                break;
+            // sintacticos
+            case 5:
+                sb.append("write ").append(expresion(a, ENTERO, 1)).append(' ').append(rnd.nextInt(100)).append(';');
+                break;
+            case 6:
+                sb.append("let sinTipo = ").append(rnd.nextInt(100)).append(';');
+                break;
+            case 7:
+                sb.append("if (").append(booleana(a, 1)).append(" write 1;");
+                break;
+            case 8:
+                sb.append("let ").append(TIPOS[rnd.nextInt(4)]).append(" = ").append(rnd.nextInt(100)).append(';');
+                break;
+            case 9:
+                sb.append("write ").append(expresion(a, ENTERO, 1)).append(" + ;");
+                break;
+            // semanticos
+            case 10:
+                sb.append("noDeclarada").append(rnd.nextInt(100)).append(" = ").append(rnd.nextInt(100)).append(';');
+                break;
+            case 11:
+                if ((v = variable(a, ENTERO)) != null) {
+                    sb.append(v).append(" = \"").append(PALABRAS[rnd.nextInt(PALABRAS.length)]).append("\";");
+                } else {
+                    sb.append("let int ").append("malInit").append(" = true;");
+                }
+                break;
+            case 12:
+                sb.append("write ").append(booleana(a, 1)).append(';');
+                break;
+            case 13:
+                sb.append("if (").append(expresion(a, ENTERO, 1)).append(") write 1;");
+                break;
+            case 14:
+                sb.append("write ").append(cadena()).append(" + ").append(cadena()).append(';');
+                break;
+            case 15:
+                // en una expresion: como sentencia no se comprueba (el lexer ya la ha metido en la tabla)
+                sb.append("write noExiste").append(rnd.nextInt(100)).append('(').append(rnd.nextInt(100)).append(");");
+                break;
+            case 16:
+                if ((v = variable(a, BOOLEAN)) != null) {
+                    sb.append("read ").append(v).append(';');
+                } else {
+                    sb.append("read noDeclarada;");
+                }
+                break;
+            case 17:
+                if ((v = variable(a, REAL)) != null) {
+                    sb.append(v).append(" %= 2;");
+                } else {
+                    sb.append("write ").append(real()).append(" == \"no\";");
+                }
+                break;
+            default: {
+                // ya declarada en este ambito (o %= con cadenas si no hay ninguna)
+                List<String> propias = a.porTipo.get(rnd.nextInt(4));
+                if (!propias.isEmpty()) {
+                    sb.append("let ").append(TIPOS[rnd.nextInt(4)]).append(' ')
+                            .append(propias.get(rnd.nextInt(propias.size()))).append(';');
+                } else {
+                    sb.append("write ").append(cadena()).append(" == ").append(cadena()).append(';');
+                }
+            }
+        }
+    }
+
+    // --- EXPRESIONES ---
+    // 'prof' es cuantos parentesis o llamadas se pueden anidar todavia
+
+    private String expresion(Ambito a, int tipo, int prof) {
+        StringBuilder e = new StringBuilder();
+        switch (tipo) {
+            case ENTERO:
+            case REAL: {
+                // una suma; si es real el primer sumando es real y los demas de cualquiera de los dos
+                int n = 1 + rnd.nextInt(prof > 0 ? 3 : 2);
+                e.append(operando(a, tipo, prof));
+                for (int i = 1; i < n; i++) {
+                    e.append(" + ").append(operando(a, tipo == REAL ? rnd.nextInt(2) : ENTERO, prof));
+                }
+                return e.toString();
+            }
+            case BOOLEAN:
+                return booleana(a, prof);
+            default:
+                return operando(a, CADENA, prof); // + no vale para cadenas
+        }
+    }
+
+    // x == y (solo con numeros) o un operando booleano
+    private String booleana(Ambito a, int prof) {
+        if (rnd.nextInt(3) != 0) {
+            return expresion(a, rnd.nextInt(2), prof) + " == " + expresion(a, rnd.nextInt(2), prof);
+        }
+        return operando(a, BOOLEAN, prof);
+    }
+
+    // Lo que va entre dos + (o un == si es booleano): variable, constante, llamada o parentesis
+    private String operando(Ambito a, int tipo, int prof) {
+        if (--operandos < 0) {
+            prof = 0; // con muchos parametros o mucha profundidad crece sin parar: se corta aqui
+        }
+        // con profundidad, la mitad de las veces se anida (parentesis o llamada)
+        int r = rnd.nextInt(prof > 0 ? 12 : 6);
+        if (r < 3) {
+            String v = variable(a, tipo);
+            if (v != null) {
+                return v;
+            }
+        } else if (r >= 6 && r < 10) {
+            return '(' + expresion(a, tipo, prof - 1) + ')';
+        } else if (r >= 10) {
+            List<Funcion> fs = porRetorno.get(tipo);
+            if (!fs.isEmpty()) {
+                return argumentos(a, fs.get(rnd.nextInt(fs.size())), prof - 1);
+            }
+        } else if (tipo == BOOLEAN && r == 5) {
+            return "!" + operando(a, BOOLEAN, prof);
+        }
+        switch (tipo) {
+            case ENTERO:
+                return Integer.toString(rnd.nextInt(10) == 0 ? rnd.nextInt(MAX_ENTERO) : rnd.nextInt(100));
+            case REAL:
+                return real();
+            case BOOLEAN:
+                return rnd.nextBoolean() ? "true" : "false";
+            default:
+                return cadena();
+        }
+    }
+
+    // para que cada nivel de profundidad pueda tener unos cuantos operandos
+    private int maxOperandos() {
+        return 16 + 8 * profundidad;
+    }
+
+    private String argumentos(Ambito a, Funcion f, int prof) {
+        StringBuilder e = new StringBuilder(f.nombre).append('(');
+        for (int i = 0; i < f.params.length; i++) {
+            e.append(i > 0 ? ", " : "").append(expresion(a, f.params[i], Math.max(0, prof)));
+        }
+        return e.append(')').toString();
+    }
+
+    private String real() {
+        return rnd.nextInt(1000) + "." + rnd.nextInt(100);
+    }
+
+    private String cadena() {
+        return '"' + PALABRAS[rnd.nextInt(PALABRAS.length)] + '"';
+    }
+
+    // tipo que se puede escribir o leer (todos menos boolean)
+    private int escribible() {
+        int t = rnd.nextInt(3);
+        return t == BOOLEAN ? CADENA : t;
+    }
+
+    // --- NOMBRES ---
+
+    // Una variable visible de ese tipo (null si no hay): las del ambito o las globales que no tapa
+    private String variable(Ambito a, int tipo) {
+        List<String> propias = a.porTipo.get(tipo);
+        List<String> globales = a.padre != null ? a.padre.porTipo.get(tipo) : null;
+        int n = propias.size() + (globales != null ? globales.size() : 0);
+        if (n == 0) {
+            return null;
+        }
+        int r = rnd.nextInt(n);
+        if (r < propias.size()) {
+            return propias.get(r);
+        }
+        String g = globales.get(r - propias.size());
+        return a.tipos.containsKey(g) ? null : g;
+    }
+
+    // Un nombre del vocabulario sin declarar en el ambito (null si no se encuentra)
+    private String nombreLibre(Ambito a) {
+        for (int intento = 0; intento < 4; intento++) {
+            String v = vocabulario_[rnd.nextInt(vocabulario_.length)];
+            if (!a.tipos.containsKey(v)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    private StringBuilder sangria(int nivel) {
+        for (int i = 0; i < nivel; i++) {
+            sb.append("    ");
+        }
+        return sb;
+    }
+
+    // --- LINEA DE COMANDOS ---
+
+    // 10KB, 5MB, 2GB (o 10K, 5M, 2G) o bytes
+    static long leerTam(String s) {
+        String t = s.trim().toUpperCase(Locale.ROOT);
+        if (t.endsWith("B")) {
+            t = t.substring(0, t.length() - 1);
+        }
+        long mult = 1;
+        int i = "KMG".indexOf(t.isEmpty() ? ' ' : t.charAt(t.length() - 1));
+        if (i >= 0) {
+            mult = 1L << (10 * (i + 1));
+            t = t.substring(0, t.length() - 1);
+        }
+        return (long) (Double.parseDouble(t) * mult);
+    }
+
+    public static void main(String[] args) {
+        GeneradorMyJS g = new GeneradorMyJS();
+        String salida = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                boolean conValor = a.startsWith("--") && i + 1 < args.length;
+                if (a.equals("--semilla") && conValor) {
+                    g.semilla = Long.parseLong(args[++i]);
+                } else if (a.equals("--funciones") && conValor) {
+                    g.funciones = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (a.equals("--parametros") && conValor) {
+                    g.parametros = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (a.equals("--sentencias") && conValor) {
+                    g.sentencias = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (a.equals("--profundidad") && conValor) {
+                    g.profundidad = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (a.equals("--anidamiento") && conValor) {
+                    g.anidamiento = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (a.equals("--vocabulario") && conValor) {
+                    g.vocabulario = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (a.equals("--errores") && conValor) {
+                    g.errores = Math.min(1, Math.max(0, Double.parseDouble(args[++i])));
+                } else if (a.equals("--tam") && conValor) {
+                    g.tam = leerTam(args[++i]);
+                } else if (!a.startsWith("--") && salida == null) {
+                    salida = a;
+                } else {
+                    System.err.println(USO);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Valor no valido: " + e.getMessage());
+            System.err.println(USO);
+            return;
+        }
+
+        OutputStream os = null;
+        try {
+            os = salida != null ? new FileOutputStream(salida) : System.out;
+            Writer out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.US_ASCII), 1 << 16);
+            g.generar(out);
+            out.flush();
+            // el resumen por la salida de errores, para no mezclarlo con el programa
+            System.err.println("Generado " + (salida != null ? salida : "programa") + ": " + g.bytes + " bytes, "
+                    + g.lineas + " lineas, " + g.numFunciones + " funciones, " + g.numErrores + " errores");
+        } catch (IOException e) {
+            System.err.println("Error al generar: " + e.getMessage());
+        } finally {
+            if (salida != null && os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // ya se ha avisado
+                }
+            }
+        }
+    }
+}
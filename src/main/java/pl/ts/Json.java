@@ -0,0 +1,268 @@
+package pl.ts;
+
+import java.util.*;
+
+// JSON minimo para el ServidorLsp (el proyecto no tiene dependencias)
+// Los objetos son Map<String, Object>, los arrays List<Object>, los numeros Long o Double,
+// y luego String, Boolean y null
+public final class Json {
+
+    private final String texto;
+    private int pos;
+
+    private Json(String texto) {
+        this.texto = texto;
+    }
+
+    public static Object leer(String texto) {
+        Json j = new Json(texto);
+        Object v = j.valor();
+        j.blancos();
+        if (j.pos != texto.length()) {
+            throw j.error("sobra texto");
+        }
+        return v;
+    }
+
+    public static String escribir(Object v) {
+        StringBuilder sb = new StringBuilder();
+        escribir(v, sb);
+        return sb.toString();
+    }
+
+    // --- LECTURA ---
+
+    private Object valor() {
+        blancos();
+        if (pos >= texto.length()) {
+            throw error("se acabo el texto");
+        }
+        char c = texto.charAt(pos);
+        switch (c) {
+            case '{':
+                return objeto();
+            case '[':
+                return array();
+            case '"':
+                return cadena();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return numero();
+                }
+                throw error("caracter inesperado '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> objeto() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        pos++; // {
+        blancos();
+        if (mirar() == '}') {
+            pos++;
+            return m;
+        }
+        while (true) {
+            blancos();
+            if (mirar() != '"') {
+                throw error("se esperaba el nombre de un campo");
+            }
+            String clave = cadena();
+            blancos();
+            esperar(':');
+            m.put(clave, valor());
+            blancos();
+            char c = siguiente();
+            if (c == '}') {
+                return m;
+            }
+            if (c != ',') {
+                throw error("se esperaba ',' o '}'");
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> l = new ArrayList<>();
+        pos++; // [
+        blancos();
+        if (mirar() == ']') {
+            pos++;
+            return l;
+        }
+        while (true) {
+            l.add(valor());
+            blancos();
+            char c = siguiente();
+            if (c == ']') {
+                return l;
+            }
+            if (c != ',') {
+                throw error("se esperaba ',' o ']'");
+            }
+        }
+    }
+
+    private String cadena() {
+        pos++; // "
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = siguiente();
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = siguiente();
+            switch (e) {
+                case '"': sb.append('"'); break;
+                case '\\': sb.append('\\'); break;
+                case '/': sb.append('/'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > texto.length()) {
+                        throw error("escape \\u cortado");
+                    }
+                    sb.append((char) Integer.parseInt(texto.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default:
+                    throw error("escape no valido '\\" + e + "'");
+            }
+        }
+    }
+
+    private Object numero() {
+        int inicio = pos;
+        boolean real = false;
+        while (pos < texto.length()) {
+            char c = texto.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                real = true;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            pos++;
+        }
+        String n = texto.substring(inicio, pos);
+        try {
+            return real ? (Object) Double.parseDouble(n) : (Object) Long.parseLong(n);
+        } catch (NumberFormatException e) {
+            throw error("numero no valido: " + n);
+        }
+    }
+
+    private Object literal(String palabra, Object v) {
+        if (!texto.startsWith(palabra, pos)) {
+            throw error("se esperaba " + palabra);
+        }
+        pos += palabra.length();
+        return v;
+    }
+
+    private void blancos() {
+        while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private char mirar() {
+        return pos < texto.length() ? texto.charAt(pos) : '\0';
+    }
+
+    private char siguiente() {
+        if (pos >= texto.length()) {
+            throw error("se acabo el texto");
+        }
+        return texto.charAt(pos++);
+    }
+
+    private void esperar(char c) {
+        if (siguiente() != c) {
+            throw error("se esperaba '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException("JSON no valido (posicion " + pos + "): " + msg);
+    }
+
+    // --- ESCRITURA ---
+
+    private static void escribir(Object v, StringBuilder sb) {
+        if (v == null) {
+            sb.append("null");
+        } else if (v instanceof String) {
+            escribirCadena((String) v, sb);
+        } else if (v instanceof Number || v instanceof Boolean) {
+            sb.append(v);
+        } else if (v instanceof Map) {
+            sb.append('{');
+            boolean primero = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                if (!primero) {
+                    sb.append(',');
+                }
+                primero = false;
+                escribirCadena(e.getKey().toString(), sb);
+                sb.append(':');
+                escribir(e.getValue(), sb);
+            }
+            sb.append('}');
+        } else if (v instanceof List) {
+            sb.append('[');
+            boolean primero = true;
+            for (Object o : (List<?>) v) {
+                if (!primero) {
+                    sb.append(',');
+                }
+                primero = false;
+                escribir(o, sb);
+            }
+            sb.append(']');
+        } else {
+            throw new IllegalArgumentException("no se puede pasar a JSON: " + v.getClass());
+        }
+    }
+
+    private static void escribirCadena(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    // Para construir objetos sin tanto put: Json.objeto("a", 1, "b", "x")
+    public static Map<String, Object> objeto(Object... claveValor) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < claveValor.length; i += 2) {
+            m.put((String) claveValor[i], claveValor[i + 1]);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,39 @@
+package pl.ts;
+
+// Para no poner mil errores si en una linea todo esta mal:
+// deja pasar como mucho 'maximo' errores seguidos de la misma linea
+public class LimiteErrores {
+
+    private int maximo;
+    private int ultimaLinea = -1;
+    private int enLinea = 0;
+
+    public LimiteErrores(int maximo) {
+        this.maximo = maximo;
+    }
+
+    // true si el error de esta linea se tiene que escribir
+    public boolean admitir(int linea) {
+        if (linea == ultimaLinea) {
+            enLinea++;
+            return enLinea <= maximo;
+        }
+        ultimaLinea = linea;
+        enLinea = 1;
+        return true;
+    }
+
+    // Para guardar el estado y volver a el (analisis incremental)
+    public int getUltimaLinea() {
+        return ultimaLinea;
+    }
+
+    public int getEnLinea() {
+        return enLinea;
+    }
+
+    public void restaurar(int ultimaLinea, int enLinea) {
+        this.ultimaLinea = ultimaLinea;
+        this.enLinea = enLinea;
+    }
+}
@@ -1,50 +1,190 @@
 package pl.ts;
 
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 // Clase principal que arranca el compilador
+// Solo lee los argumentos: la compilacion la hace SesionCompilador (o CompiladorLotes)
 public class Main {
 
+    private static final String USO =
+          "Uso: java -cp target/classes pl.ts.Main [opciones] fichero.js tokens.txt tabla_simbolos.txt\n"
+        + "     java -cp target/classes pl.ts.Main [opciones] --lote <carpeta|lista.txt> [--hilos N] [--salida carpeta]\n"
+        + "Opciones:\n"
+        + "     --mmap      mapea el fuente en memoria (UTF-8), para ficheros muy grandes\n"
+        + "     --paralelo  analisis lexico por trozos en paralelo\n"
+        + "     --async     los ficheros de salida se escriben en otro hilo\n"
+        + "     --segmentado  lexer, parser y escritura a la vez, cada uno en su hilo\n"
+        + "     --check-only  solo comprueba el programa (solo se escribe errores.txt)\n"
+        + "     --binario   tokens, parse y tabla en binario (.bin); se pasan a texto con pl.ts.FormatoBinario\n"
+        + "     --errores-al-vuelo  los errores del parser se escriben segun salen (sin esperar a los del lexer)\n"
+        + "     --cache <carpeta>  si el fuente ya se compilo igual, copia las salidas de la cache\n"
+        + "     --cache-max <MB>   tamaño maximo de la cache (1024 por defecto)";
+
+    static final int SALIDA_ERRORES = 1; // con --check-only: el programa tiene errores
+    static final int SALIDA_FALLO = 3;   // no se ha podido compilar (fuente que no se lee, E/S...)
+
     public static void main(String[] args) {
+        int codigo = ejecutar(args, Paths.get(""), System.out, System.err);
+        if (codigo != 0) {
+            System.exit(codigo);
+        }
+    }
+
+    // Lo que hace main, pero los ficheros relativos van contra 'dir' y los mensajes a out/err
+    // (asi lo puede usar tambien el ServidorCompilador). Devuelve el codigo de salida:
+    // 1 si con --check-only hay errores, 3 si no se ha podido compilar (en lote, si falla
+    // algun fichero) y 0 en lo demas
+    // (el 2 es el de compilacion cancelada del servidor)
+    public static int ejecutar(String[] args, Path dir, PrintStream out, PrintStream err) {
+        // Separamos las opciones (--algo) de los ficheros
+        OpcionesCompilacion opciones = new OpcionesCompilacion();
+        List<String> ficheros = new ArrayList<>();
+        String lote = null;
+        int numHilos = Runtime.getRuntime().availableProcessors();
+        String carpetaSalida = "salida";
+
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--lote") && i + 1 < args.length) {
+                lote = args[++i];
+            } else if (a.equals("--hilos") && i + 1 < args.length) {
+                long n = numero(args[++i], Integer.MAX_VALUE);
+                if (n < 0) {
+                    err.println("Valor no valido para --hilos: " + args[i]);
+                    err.println(USO);
+                    return 0;
+                }
+                numHilos = (int) n;
+            } else if (a.equals("--salida") && i + 1 < args.length) {
+                carpetaSalida = args[++i];
+            } else if (a.equals("--cache") && i + 1 < args.length) {
+                opciones.carpetaCache = ruta(dir, args[++i]);
+            } else if (a.equals("--cache-max") && i + 1 < args.length) {
+                long mb = numero(args[++i], Long.MAX_VALUE >> 20); // que al pasarlo a bytes no se salga del long
+                if (mb < 0) {
+                    err.println("Valor no valido para --cache-max: " + args[i]);
+                    err.println(USO);
+                    return 0;
+                }
+                opciones.tamMaxCache = mb << 20;
+            } else if (a.startsWith("--")) {
+                if (!opciones.leerOpcion(a)) {
+                    err.println("Opcion no reconocida: " + a);
+                    err.println(USO);
+                    return 0;
+                }
+            } else {
+                ficheros.add(a);
+            }
+        }
+
+        // Modo lote: muchos ficheros en la misma JVM
+        if (lote != null) {
+            return mainLote(lote, numHilos, carpetaSalida, opciones, dir, out, err);
+        }
+
         // Miramos que nos pasen los 3 archivos obligatorios
-        if (args.length != 3) {
-            System.err.println("Uso: java -cp target/classes pl.ts.Main fichero.js tokens.txt tabla_simbolos.txt");
-            return;
+        if (ficheros.size() != 3) {
+            err.println(USO);
+            return 0;
         }
 
         // Nombres de los ficheros que nos dan por argumentos
-        String archivoFuente = args[0];
-        String archivoTokens = args[1];
-        String archivoTS     = args[2];
+        String archivoFuente = ficheros.get(0);
+        String archivoTokens = ficheros.get(1);
+        String archivoTS     = ficheros.get(2);
 
         // Estos son fijos segun nos han pedido
         String archivoParse  = "parse.txt";
         String archivoErrores = "errores.txt";
 
         try {
-            // Inicializar la tabla de simbolos
-            TablaSimbolos.inicializar(archivoTS);
-            
-            // Primero el Lexer para sacar los tokens
-            AnalizadorLexico lexer = new AnalizadorLexico(archivoFuente, archivoTokens, archivoErrores);
-            lexer.analizar();
-
-            // Despues el Parser usando la lista de tokens del lexer
-            List<Token> listaTokens = lexer.getTokens();
-            AnalizadorSintactico parser = new AnalizadorSintactico(listaTokens, archivoParse, archivoErrores);
-            parser.analizar();
-
-            // Cerramos todo
-            TablaSimbolos.finalizar();
-
-            System.out.println("Analisis completado.");
-            System.out.println("Tokens en: " + archivoTokens);
-            System.out.println("Tabla de simbolos en: " + archivoTS);
-            System.out.println("Parse en: " + archivoParse);
-            System.out.println("Errores (si los hay) en: " + archivoErrores);
+            int numErrores = new SesionCompilador(opciones).compilarFicheros(ruta(dir, archivoFuente),
+                    ruta(dir, archivoTokens), ruta(dir, archivoTS), ruta(dir, archivoParse), ruta(dir, archivoErrores));
+
+            if (opciones.soloComprobar) {
+                // para usarlo en scripts: el codigo de salida dice si hay errores
+                out.println("Errores: " + numErrores + (numErrores > 0 ? " (ver " + archivoErrores + ")" : ""));
+                return numErrores > 0 ? SALIDA_ERRORES : 0;
+            }
+
+            if (opciones.formatoBinario) {
+                archivoTokens = ContextoCompilacion.rutaBinaria(archivoTokens);
+                archivoTS = ContextoCompilacion.rutaBinaria(archivoTS);
+                archivoParse = ContextoCompilacion.rutaBinaria(archivoParse);
+            }
+            out.println("Analisis completado.");
+            out.println("Tokens en: " + archivoTokens);
+            out.println("Tabla de simbolos en: " + archivoTS);
+            out.println("Parse en: " + archivoParse);
+            out.println("Errores (si los hay) en: " + archivoErrores);
+
+        } catch (Exception e) {
+            err.println("Error durante el analisis: " + e.getMessage());
+            return SALIDA_FALLO;
+        } catch (StackOverflowError e) {
+            err.println("Error durante el analisis: StackOverflowError (programa demasiado anidado)");
+            return SALIDA_FALLO;
+        }
+        return 0;
+    }
+
+    // El numero de una opcion, de 1 a max (-1 si no es un numero o se sale)
+    static long numero(String valor, long max) {
+        try {
+            long n = Long.parseLong(valor.trim());
+            return n >= 1 && n <= max ? n : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String ruta(Path dir, String fichero) {
+        return dir.resolve(fichero).toString();
+    }
+
+    // Devuelve el codigo de salida como ejecutar: 3 si algun fichero ha fallado (o el lote entero),
+    // si no 1 si con --check-only alguno tiene errores
+    private static int mainLote(String entrada, int numHilos, String carpetaSalida, OpcionesCompilacion opciones,
+                                 Path dir, PrintStream out, PrintStream err) {
+        try {
+            List<String> fuentes = new ArrayList<>();
+            for (String f : CompiladorLotes.leerEntrada(ruta(dir, entrada))) {
+                fuentes.add(ruta(dir, f));
+            }
+            // la cache puede venir ya usada (en el servidor), solo se cuenta lo de este lote
+            CacheCompilacion cache = new SesionCompilador(opciones).getCache();
+            int aciertos = cache != null ? cache.getAciertos() : 0;
+            int fallos = cache != null ? cache.getFallos() : 0;
+            long inicio = System.nanoTime();
+            List<CompiladorLotes.Resultado> resultados =
+                    new CompiladorLotes(numHilos, ruta(dir, carpetaSalida), opciones).compilar(fuentes);
+            long nanos = System.nanoTime() - inicio;
+
+            CompiladorLotes.imprimirResumen(resultados, nanos, out);
+            if (cache != null) {
+                out.println("Cache: " + (cache.getAciertos() - aciertos) + " aciertos, "
+                        + (cache.getFallos() - fallos) + " compilados");
+            }
+            out.println("Salida en: " + carpetaSalida);
 
+            int codigo = 0;
+            for (CompiladorLotes.Resultado r : resultados) {
+                if (r.fallo != null) {
+                    return SALIDA_FALLO;
+                }
+                if (opciones.soloComprobar && r.numErrores > 0) {
+                    codigo = SALIDA_ERRORES;
+                }
+            }
+            return codigo;
         } catch (Exception e) {
-            System.err.println("Error durante el analisis: " + e.getMessage());
+            err.println("Error durante el analisis: " + e.getMessage());
+            return SALIDA_FALLO;
         }
     }
 }
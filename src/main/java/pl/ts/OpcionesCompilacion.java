@@ -0,0 +1,64 @@
+package pl.ts;
+
+// Opciones que se pueden pasar al compilar (desde la linea de comandos con --opcion)
+public class OpcionesCompilacion {
+
+    // --mmap: mapear el fichero fuente en memoria en vez de leerlo a un String
+    // (para fuentes enormes; el fichero se lee siempre como UTF-8)
+    public boolean mapearFuente = false;
+
+    // --paralelo: el lexer parte el fichero en trozos y los analiza a la vez
+    public boolean lexicoParalelo = false;
+
+    // --async: los ficheros de salida los escribe otro hilo con buffers grandes
+    public boolean salidaAsincrona = false;
+
+    // --check-only: solo se comprueba el programa, solo se escribe errores.txt
+    public boolean soloComprobar = false;
+
+    // --segmentado: lexer, parser y escritura de ficheros cada uno en su hilo, pasandose
+    // lotes (con --paralelo manda el lexer paralelo, pero los ficheros igual van en otro hilo)
+    public boolean compilacionSegmentada = false;
+
+    // --binario: tokens, parse y tabla de simbolos en binario (.bin), ver FormatoBinario
+    public boolean formatoBinario = false;
+
+    // --errores-al-vuelo: los errores del parser se escriben en cuanto salen, sin esperar a que
+    // el lexer acabe el fichero (salen antes y no se guardan en memoria, pero mezclados con los
+    // del lexer segun lo que este vaya por delante)
+    public boolean erroresAlVuelo = false;
+
+    // --cache carpeta: si el fuente ya se compilo igual, las salidas se copian de la cache
+    // (ver CacheCompilacion); --cache-max MB es lo que puede ocupar como mucho
+    public String carpetaCache = null;
+    public long tamMaxCache = CacheCompilacion.TAM_MAX_DEFECTO;
+
+    // Intenta entender una opcion de la linea de comandos. Devuelve false si no es suya
+    public boolean leerOpcion(String opcion) {
+        switch (opcion) {
+            case "--mmap":
+                mapearFuente = true;
+                return true;
+            case "--paralelo":
+                lexicoParalelo = true;
+                return true;
+            case "--async":
+                salidaAsincrona = true;
+                return true;
+            case "--check-only":
+                soloComprobar = true;
+                return true;
+            case "--segmentado":
+                compilacionSegmentada = true;
+                return true;
+            case "--binario":
+                formatoBinario = true;
+                return true;
+            case "--errores-al-vuelo":
+                erroresAlVuelo = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+}
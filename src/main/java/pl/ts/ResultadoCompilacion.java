@@ -0,0 +1,67 @@
+package pl.ts;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static pl.ts.CodigoToken.*;
+
+// Lo que sale de compilar en memoria con SesionCompilador: lo mismo que los cuatro
+// ficheros pero en objetos. Los escribir*() sacan el texto de siempre (o el binario)
+public class ResultadoCompilacion {
+
+    // todos los tokens en orden, el EOF incluido (los ids llevan su id de la tabla global
+    // y las constantes su posicion en 'constantes')
+    public BufferTokens tokens = new BufferTokens();
+    public TablaConstantes constantes;
+
+    // reglas del parse en orden (sin la "D" del principio)
+    public int[] reglas = new int[0];
+
+    // tablas de simbolos en el orden en que se cierran (el de ts.txt, la global al final)
+    public List<TablaSimbolos.Tabla> tablas = new ArrayList<>();
+
+    // errores en el orden de errores.txt
+    public List<Diagnostico> diagnosticos = new ArrayList<>();
+
+    public int getNumErrores() {
+        return diagnosticos.size();
+    }
+
+    public void escribirTokens(SalidaTokens out) throws IOException {
+        for (int i = 0; i < tokens.tam(); i++) {
+            int codigo = tokens.codigo(i);
+            int atributo = tokens.atributo(i);
+            if (codigo == COD_ID) {
+                out.id(atributo);
+            } else if (codigo == COD_CE || codigo == COD_CR || codigo == COD_CAD) {
+                out.constante(codigo, atributo, constantes.texto(atributo));
+            } else {
+                out.token(codigo);
+            }
+        }
+        out.flush();
+    }
+
+    public void escribirReglas(SalidaReglas out) throws IOException {
+        out.cabecera();
+        for (int n : reglas) {
+            out.regla(n);
+        }
+        out.flush();
+    }
+
+    public void escribirTablas(SalidaTablas out) throws IOException {
+        for (TablaSimbolos.Tabla t : tablas) {
+            out.tabla(t);
+        }
+    }
+
+    public void escribirErrores(Writer out) throws IOException {
+        for (Diagnostico d : diagnosticos) {
+            out.write(d.texto());
+            out.write(System.lineSeparator());
+        }
+        out.flush();
+    }
+}
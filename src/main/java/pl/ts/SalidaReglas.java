@@ -0,0 +1,59 @@
+package pl.ts;
+
+import java.io.*;
+
+// A donde van los numeros de las reglas que aplica el parser (parse.txt o su version binaria)
+public interface SalidaReglas extends Closeable, Flushable {
+
+    // lo que va antes de la primera regla (en parse.txt la "D" del analisis descendente)
+    void cabecera() throws IOException;
+
+    void regla(int n) throws IOException;
+
+    // No escribe nada (--check-only: el parse no se escribe, asi que tampoco se formatea)
+    SalidaReglas NULA = new SalidaReglas() {
+        public void cabecera() {
+        }
+
+        public void regla(int n) {
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    };
+
+    // El formato de siempre, un numero por linea
+    class Texto implements SalidaReglas {
+
+        private final BufferedWriter out;
+
+        public Texto(BufferedWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void cabecera() throws IOException {
+            out.write("D");
+            out.newLine();
+        }
+
+        @Override
+        public void regla(int n) throws IOException {
+            out.write(Integer.toString(n));
+            out.newLine();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
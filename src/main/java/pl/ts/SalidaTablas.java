@@ -0,0 +1,59 @@
+package pl.ts;
+
+import java.io.*;
+
+// A donde van las tablas de simbolos cuando se cierran (ts.txt o su version binaria)
+public interface SalidaTablas extends Closeable {
+
+    void tabla(TablaSimbolos.Tabla t) throws IOException;
+
+    // El formato de siempre
+    class Texto implements SalidaTablas {
+
+        private final PrintWriter escritor;
+
+        public Texto(Writer salida) {
+            this.escritor = new PrintWriter(salida);
+        }
+
+        // (no se vacia el buffer en cada tabla, ya se escribe todo al cerrar)
+        @Override
+        public void tabla(TablaSimbolos.Tabla t) {
+            escritor.println(t.nombre + " # " + t.id + " :");
+
+            for (TablaSimbolos.Simbolo s : t.simbolos) {
+                escritor.println("* LEXEMA : '" + s.lexema + "'");
+                escritor.println("  ATRIBUTOS :");
+                escritor.println("  + tipo : '" + s.tipo + "'");
+                escritor.println("  + despl : " + s.desp);
+
+                if (s.numParams > 0) {
+                    escritor.println("  + numParam : " + s.numParams);
+                    for (int i = 0; i < s.numParams; i++) {
+                        escritor.println("  + TipoParam" + (i + 1) + " : '" +
+                            (s.tipoParam[i] != null ? s.tipoParam[i] : "-") + "'");
+                        if (s.modoParam[i] != null) {
+                            escritor.println("  + ModoParam" + (i + 1) + " : " + s.modoParam[i]);
+                        }
+                    }
+                }
+                if (s.tipoRetorno != null) {
+                    escritor.println("  + TipoRetorno : '" + s.tipoRetorno + "'");
+                }
+                if (s.etiqFuncion != null) {
+                    escritor.println("  + EtiqFuncion : '" + s.etiqFuncion + "'");
+                }
+                if (s.esParametro != 0) {
+                    escritor.println("  + param : " + s.esParametro);
+                }
+                escritor.println("--------- ----------");
+            }
+            escritor.println();
+        }
+
+        @Override
+        public void close() {
+            escritor.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package pl.ts;
+
+import java.io.*;
+
+import static pl.ts.CodigoToken.*;
+
+// A donde van los tokens que saca el lexer (tokens.txt o su version binaria)
+public interface SalidaTokens extends Closeable, Flushable {
+
+    // token sin atributo: "<cod_pc,>"
+    void token(int codigo) throws IOException;
+
+    // identificador con su id de la tabla de simbolos: "<cod_id,N>"
+    void id(int handle) throws IOException;
+
+    // constante k de la TablaConstantes (texto sin comillas en las cadenas)
+    void constante(int codigo, int k, String texto) throws IOException;
+
+    // No escribe nada (compilando en memoria los tokens se cogen al pasar al parser)
+    SalidaTokens NULA = new SalidaTokens() {
+        public void token(int codigo) {
+        }
+
+        public void id(int handle) {
+        }
+
+        public void constante(int codigo, int k, String texto) {
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    };
+
+    // El formato de siempre, una linea por token
+    class Texto implements SalidaTokens {
+
+        private final BufferedWriter out;
+
+        public Texto(BufferedWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void token(int codigo) throws IOException {
+            out.write(CodigoToken.sinAtributo(codigo));
+            out.newLine();
+        }
+
+        // las cifras una a una (sin pasar el numero a String)
+        @Override
+        public void id(int handle) throws IOException {
+            out.write("<cod_id,");
+            long n = handle;
+            if (n < 0) {
+                out.write('-');
+                n = -n;
+            }
+            long peso = 1;
+            while (peso * 10 <= n) {
+                peso *= 10;
+            }
+            for (; peso > 0; peso /= 10) {
+                out.write((char) ('0' + (n / peso) % 10));
+            }
+            out.write('>');
+            out.newLine();
+        }
+
+        @Override
+        public void constante(int codigo, int k, String texto) throws IOException {
+            out.write('<');
+            out.write(CodigoToken.nombre(codigo));
+            out.write(',');
+            if (codigo == COD_CAD) {
+                out.write('"');
+                out.write(texto);
+                out.write('"');
+            } else {
+                out.write(texto);
+            }
+            out.write('>');
+            out.newLine();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package pl.ts;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Servidor de compilacion: una JVM que se queda arrancada (y con el JIT caliente) y compila
+// lo que le piden por un socket local, asi cada fichero tarda milisegundos y no un arranque.
+//   java -cp target/classes pl.ts.ServidorCompilador [--puerto N | --socket ruta] [--plazo ms]
+// El cliente es ClienteCompilador, con los mismos argumentos que Main.
+//
+// Quien se conecta puede leer y escribir cualquier fichero que pueda el usuario del servidor,
+// asi que solo puede entrar ese usuario: por defecto es un socket de Unix en una carpeta suya
+// (<tmp>/myjs-<usuario>, permisos 700) y el socket tiene permisos 600. Con --puerto (TCP en
+// localhost, donde entra cualquier usuario de la maquina) cada arranque saca una clave al azar
+// y la deja en esa carpeta; el cliente la lee de alli y la manda, y sin ella no se hace nada.
+//
+// Protocolo (lineas en UTF-8). El cliente manda:
+//   MYJS 1
+//   CLAVE <clave>                 (solo por TCP)
+//   DIR <carpeta del cliente>     (los ficheros relativos van contra ella)
+//   PLAZO <ms>                    (opcional, si no el del servidor)
+//   ARG <argumento>               (uno por argumento de Main)
+//   FIN                           (o PARAR para apagar el servidor)
+// y mientras compila puede mandar CANCELAR (o cerrar la conexion, que es lo mismo).
+// El servidor contesta con lo que Main habria escrito (OUT <linea> y ERR <linea>) y al
+// final SALIDA <codigo>, y cierra.
+// Cada peticion va con su propio contexto en su hilo (no hay hilos virtuales en Java 17,
+// van en un pool de hilos normales que crece lo que haga falta).
+public class ServidorCompilador {
+
+    static final String VERSION = "MYJS 1";
+    private static final String USO =
+            "Uso: java -cp target/classes pl.ts.ServidorCompilador [--puerto N | --socket ruta] [--plazo ms]";
+    private static final Set<PosixFilePermission> SOLO_DUENO_CARPETA = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> SOLO_DUENO = PosixFilePermissions.fromString("rw-------");
+
+    static final int SALIDA_CANCELADA = 2; // codigo si se cancela o se pasa de plazo
+    static final int SALIDA_FALLO = Main.SALIDA_FALLO; // peticion mal hecha o fallo del servidor
+
+    private static final long TAM_PILA = 16L << 20; // de margen (el parser ya no anida en la pila de Java)
+
+    private final ServerSocketChannel servidor;
+    private final Path rutaSocket;        // si es un socket de Unix (para borrarlo al parar)
+    private final String clave;           // la que tienen que mandar por TCP (null con socket de Unix)
+    private final Path rutaClave;         // donde se ha dejado la clave para el cliente
+    private final long plazo;             // ms por compilacion si el cliente no dice (0 = sin plazo)
+    private final ExecutorService hilos;  // uno por conexion y otro por compilacion
+    private final ScheduledExecutorService reloj = Executors.newSingleThreadScheduledExecutor(
+            hilosDemonio("plazos", 0));
+    private volatile boolean parado;
+
+    // Lo que pide un cliente
+    static class Peticion {
+        Path dir;
+        String clave;
+        long plazo;
+        List<String> args = new ArrayList<>();
+        boolean parar;
+
+        private Thread hilo;              // el que compila (mientras compila)
+        private volatile String motivo;   // por que se ha cancelado (null si no)
+
+        synchronized void cancelar(String por) {
+            if (motivo == null) {
+                motivo = por;
+            }
+            if (hilo != null) {
+                hilo.interrupt();
+            }
+        }
+
+        synchronized void empezar() {
+            hilo = Thread.currentThread();
+            if (motivo != null) {
+                hilo.interrupt();
+            }
+        }
+
+        // a partir de aqui cancelar ya no interrumpe (asi no se corta la respuesta)
+        synchronized void terminar() {
+            hilo = null;
+            Thread.interrupted();
+        }
+    }
+
+    public ServidorCompilador(SocketAddress direccion, long plazo) throws IOException {
+        this.plazo = plazo;
+        this.hilos = Executors.newCachedThreadPool(hilosDemonio("compilacion", TAM_PILA));
+        if (direccion instanceof UnixDomainSocketAddress) {
+            rutaSocket = ((UnixDomainSocketAddress) direccion).getPath();
+            clave = null;
+            rutaClave = null;
+            Files.deleteIfExists(rutaSocket); // de un servidor anterior que no se paro bien
+            servidor = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            servidor.bind(direccion);
+            soloDueno(rutaSocket, SOLO_DUENO);
+        } else {
+            rutaSocket = null;
+            servidor = ServerSocketChannel.open();
+            servidor.bind(direccion);
+            byte[] azar = new byte[32];
+            new SecureRandom().nextBytes(azar);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : azar) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            clave = sb.toString();
+            rutaClave = rutaClave(((InetSocketAddress) servidor.getLocalAddress()).getPort());
+            escribirClave(rutaClave, clave);
+        }
+    }
+
+    // Un socket de Unix si nos dan ruta, el puerto en localhost (nunca hacia fuera) si nos dan
+    // puerto, y si no el socket de siempre en la carpeta del usuario
+    static SocketAddress direccion(String socket, Integer puerto) throws IOException {
+        if (socket != null) {
+            return UnixDomainSocketAddress.of(socket);
+        }
+        if (puerto != null) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto);
+        }
+        return UnixDomainSocketAddress.of(carpetaPrivada().resolve("servidor.sock"));
+    }
+
+    // <tmp>/myjs-<usuario>: la crea con permisos 700 y, si ya estaba, comprueba que es nuestra
+    // y que nadie mas puede entrar (si no, cualquiera podria poner ahi su socket o leer la clave)
+    static Path carpetaPrivada() throws IOException {
+        String usuario = System.getProperty("user.name", "").replaceAll("[^A-Za-z0-9._-]", "_");
+        Path carpeta = Paths.get(System.getProperty("java.io.tmpdir")).resolve("myjs-" + usuario);
+        if (!esPosix(carpeta.getParent())) {
+            Files.createDirectories(carpeta); // en Windows la carpeta temporal ya es del usuario
+            return carpeta;
+        }
+        try {
+            Files.createDirectory(carpeta, PosixFilePermissions.asFileAttribute(SOLO_DUENO_CARPETA));
+        } catch (FileAlreadyExistsException e) {
+            // ya estaba: se mira abajo
+        }
+        UserPrincipal yo = carpeta.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (Files.isSymbolicLink(carpeta) || !Files.isDirectory(carpeta)
+                || !Files.getOwner(carpeta, LinkOption.NOFOLLOW_LINKS).equals(yo)
+                || !Files.getPosixFilePermissions(carpeta, LinkOption.NOFOLLOW_LINKS).equals(SOLO_DUENO_CARPETA)) {
+            throw new IOException("la carpeta " + carpeta + " tiene que ser del usuario y con permisos 700");
+        }
+        return carpeta;
+    }
+
+    // donde deja la clave el servidor que escucha en ese puerto
+    static Path rutaClave(int puerto) throws IOException {
+        return carpetaPrivada().resolve("puerto-" + puerto + ".clave");
+    }
+
+    // se crea de nuevo (con permisos 600 desde el principio) por si habia una de otro arranque
+    private static void escribirClave(Path ruta, String clave) throws IOException {
+        Files.deleteIfExists(ruta);
+        Set<OpenOption> modo = Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try (SeekableByteChannel c = esPosix(ruta.getParent())
+                ? Files.newByteChannel(ruta, modo, PosixFilePermissions.asFileAttribute(SOLO_DUENO))
+                : Files.newByteChannel(ruta, modo)) {
+            c.write(ByteBuffer.wrap(clave.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static void soloDueno(Path ruta, Set<PosixFilePermission> permisos) throws IOException {
+        if (esPosix(ruta.getParent())) {
+            Files.setPosixFilePermissions(ruta, permisos);
+        }
+    }
+
+    private static boolean esPosix(Path ruta) {
+        return ruta != null && ruta.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private boolean claveValida(Peticion p) {
+        if (clave == null) {
+            return true; // socket de Unix: solo puede conectarse el usuario
+        }
+        // comparacion en tiempo constante (que no se pueda adivinar por lo que tarda)
+        return p.clave != null && MessageDigest.isEqual(clave.getBytes(StandardCharsets.UTF_8),
+                p.clave.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Acepta conexiones hasta que alguien manda PARAR
+    public void atender() throws IOException {
+        try {
+            while (!parado) {
+                SocketChannel canal;
+                try {
+                    canal = servidor.accept();
+                } catch (IOException e) {
+                    if (parado) {
+                        break; // lo ha cerrado parar()
+                    }
+                    throw e;
+                }
+                hilos.execute(() -> conexion(canal));
+            }
+        } finally {
+            parar();
+        }
+    }
+
+    public void parar() {
+        parado = true;
+        try {
+            servidor.close();
+            if (rutaSocket != null) {
+                Files.deleteIfExists(rutaSocket);
+            }
+            if (rutaClave != null) {
+                Files.deleteIfExists(rutaClave);
+            }
+        } catch (IOException e) {
+            // ya nos vamos
+        }
+        reloj.shutdownNow();
+        hilos.shutdown();
+    }
+
+    // Hace unas cuantas compilaciones en memoria para que el JIT ya este listo
+    // cuando llegue la primera de verdad
+    public void calentar() {
+        String programa = "let int x = 10;\n"
+                + "let string s = \"hola\";\n"
+                + "function int doble(int a) { return a + a; }\n"
+                + "x = doble(x);\n"
+                + "if (x == 20) write s;\n"
+                + "for (x = 0; x == 0; x = x + 1) { write x; }\n"
+                + "let boolean b = !true;\n";
+        SesionCompilador sesion = new SesionCompilador();
+        try {
+            for (int i = 0; i < 500 && !parado; i++) {
+                sesion.compilar(programa);
+            }
+        } catch (IOException e) {
+            // en memoria no deberia pasar, y si pasa solo es que no se calienta
+        }
+    }
+
+    // Lo que se hace con cada cliente: leer la peticion, mandarla a compilar y mientras
+    // tanto escuchar por si la cancela. La respuesta la manda (y cierra) el que compila
+    private void conexion(SocketChannel canal) {
+        Peticion p = null;
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(entrada(canal), StandardCharsets.UTF_8));
+            p = leerPeticion(in);
+            if (!claveValida(p)) {
+                // tampoco se puede parar el servidor sin la clave
+                responder(canal, new ArrayList<>(), List.of("Peticion no valida: falta la clave o no es esta"), SALIDA_FALLO);
+                return;
+            }
+            if (p.parar) {
+                responder(canal, new ArrayList<>(), List.of("Servidor parado"), 0);
+                parar();
+                return;
+            }
+            Peticion peticion = p;
+            hilos.execute(() -> compilar(peticion, canal));
+            long ms = p.plazo > 0 ? p.plazo : plazo;
+            ScheduledFuture<?> aviso = ms > 0
+                    ? reloj.schedule(() -> peticion.cancelar("plazo agotado (" + ms + " ms)"), ms, TimeUnit.MILLISECONDS)
+                    : null;
+            try {
+                String linea;
+                while ((linea = in.readLine()) != null) {
+                    if (linea.equals("CANCELAR")) {
+                        p.cancelar("cancelada por el cliente");
+                    }
+                }
+                p.cancelar("el cliente se ha ido");
+            } catch (IOException e) {
+                // la cierra el que compila al terminar (o se ha ido el cliente)
+                p.cancelar("el cliente se ha ido");
+            } finally {
+                if (aviso != null) {
+                    aviso.cancel(false);
+                }
+            }
+        } catch (IOException e) {
+            if (p == null) {
+                // peticion mal hecha
+                responder(canal, new ArrayList<>(), List.of("Peticion no valida: " + e.getMessage()), SALIDA_FALLO);
+            }
+        } catch (RejectedExecutionException e) {
+            // parando
+            responder(canal, new ArrayList<>(), List.of("El servidor se esta parando"), SALIDA_FALLO);
+        }
+    }
+
+    static Peticion leerPeticion(BufferedReader in) throws IOException {
+        String version = in.readLine();
+        if (!VERSION.equals(version)) {
+            throw new IOException("se esperaba '" + VERSION + "'");
+        }
+        Peticion p = new Peticion();
+        String linea;
+        while ((linea = in.readLine()) != null) {
+            if (linea.equals("FIN")) {
+                if (p.dir == null) {
+                    throw new IOException("falta DIR");
+                }
+                return p;
+            } else if (linea.equals("PARAR")) {
+                p.parar = true;
+                return p;
+            } else if (linea.startsWith("CLAVE ")) {
+                p.clave = linea.substring(6);
+            } else if (linea.startsWith("DIR ")) {
+                p.dir = Paths.get(linea.substring(4));
+            } else if (linea.startsWith("PLAZO ")) {
+                p.plazo = Main.numero(linea.substring(6), Long.MAX_VALUE);
+                if (p.plazo < 0) {
+                    throw new IOException("PLAZO no valido: " + linea.substring(6));
+                }
+            } else if (linea.startsWith("ARG ")) {
+                p.args.add(linea.substring(4));
+            } else {
+                throw new IOException("linea no valida: " + linea);
+            }
+        }
+        throw new IOException("peticion cortada");
+    }
+
+    private void compilar(Peticion p, SocketChannel canal) {
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytesErr = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytesOut, true, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(bytesErr, true, StandardCharsets.UTF_8);
+        int codigo;
+        p.empezar();
+        try {
+            codigo = Main.ejecutar(p.args.toArray(new String[0]), p.dir, out, err);
+        } catch (Throwable e) {
+            // en Main se recogen las excepciones y StackOverflowError; esto es OutOfMemoryError y compania
+            err.println("Error durante el analisis: " + e);
+            codigo = SALIDA_FALLO;
+        } finally {
+            p.terminar();
+        }
+        if (p.motivo != null) {
+            err.println("Compilacion cancelada: " + p.motivo);
+            codigo = SALIDA_CANCELADA;
+        }
+        responder(canal, lineas(bytesOut), lineas(bytesErr), codigo);
+    }
+
+    private static List<String> lineas(ByteArrayOutputStream bytes) {
+        String texto = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        List<String> lineas = new ArrayList<>();
+        for (String l : texto.split("\\R", -1)) {
+            lineas.add(l);
+        }
+        if (!lineas.isEmpty() && lineas.get(lineas.size() - 1).isEmpty()) {
+            lineas.remove(lineas.size() - 1); // lo que hay detras del ultimo salto
+        }
+        return lineas;
+    }
+
+    private static void responder(SocketChannel canal, List<String> out, List<String> err, int codigo) {
+        try (canal) {
+            StringBuilder sb = new StringBuilder();
+            for (String l : out) {
+                sb.append("OUT ").append(l).append('\n');
+            }
+            for (String l : err) {
+                sb.append("ERR ").append(l).append('\n');
+            }
+            sb.append("SALIDA ").append(codigo).append('\n');
+            ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                canal.write(buf);
+            }
+        } catch (IOException e) {
+            // el cliente se ha ido, no hay a quien contestar
+        }
+    }
+
+    // InputStream sobre el canal (el de Channels.newInputStream no deja escribir
+    // desde otro hilo mientras se esta leyendo)
+    static InputStream entrada(SocketChannel canal) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = read(b, 0, 1);
+                return n < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return canal.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    private static ThreadFactory hilosDemonio(String nombre, long tamPila) {
+        AtomicInteger cuenta = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(null, r, nombre + "-" + cuenta.incrementAndGet(), tamPila);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public static void main(String[] args) {
+        String socket = null;
+        Integer puerto = null; // solo TCP si se pide
+        long plazo = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = args[++i];
+            } else if (args[i].equals("--puerto") && i + 1 < args.length) {
+                long n = Main.numero(args[++i], 65535);
+                if (n < 0) {
+                    System.err.println("Valor no valido para --puerto: " + args[i]);
+                    System.err.println(USO);
+                    System.exit(SALIDA_FALLO);
+                }
+                puerto = (int) n;
+            } else if (args[i].equals("--plazo") && i + 1 < args.length) {
+                plazo = Main.numero(args[++i], Long.MAX_VALUE);
+                if (plazo < 0) {
+                    System.err.println("Valor no valido para --plazo: " + args[i]);
+                    System.err.println(USO);
+                    System.exit(SALIDA_FALLO);
+                }
+            } else {
+                System.err.println(USO);
+                System.exit(SALIDA_FALLO);
+            }
+        }
+        try {
+            SocketAddress direccion = direccion(socket, puerto);
+            ServidorCompilador s = new ServidorCompilador(direccion, plazo);
+            System.out.println("Servidor escuchando en " + (s.clave == null
+                    ? ((UnixDomainSocketAddress) direccion).getPath().toString()
+                    : "localhost:" + puerto + " (clave en " + s.rutaClave + ")"));
+            Thread calentar = new Thread(s::calentar, "calentar");
+            calentar.setDaemon(true);
+            calentar.start();
+            s.atender();
+        } catch (IOException e) {
+            System.err.println("Error en el servidor: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package pl.ts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Servidor LSP (Language Server Protocol) para los editores: JSON-RPC por la entrada y la
+// salida estandar, con las cabeceras Content-Length de siempre.
+//   java -cp target/classes pl.ts.ServidorLsp
+// Cada documento abierto se queda en memoria con su analisis (AnalisisIncremental): el editor
+// manda solo el trozo que cambia y se vuelve a analizar solo lo que toca. Lo que hace:
+//   - publishDiagnostics con los errores lexicos, sintacticos y semanticos
+//   - textDocument/definition: donde se declara el identificador (con las tablas de simbolos)
+// Los cambios se aplican segun llegan, pero si llegan muchos seguidos (se escribe rapido) los
+// diagnosticos solo se publican cuando ya no queda nada por leer en la entrada.
+// Los tokens solo llevan la linea, asi que los rangos son de linea entera (menos en definition,
+// que busca el nombre en la linea de la declaracion).
+public class ServidorLsp {
+
+    private static final long TAM_PILA = 16L << 20; // el lector de Json es recursivo
+    private static final int TAM_MAX_MENSAJE = 256 << 20; // mas de lo que manda ningun editor
+
+    // Codigos de error de JSON-RPC
+    private static final int ERROR_PARSEO = -32700;
+    private static final int METODO_NO_EXISTE = -32601;
+    private static final int ERROR_INTERNO = -32603;
+
+    // Un documento abierto en el editor
+    static class Documento {
+        final String uri;
+        final AnalisisIncremental analisis;
+        ResultadoCompilacion resultado; // lo ultimo que se ha publicado (null si aun nada)
+        boolean sucio = true;           // ha cambiado desde entonces
+
+        Documento(String uri, String texto) throws IOException {
+            this.uri = uri;
+            this.analisis = new AnalisisIncremental(texto);
+        }
+
+        // Un cambio de didChange: con "range" es ese trozo, sin el es el texto entero
+        void cambiar(Map<String, Object> cambio) throws IOException {
+            sucio = true;
+            String texto = (String) cambio.get("text");
+            if (cambio.get("range") instanceof Map) {
+                Map<String, Object> rango = mapa(cambio.get("range"));
+                Map<String, Object> ini = mapa(rango.get("start"));
+                Map<String, Object> fin = mapa(rango.get("end"));
+                analisis.editar(entero(ini.get("line")), entero(ini.get("character")),
+                        entero(fin.get("line")), entero(fin.get("character")), texto);
+            } else {
+                analisis.reemplazarTodo(texto);
+            }
+        }
+
+        int numLineas() {
+            return analisis.numLineas();
+        }
+
+        // la linea n (desde 0) sin el salto de linea
+        String linea(int n) {
+            return n < 0 || n >= analisis.numLineas() ? "" : analisis.linea(n);
+        }
+    }
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final PrintStream log; // mensajes para nosotros (el editor los suele guardar)
+    private final Map<String, Documento> documentos = new LinkedHashMap<>();
+    private boolean apagado; // despues de shutdown solo vale exit
+
+    public ServidorLsp(InputStream in, OutputStream out, PrintStream log) {
+        this.in = new BufferedInputStream(in, 1 << 16);
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.log = log;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // stdout es el canal del protocolo: nada mas puede escribir en el
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        int[] codigo = {1}; // si el hilo acaba de mala manera (OutOfMemoryError...) no es un 0
+        Thread hilo = new Thread(null, () -> {
+            try {
+                codigo[0] = new ServidorLsp(System.in, stdout, System.err).ejecutar();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("ServidorLsp: " + e);
+                codigo[0] = 1;
+            }
+        }, "lsp", TAM_PILA);
+        hilo.start();
+        hilo.join();
+        System.exit(codigo[0]);
+    }
+
+    // Atiende mensajes hasta el exit (o hasta que se cierra la entrada).
+    // Devuelve el codigo de salida: 0 si antes ha llegado shutdown y 1 si no.
+    // Un mensaje que falla (cabecera mal, JSON mal, un fichero que no se puede analizar) se
+    // contesta con un error y se sigue; solo se acaba si no se puede leer o escribir en el canal
+    // (entonces sale la IOException)
+    public int ejecutar() throws IOException {
+        while (true) {
+            String mensaje = leerMensaje();
+            if (mensaje == null) {
+                return apagado ? 0 : 1;
+            }
+            Map<String, Object> m;
+            try {
+                m = mapa(Json.leer(mensaje));
+            } catch (IllegalArgumentException e) {
+                responderError(null, ERROR_PARSEO, e.getMessage());
+                continue;
+            }
+            if ("exit".equals(m.get("method"))) {
+                return apagado ? 0 : 1;
+            }
+            try {
+                atender(m);
+            } catch (IOException e) {
+                // si es el canal lo que falla, responderError vuelve a dar la IOException y se acaba
+                log.println("ServidorLsp: fallo con " + m.get("method") + ": " + e);
+                if (m.containsKey("id")) {
+                    responderError(m.get("id"), ERROR_INTERNO, String.valueOf(e));
+                }
+            } catch (RuntimeException | StackOverflowError e) {
+                log.println("ServidorLsp: fallo con " + m.get("method") + ": " + e);
+                if (m.containsKey("id")) {
+                    responderError(m.get("id"), ERROR_INTERNO, String.valueOf(e));
+                }
+            }
+            // Si no hay mas mensajes esperando, es el momento de publicar lo que ha cambiado
+            if (in.available() == 0) {
+                compilarSucios();
+            }
+            out.flush();
+        }
+    }
+
+    private void atender(Map<String, Object> m) throws IOException {
+        String metodo = (String) m.get("method");
+        Object id = m.get("id");
+        Map<String, Object> params = m.get("params") instanceof Map ? mapa(m.get("params")) : Collections.emptyMap();
+        if (metodo == null) {
+            return; // una respuesta del editor (no le pedimos nada, asi que no hay que hacer nada)
+        }
+        switch (metodo) {
+            case "initialize":
+                responder(id, Json.objeto(
+                        "capabilities", Json.objeto(
+                                "textDocumentSync", 2, // solo el trozo que cambia
+                                "definitionProvider", true),
+                        "serverInfo", Json.objeto("name", "myjs")));
+                break;
+            case "initialized":
+            case "$/cancelRequest":
+            case "$/setTrace":
+                break;
+            case "shutdown":
+                apagado = true;
+                responder(id, null);
+                break;
+            case "textDocument/didOpen": {
+                Map<String, Object> doc = mapa(params.get("textDocument"));
+                String uri = (String) doc.get("uri");
+                documentos.put(uri, new Documento(uri, (String) doc.get("text")));
+                break;
+            }
+            case "textDocument/didChange": {
+                Documento d = documentos.get(uri(params));
+                List<?> cambios = (List<?>) params.get("contentChanges");
+                if (d != null && cambios != null) {
+                    // van en orden, cada uno sobre el texto que deja el anterior
+                    for (Object c : cambios) {
+                        d.cambiar(mapa(c));
+                    }
+                }
+                break;
+            }
+            case "textDocument/didClose": {
+                String uri = uri(params);
+                documentos.remove(uri);
+                publicarDiagnosticos(uri, Collections.emptyList()); // que se borren en el editor
+                break;
+            }
+            case "textDocument/definition": {
+                Documento d = documentos.get(uri(params));
+                Object res = null;
+                if (d != null) {
+                    compilar(d); // por si ha cambiado y aun no se ha compilado
+                    Map<String, Object> pos = mapa(params.get("position"));
+                    res = definicion(d, entero(pos.get("line")), entero(pos.get("character")));
+                }
+                responder(id, res);
+                break;
+            }
+            default:
+                if (id != null) {
+                    responderError(id, METODO_NO_EXISTE, "metodo no soportado: " + metodo);
+                }
+        }
+    }
+
+    // --- COMPILACION Y DIAGNOSTICOS ---
+
+    private void compilarSucios() throws IOException {
+        for (Documento d : documentos.values()) {
+            compilar(d);
+        }
+    }
+
+    private void compilar(Documento d) throws IOException {
+        if (!d.sucio) {
+            return;
+        }
+        d.sucio = false;
+        try {
+            d.resultado = d.analisis.resultado();
+        } catch (IOException | StackOverflowError e) {
+            log.println("ServidorLsp: no se puede compilar " + d.uri + ": " + e);
+            return;
+        }
+        publicarDiagnosticos(d.uri, diagnosticos(d));
+    }
+
+    private static List<Object> diagnosticos(Documento d) {
+        List<Object> lista = new ArrayList<>();
+        for (Diagnostico diag : d.resultado.diagnosticos) {
+            int n = diag.linea > 0 ? Math.min(diag.linea, d.numLineas()) - 1 : 0;
+            lista.add(Json.objeto(
+                    "range", rango(n, 0, n, d.linea(n).length()),
+                    "severity", 1, // error
+                    "code", diag.tipo,
+                    "source", "myjs",
+                    "message", diag.mensaje));
+        }
+        return lista;
+    }
+
+    private void publicarDiagnosticos(String uri, List<Object> diags) throws IOException {
+        notificar("textDocument/publishDiagnostics", Json.objeto("uri", uri, "diagnostics", diags));
+    }
+
+    // --- IR A LA DEFINICION ---
+
+    // Busca el identificador que hay en (linea, columna) como lo buscaria el parser:
+    // primero en la funcion que contiene esa linea y luego en la global
+    private static Object definicion(Documento d, int linea, int columna) {
+        if (d.resultado == null) {
+            return null;
+        }
+        String nombre = palabra(d.linea(linea), columna);
+        if (nombre == null) {
+            return null;
+        }
+        List<TablaSimbolos.Tabla> tablas = d.resultado.tablas;
+        if (tablas.isEmpty()) {
+            return null;
+        }
+        int lineaToken = linea + 1; // las del lexer empiezan en 1
+        TablaSimbolos.Simbolo s = null;
+        // la global es la ultima, las de antes son las de las funciones
+        for (int i = 0; i < tablas.size() - 1 && s == null; i++) {
+            TablaSimbolos.Tabla t = tablas.get(i);
+            if (t.lineaInicio <= lineaToken && lineaToken <= t.lineaFin) {
+                s = declarado(t, nombre);
+            }
+        }
+        if (s == null) {
+            s = declarado(tablas.get(tablas.size() - 1), nombre);
+        }
+        if (s == null) {
+            return null;
+        }
+        int n = s.linea - 1;
+        int col = columnaPalabra(d.linea(n), nombre);
+        return Json.objeto("uri", d.uri, "range", rango(n, col, n, col + nombre.length()));
+    }
+
+    private static TablaSimbolos.Simbolo declarado(TablaSimbolos.Tabla t, String nombre) {
+        TablaSimbolos.Simbolo s = t.buscar(nombre);
+        return s != null && s.linea > 0 ? s : null;
+    }
+
+    private static boolean letra(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    // el identificador que toca la columna (null si no hay)
+    private static String palabra(String linea, int columna) {
+        int ini = Math.min(Math.max(columna, 0), linea.length());
+        int fin = ini;
+        while (ini > 0 && letra(linea.charAt(ini - 1))) {
+            ini--;
+        }
+        while (fin < linea.length() && letra(linea.charAt(fin))) {
+            fin++;
+        }
+        if (ini == fin || !Character.isLetter(linea.charAt(ini))) {
+            return null;
+        }
+        return linea.substring(ini, fin);
+    }
+
+    // donde sale 'nombre' como palabra entera en la linea (0 si no sale)
+    private static int columnaPalabra(String linea, String nombre) {
+        int i = linea.indexOf(nombre);
+        while (i >= 0) {
+            int fin = i + nombre.length();
+            if ((i == 0 || !letra(linea.charAt(i - 1))) && (fin == linea.length() || !letra(linea.charAt(fin)))) {
+                return i;
+            }
+            i = linea.indexOf(nombre, i + 1);
+        }
+        return 0;
+    }
+
+    private static Map<String, Object> rango(int l1, int c1, int l2, int c2) {
+        return Json.objeto(
+                "start", Json.objeto("line", l1, "character", c1),
+                "end", Json.objeto("line", l2, "character", c2));
+    }
+
+    // --- MENSAJES ---
+
+    // Lee un mensaje (las cabeceras y luego Content-Length bytes). null si se acaba la entrada.
+    // Si el Content-Length no vale se contesta con un error y se busca el siguiente mensaje (lo
+    // que venga hasta la siguiente cabecera buena se salta)
+    private String leerMensaje() throws IOException {
+        int longitud = -1;
+        String malo = null; // el Content-Length que no vale
+        StringBuilder cabecera = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                return null;
+            }
+            if (c == '\r') {
+                continue;
+            }
+            if (c != '\n') {
+                cabecera.append((char) c);
+                continue;
+            }
+            if (cabecera.length() == 0) {
+                if (longitud >= 0) {
+                    break; // linea vacia: empieza el contenido
+                }
+                if (malo != null) {
+                    log.println("ServidorLsp: Content-Length no valido: " + malo);
+                    responderError(null, ERROR_PARSEO, "Content-Length no valido: " + malo);
+                    out.flush();
+                    malo = null;
+                }
+                continue;
+            }
+            String h = cabecera.toString();
+            cabecera.setLength(0);
+            int dosPuntos = h.indexOf(':');
+            if (dosPuntos > 0 && h.substring(0, dosPuntos).trim().equalsIgnoreCase("Content-Length")) {
+                String valor = h.substring(dosPuntos + 1).trim();
+                try {
+                    longitud = Integer.parseInt(valor);
+                } catch (NumberFormatException e) {
+                    longitud = -1;
+                }
+                if (longitud < 0 || longitud > TAM_MAX_MENSAJE) {
+                    longitud = -1;
+                    malo = valor;
+                } else {
+                    malo = null;
+                }
+            }
+        }
+        byte[] contenido = new byte[longitud];
+        int leidos = 0;
+        while (leidos < longitud) {
+            int n = in.read(contenido, leidos, longitud - leidos);
+            if (n == -1) {
+                return null;
+            }
+            leidos += n;
+        }
+        return new String(contenido, StandardCharsets.UTF_8);
+    }
+
+    private void enviar(Map<String, Object> m) throws IOException {
+        byte[] contenido = Json.escribir(m).getBytes(StandardCharsets.UTF_8);
+        out.write(("Content-Length: " + contenido.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(contenido);
+    }
+
+    private void responder(Object id, Object resultado) throws IOException {
+        Map<String, Object> m = Json.objeto("jsonrpc", "2.0", "id", id);
+        m.put("result", resultado); // puede ser null y tiene que salir igual
+        enviar(m);
+    }
+
+    private void responderError(Object id, int codigo, String mensaje) throws IOException {
+        enviar(Json.objeto("jsonrpc", "2.0", "id", id,
+                "error", Json.objeto("code", codigo, "message", mensaje)));
+    }
+
+    private void notificar(String metodo, Object params) throws IOException {
+        enviar(Json.objeto("jsonrpc", "2.0", "method", metodo, "params", params));
+    }
+
+    private static String uri(Map<String, Object> params) {
+        return (String) mapa(params.get("textDocument")).get("uri");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> mapa(Object o) {
+        if (!(o instanceof Map)) {
+            throw new IllegalArgumentException("se esperaba un objeto JSON");
+        }
+        return (Map<String, Object>) o;
+    }
+
+    private static int entero(Object o) {
+        return ((Number) o).intValue();
+    }
+}
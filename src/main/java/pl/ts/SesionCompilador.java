@@ -0,0 +1,228 @@
+package pl.ts;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Para usar el compilador como libreria (plugins, editores...):
+//   ResultadoCompilacion r = new SesionCompilador().compilar("let int x;");
+// compilar() no toca el disco, devuelve los tokens, las reglas, las tablas y los errores en
+// objetos. compilarFicheros() es lo de siempre (lo usa Main).
+// La sesion solo guarda las opciones, asi que se puede usar desde varios hilos a la vez
+// y para muchas compilaciones seguidas. Para cancelar una compilacion se interrumpe su
+// hilo: lo ve en unos pocos tokens y sale con una InterruptedIOException
+public class SesionCompilador {
+
+    private final OpcionesCompilacion opciones;
+
+    public SesionCompilador() {
+        this(new OpcionesCompilacion());
+    }
+
+    // En memoria solo cuentan las opciones del lexer (--paralelo, --segmentado);
+    // las de los ficheros de salida solo sirven para compilarFicheros()
+    public SesionCompilador(OpcionesCompilacion opciones) {
+        this.opciones = opciones;
+    }
+
+    public ResultadoCompilacion compilar(CharSequence fuente) throws IOException {
+        ResultadoCompilacion r = new ResultadoCompilacion();
+        ReglasEnMemoria reglas = new ReglasEnMemoria();
+        TablasEnMemoria tablas = new TablasEnMemoria(r);
+        ContextoCompilacion ctx = new ContextoCompilacion(SalidaTokens.NULA, reglas, tablas, r.diagnosticos);
+        r.constantes = ctx.getConstantes();
+
+        FuenteTokens lexer = null;
+        try {
+            lexer = crearLexer(ctx, Entrada.deTexto(fuente));
+            analizar(ctx, new Grabadora(new Interrumpible(lexer), r.tokens));
+        } finally {
+            cerrar(ctx, lexer);
+        }
+        r.reglas = reglas.aArray();
+        return r;
+    }
+
+    // Devuelve cuantos errores (lexicos, sintacticos o semanticos) se han encontrado
+    // Con --cache, si el fuente ya esta en la cache solo se copian sus ficheros
+    public int compilarFicheros(String archivoFuente, String archivoTokens, String archivoTS,
+                                String archivoParse, String archivoErrores) throws IOException {
+        if (opciones.carpetaCache == null) {
+            return compilarSinCache(archivoFuente, archivoTokens, archivoTS, archivoParse, archivoErrores);
+        }
+        CacheCompilacion cache = getCache();
+        String clave = cache.clave(archivoFuente, opciones);
+        List<CacheCompilacion.Salida> salidas = salidas(archivoTokens, archivoTS, archivoParse, archivoErrores);
+        int numErrores = cache.restaurar(clave, salidas);
+        if (numErrores < 0) {
+            numErrores = compilarSinCache(archivoFuente, archivoTokens, archivoTS, archivoParse, archivoErrores);
+            cache.guardar(clave, salidas, numErrores);
+        }
+        return numErrores;
+    }
+
+    // La cache de --cache (null si no hay)
+    public CacheCompilacion getCache() throws IOException {
+        return opciones.carpetaCache == null ? null
+                : CacheCompilacion.abrir(opciones.carpetaCache, opciones.tamMaxCache);
+    }
+
+    // Los ficheros que escribe compilarFicheros con estas opciones
+    private List<CacheCompilacion.Salida> salidas(String archivoTokens, String archivoTS,
+                                                  String archivoParse, String archivoErrores) {
+        List<CacheCompilacion.Salida> salidas = new ArrayList<>();
+        if (!opciones.soloComprobar) {
+            boolean bin = opciones.formatoBinario;
+            salidas.add(new CacheCompilacion.Salida("tokens", bin ? ContextoCompilacion.rutaBinaria(archivoTokens) : archivoTokens));
+            salidas.add(new CacheCompilacion.Salida("ts", bin ? ContextoCompilacion.rutaBinaria(archivoTS) : archivoTS));
+            salidas.add(new CacheCompilacion.Salida("parse", bin ? ContextoCompilacion.rutaBinaria(archivoParse) : archivoParse));
+        }
+        salidas.add(new CacheCompilacion.Salida("errores", archivoErrores));
+        return salidas;
+    }
+
+    private int compilarSinCache(String archivoFuente, String archivoTokens, String archivoTS,
+                                 String archivoParse, String archivoErrores) throws IOException {
+        // Contexto de esta compilacion (tabla de simbolos y ficheros de salida)
+        ContextoCompilacion ctx = new ContextoCompilacion(archivoTokens, archivoTS, archivoParse, archivoErrores, opciones);
+        FuenteTokens lexer = null;
+        try {
+            lexer = crearLexer(ctx, Entrada.abrir(archivoFuente, opciones.mapearFuente));
+            analizar(ctx, new Interrumpible(lexer));
+        } finally {
+            cerrar(ctx, lexer);
+        }
+        return ctx.getNumErrores();
+    }
+
+    private FuenteTokens crearLexer(ContextoCompilacion ctx, Entrada entrada) throws IOException {
+        if (opciones.lexicoParalelo) {
+            return new AnalizadorLexicoParalelo(ctx, entrada);
+        }
+        if (opciones.compilacionSegmentada) {
+            return new AnalizadorLexicoSegmentado(ctx, entrada);
+        }
+        return new AnalizadorLexico(ctx, entrada);
+    }
+
+    // El parser va pidiendo los tokens al lexer segun los necesita
+    private static void analizar(ContextoCompilacion ctx, FuenteTokens lexer) throws IOException {
+        new AnalizadorSintactico(ctx, lexer).analizar();
+
+        // Si el parser se ha parado antes del final, el lexer termina el fichero
+        // (los tokens y los errores lexicos tienen que salir completos)
+        lexer.analizar();
+    }
+
+    private static void cerrar(ContextoCompilacion ctx, FuenteTokens lexer) throws IOException {
+        if (lexer != null) {
+            lexer.cerrar();
+        }
+        ctx.cerrar();
+    }
+
+    // Cada tantos tokens mira si han interrumpido el hilo
+    private static class Interrumpible implements FuenteTokens {
+
+        private static final int CADA = 1024;
+
+        private final FuenteTokens fuente;
+        private int cuenta = 0;
+
+        Interrumpible(FuenteTokens fuente) {
+            this.fuente = fuente;
+        }
+
+        @Override
+        public void siguienteToken(Token destino) throws IOException {
+            if (++cuenta == CADA) {
+                cuenta = 0;
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("compilacion cancelada");
+                }
+            }
+            fuente.siguienteToken(destino);
+        }
+
+        @Override
+        public void cerrar() {
+            fuente.cerrar();
+        }
+    }
+
+    // Apunta los tokens segun pasan del lexer al parser (hasta el primer EOF)
+    private static class Grabadora implements FuenteTokens {
+
+        private final FuenteTokens fuente;
+        private final BufferTokens tokens;
+        private boolean fin;
+
+        Grabadora(FuenteTokens fuente, BufferTokens tokens) {
+            this.fuente = fuente;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void siguienteToken(Token destino) throws IOException {
+            fuente.siguienteToken(destino);
+            if (!fin) {
+                tokens.anadir(destino.codigo, destino.atributo, destino.linea, destino.valorReal);
+                fin = destino.codigo == CodigoToken.COD_EOF;
+            }
+        }
+
+        @Override
+        public void cerrar() {
+            fuente.cerrar();
+        }
+    }
+
+    private static class ReglasEnMemoria implements SalidaReglas {
+
+        private int[] reglas = new int[256];
+        private int tam = 0;
+
+        @Override
+        public void cabecera() {
+        }
+
+        @Override
+        public void regla(int n) {
+            if (tam == reglas.length) {
+                reglas = Arrays.copyOf(reglas, tam * 2);
+            }
+            reglas[tam++] = n;
+        }
+
+        int[] aArray() {
+            return Arrays.copyOf(reglas, tam);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class TablasEnMemoria implements SalidaTablas {
+
+        private final ResultadoCompilacion r;
+
+        TablasEnMemoria(ResultadoCompilacion r) {
+            this.r = r;
+        }
+
+        @Override
+        public void tabla(TablaSimbolos.Tabla t) {
+            r.tablas.add(t);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
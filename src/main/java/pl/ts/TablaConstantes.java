@@ -0,0 +1,110 @@
+package pl.ts;
+
+import java.util.Arrays;
+
+// Constantes (enteros, reales y cadenas) que aparecen en el fuente, sin repetir
+// Cada una tiene una posicion fija y los tokens llevan esa posicion como atributo
+// Los numeros se guardan ya convertidos; el texto es el del fuente (para tokens.txt),
+// en las cadenas sin las comillas
+public class TablaConstantes {
+
+    private int[] codigos = new int[64];        // COD_CE, COD_CR o COD_CAD
+    private String[] textos = new String[64];
+    private double[] valores = new double[64];  // un int cabe entero en un double
+    private int tam = 0;
+
+    // indice por hash del texto (31 * h + c, como String): posicion + 1 en cada hueco (0 = libre)
+    private int[] huecos = new int[128];
+    private int[] hashes = new int[128];
+
+    // La posicion de la constante que hay en buf[0..len), o -1 si todavia no esta
+    public int buscar(int codigo, char[] buf, int len, int hash) {
+        int mascara = huecos.length - 1;
+        for (int i = mezclar(hash) & mascara; huecos[i] != 0; i = (i + 1) & mascara) {
+            int k = huecos[i] - 1;
+            if (hashes[i] == hash && codigos[k] == codigo && igual(textos[k], buf, len)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // Mete la constante (si ya estaba devuelve la que habia)
+    public int anadir(int codigo, String texto, double valor) {
+        int hash = texto.hashCode();
+        int mascara = huecos.length - 1;
+        int i = mezclar(hash) & mascara;
+        for (; huecos[i] != 0; i = (i + 1) & mascara) {
+            int k = huecos[i] - 1;
+            if (hashes[i] == hash && codigos[k] == codigo && textos[k].equals(texto)) {
+                return k;
+            }
+        }
+
+        if (tam == codigos.length) {
+            codigos = Arrays.copyOf(codigos, tam * 2);
+            textos = Arrays.copyOf(textos, tam * 2);
+            valores = Arrays.copyOf(valores, tam * 2);
+        }
+        codigos[tam] = codigo;
+        textos[tam] = texto;
+        valores[tam] = valor;
+        huecos[i] = ++tam;
+        hashes[i] = hash;
+        if (2 * tam > huecos.length) {
+            agrandar();
+        }
+        return tam - 1;
+    }
+
+    public int tam() {
+        return tam;
+    }
+
+    public int codigo(int k) {
+        return codigos[k];
+    }
+
+    public String texto(int k) {
+        return textos[k];
+    }
+
+    public double valor(int k) {
+        return valores[k];
+    }
+
+    // se dobla cuando se llena a la mitad
+    private void agrandar() {
+        int[] viejos = huecos;
+        int[] viejosHash = hashes;
+        huecos = new int[viejos.length * 2];
+        hashes = new int[viejos.length * 2];
+        int mascara = huecos.length - 1;
+        for (int j = 0; j < viejos.length; j++) {
+            if (viejos[j] != 0) {
+                int i = mezclar(viejosHash[j]) & mascara;
+                while (huecos[i] != 0) {
+                    i = (i + 1) & mascara;
+                }
+                huecos[i] = viejos[j];
+                hashes[i] = viejosHash[j];
+            }
+        }
+    }
+
+    private static int mezclar(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean igual(String texto, char[] buf, int len) {
+        if (texto.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (texto.charAt(i) != buf[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
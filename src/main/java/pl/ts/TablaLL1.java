@@ -0,0 +1,283 @@
+package pl.ts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Tabla LL(1) sacada de gramatica_vast.txt (va dentro del jar como recurso)
+// Se leen las producciones, se calculan FIRST y FOLLOW y con eso la tabla de prediccion:
+// para cada no terminal, una fila indexada por el codigo del token (CodigoToken)
+// con el numero de la regla a aplicar, o 0 si no hay ninguna (error).
+// Las reglas se numeran desde 1 en el orden del fichero, igual que en parse.txt.
+// Si dos reglas se pisan en una casilla se queda la primera (pasa con E -> D / E -> S con 'let').
+public class TablaLL1 {
+
+    public static final String RECURSO = "/gramatica_vast.txt";
+
+    private static final String LAMBDA = "lambda";
+
+    // nombres de los terminales de la gramatica -> codigos de token
+    private static final Map<String, Integer> TERMINALES = new HashMap<>();
+
+    static {
+        TERMINALES.put("let", CodigoToken.PR_LET);
+        TERMINALES.put("function", CodigoToken.PR_FUNCTION);
+        TERMINALES.put("int", CodigoToken.PR_INT);
+        TERMINALES.put("float", CodigoToken.PR_FLOAT);
+        TERMINALES.put("boolean", CodigoToken.PR_BOOLEAN);
+        TERMINALES.put("string", CodigoToken.PR_STRING);
+        TERMINALES.put("void", CodigoToken.PR_VOID);
+        TERMINALES.put("if", CodigoToken.PR_IF);
+        TERMINALES.put("for", CodigoToken.PR_FOR);
+        TERMINALES.put("return", CodigoToken.PR_RETURN);
+        TERMINALES.put("write", CodigoToken.PR_WRITE);
+        TERMINALES.put("read", CodigoToken.PR_READ);
+        TERMINALES.put("id", CodigoToken.COD_ID);
+        TERMINALES.put("entero", CodigoToken.COD_CE);
+        TERMINALES.put("real", CodigoToken.COD_CR);
+        TERMINALES.put("cadena", CodigoToken.COD_CAD);
+        TERMINALES.put("+", CodigoToken.COD_SUM);
+        TERMINALES.put("==", CodigoToken.COD_REL);
+        TERMINALES.put("!", CodigoToken.COD_LOG);
+        TERMINALES.put("=", CodigoToken.COD_ASIG);
+        TERMINALES.put("%=", CodigoToken.COD_ASIGRES);
+        TERMINALES.put(";", CodigoToken.COD_PC);
+        TERMINALES.put("(", CodigoToken.COD_PARIZQ);
+        TERMINALES.put(")", CodigoToken.COD_PARDER);
+        TERMINALES.put("{", CodigoToken.COD_LLIZQ);
+        TERMINALES.put("}", CodigoToken.COD_LLDER);
+        TERMINALES.put(",", CodigoToken.COD_COMA);
+        TERMINALES.put("eof", CodigoToken.COD_EOF);
+    }
+
+    // Una regla: A -> X Y Z (los simbolos con negativos para no terminales: -(indice + 1))
+    private static class Produccion {
+        int izquierda;
+        int[] derecha;
+    }
+
+    private static TablaLL1 vast; // la de gramatica_vast.txt, se lee una vez
+
+    private List<String> noTerminales = new ArrayList<>();
+    private Map<String, Integer> indiceNT = new HashMap<>();
+    private List<Produccion> producciones = new ArrayList<>(); // la regla n esta en n-1
+    private int[][] tabla;
+
+    // La tabla de la gramatica del lenguaje (compartida, solo se lee)
+    public static synchronized TablaLL1 vast() {
+        if (vast == null) {
+            InputStream in = TablaLL1.class.getResourceAsStream(RECURSO);
+            if (in == null) {
+                throw new IllegalStateException("no se encuentra la gramatica " + RECURSO);
+            }
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                vast = new TablaLL1(br);
+            } catch (IOException e) {
+                throw new UncheckedIOException("no se pudo leer la gramatica " + RECURSO, e);
+            }
+        }
+        return vast;
+    }
+
+    public TablaLL1(BufferedReader br) throws IOException {
+        leer(br);
+        construir();
+    }
+
+    // Fila de prediccion de un no terminal: fila[codigoToken] = regla (0 si error)
+    public int[] fila(String noTerminal) {
+        Integer i = indiceNT.get(noTerminal);
+        if (i == null) {
+            throw new IllegalArgumentException("no terminal desconocido: " + noTerminal);
+        }
+        return tabla[i];
+    }
+
+    // La misma fila por el indice del no terminal (el de simbolo(): -(s + 1))
+    public int[] fila(int noTerminal) {
+        return tabla[noTerminal];
+    }
+
+    public int numReglas() {
+        return producciones.size();
+    }
+
+    public int numNoTerminales() {
+        return noTerminales.size();
+    }
+
+    // Un simbolo de la gramatica como va en las reglas: el codigo del token si es terminal
+    // y -(indice + 1) si es no terminal
+    public int simbolo(String nombre) {
+        Integer i = indiceNT.get(nombre);
+        if (i != null) {
+            return -(i + 1);
+        }
+        Integer codigo = TERMINALES.get(nombre);
+        if (codigo == null) {
+            throw new IllegalArgumentException("simbolo desconocido: " + nombre);
+        }
+        return codigo;
+    }
+
+    // Indice del no terminal de la izquierda de la regla n (desde 1)
+    public int izquierda(int regla) {
+        return producciones.get(regla - 1).izquierda;
+    }
+
+    // Parte derecha de la regla n (sin lambda: vacia si lo es)
+    public int[] derecha(int regla) {
+        return producciones.get(regla - 1).derecha.clone();
+    }
+
+    // Formato de gramatica_vast.txt: "NoTerminales = { ... }" y luego
+    // "Producciones = {" con una regla "A -> x y z" por linea hasta "}"
+    private void leer(BufferedReader br) throws IOException {
+        List<String[]> reglas = new ArrayList<>();
+        boolean enProducciones = false;
+        String linea;
+        while ((linea = br.readLine()) != null) {
+            linea = linea.trim();
+            if (linea.isEmpty()) {
+                continue;
+            }
+            if (enProducciones) {
+                if (linea.equals("}")) {
+                    enProducciones = false;
+                } else {
+                    reglas.add(linea.split("\\s+"));
+                }
+            } else if (linea.startsWith("NoTerminales")) {
+                for (String nt : entreLlaves(linea)) {
+                    indiceNT.put(nt, noTerminales.size());
+                    noTerminales.add(nt);
+                }
+            } else if (linea.startsWith("Producciones")) {
+                enProducciones = true;
+            }
+        }
+
+        for (String[] r : reglas) {
+            if (r.length < 3 || !r[1].equals("->")) {
+                throw new IllegalStateException("regla mal escrita: " + String.join(" ", r));
+            }
+            Produccion p = new Produccion();
+            p.izquierda = indiceNoTerminal(r[0]);
+            List<Integer> derecha = new ArrayList<>();
+            for (int i = 2; i < r.length; i++) {
+                if (r[i].equals(LAMBDA)) {
+                    continue;
+                }
+                if (indiceNT.containsKey(r[i])) {
+                    derecha.add(-(indiceNT.get(r[i]) + 1));
+                } else {
+                    Integer codigo = TERMINALES.get(r[i]);
+                    if (codigo == null) {
+                        throw new IllegalStateException("simbolo desconocido en la gramatica: " + r[i]);
+                    }
+                    derecha.add(codigo);
+                }
+            }
+            p.derecha = derecha.stream().mapToInt(Integer::intValue).toArray();
+            producciones.add(p);
+        }
+    }
+
+    private static String[] entreLlaves(String linea) {
+        int a = linea.indexOf('{');
+        int b = linea.lastIndexOf('}');
+        return linea.substring(a + 1, b).trim().split("\\s+");
+    }
+
+    private int indiceNoTerminal(String nombre) {
+        Integer i = indiceNT.get(nombre);
+        if (i == null) {
+            throw new IllegalStateException("no terminal desconocido en la gramatica: " + nombre);
+        }
+        return i;
+    }
+
+    // FIRST y FOLLOW como BitSet de codigos de token, y con ellos la tabla
+    private void construir() {
+        int n = noTerminales.size();
+        BitSet[] first = new BitSet[n];
+        BitSet[] follow = new BitSet[n];
+        boolean[] anulable = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            first[i] = new BitSet();
+            follow[i] = new BitSet();
+        }
+
+        // FIRST y anulables: se repite hasta que no cambie nada
+        boolean cambio = true;
+        while (cambio) {
+            cambio = false;
+            for (Produccion p : producciones) {
+                BitSet f = first[p.izquierda];
+                int antes = f.cardinality();
+                boolean todoAnulable = primeros(p.derecha, 0, first, anulable, f);
+                if (f.cardinality() != antes) {
+                    cambio = true;
+                }
+                if (todoAnulable && !anulable[p.izquierda]) {
+                    anulable[p.izquierda] = true;
+                    cambio = true;
+                }
+            }
+        }
+
+        // FOLLOW (el axioma ya lleva su eof en la regla P -> G eof)
+        cambio = true;
+        while (cambio) {
+            cambio = false;
+            for (Produccion p : producciones) {
+                for (int i = 0; i < p.derecha.length; i++) {
+                    int s = p.derecha[i];
+                    if (s >= 0) {
+                        continue;
+                    }
+                    BitSet f = follow[-s - 1];
+                    int antes = f.cardinality();
+                    if (primeros(p.derecha, i + 1, first, anulable, f)) {
+                        f.or(follow[p.izquierda]);
+                    }
+                    if (f.cardinality() != antes) {
+                        cambio = true;
+                    }
+                }
+            }
+        }
+
+        // Tabla: regla n en las casillas de FIRST(derecha) y, si es anulable, de FOLLOW(A)
+        tabla = new int[n][CodigoToken.NUM_CODIGOS];
+        for (int r = 0; r < producciones.size(); r++) {
+            Produccion p = producciones.get(r);
+            BitSet pred = new BitSet();
+            if (primeros(p.derecha, 0, first, anulable, pred)) {
+                pred.or(follow[p.izquierda]);
+            }
+            int[] f = tabla[p.izquierda];
+            for (int t = pred.nextSetBit(0); t >= 0; t = pred.nextSetBit(t + 1)) {
+                if (f[t] == 0) {
+                    f[t] = r + 1;
+                }
+            }
+        }
+    }
+
+    // Mete en 'destino' FIRST de simbolos[desde..] y dice si todo eso puede ser lambda
+    private static boolean primeros(int[] simbolos, int desde, BitSet[] first, boolean[] anulable, BitSet destino) {
+        for (int i = desde; i < simbolos.length; i++) {
+            int s = simbolos[i];
+            if (s >= 0) {
+                destino.set(s);
+                return false;
+            }
+            destino.or(first[-s - 1]);
+            if (!anulable[-s - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.*;
 
 // Tabla de Simbolos simplificada
 // Se encarga de guardar variables y funciones, y de manejar los ambitos
+// Cada compilacion tiene la suya (ver ContextoCompilacion)
 public class TablaSimbolos {
     
     // Clase interna para los simbolos (variables, funciones...)
@@ -19,6 +20,7 @@ public class TablaSimbolos {
         public String tipoRetorno;
         public String etiqFuncion;
         public int esParametro; // 1 si es parametro, 0 si no
+        public int linea;       // donde se declara (0 si no se ha declarado), no sale en ts.txt
         
         // Listas para los tipos de los parametros
         public String[] tipoParam = new String[10];
@@ -34,33 +36,96 @@ public class TablaSimbolos {
             this.etiqFuncion = null;
             this.esParametro = 0;
         }
+
+        // Copia de los atributos (el lexema y el id son los mismos), para poder deshacer cambios
+        public Simbolo copia() {
+            Simbolo c = new Simbolo(lexema, id);
+            c.copiarAtributos(this);
+            return c;
+        }
+
+        public void copiarAtributos(Simbolo de) {
+            tipo = de.tipo;
+            desp = de.desp;
+            numParams = de.numParams;
+            tipoRetorno = de.tipoRetorno;
+            etiqFuncion = de.etiqFuncion;
+            esParametro = de.esParametro;
+            linea = de.linea;
+            tipoParam = de.tipoParam.clone();
+            modoParam = de.modoParam.clone();
+        }
+
+        // true si los atributos son iguales (sin contar la linea, que no cambia el analisis)
+        public boolean mismosAtributos(Simbolo o) {
+            return Objects.equals(tipo, o.tipo) && desp == o.desp && numParams == o.numParams
+                    && Objects.equals(tipoRetorno, o.tipoRetorno) && Objects.equals(etiqFuncion, o.etiqFuncion)
+                    && esParametro == o.esParametro
+                    && Arrays.equals(tipoParam, o.tipoParam) && Arrays.equals(modoParam, o.modoParam);
+        }
     }
 
     // Clase interna para cada tabla (ambito)
     public static class Tabla {
         public int id;
         public String nombre;
-        public List<Simbolo> simbolos;
+        public List<Simbolo> simbolos;        // en orden de insercion (para imprimir)
+        public Map<String, Simbolo> indice;   // lexema -> simbolo (para buscar)
+        public int lineaInicio, lineaFin;     // lineas que ocupa una funcion (0 en la global)
 
         public Tabla(int id, String nombre) {
             this.id = id;
             this.nombre = nombre;
             this.simbolos = new ArrayList<>();
+            this.indice = new HashMap<>();
+        }
+
+        // Busca el lexema solo en esta tabla
+        public Simbolo buscar(String lexema) {
+            return indice.get(lexema);
         }
     }
 
-    // --- VARIABLES ESTATICAS (SINGLETON) ---
-    private static PrintWriter escritor;
-    private static List<Tabla> pilaTablas; 
-    private static int contadorTablas;
-    private static int contadorIds; 
+    // --- ESTADO DE ESTA TABLA ---
+    private SalidaTablas salida; // donde se escriben las tablas al cerrarlas (null: en ningun sitio)
+    private List<Tabla> pilaTablas; 
+    private int contadorTablas;
+    private int contadorIds;     // ids de la tabla global (1, 2, 3...)
+    private int contadorLocales; // ids de las tablas de funcion (-1, -2, -3...)
+    // todos los simbolos creados, la posicion es su id (la 0 no se usa)
+    // aqui siguen aunque su ambito ya se haya cerrado
+    // Los locales van aparte para que los ids de la global (los que salen en
+    // tokens.txt) no dependan de por donde vaya el parser cuando el lexer lee
+    private List<Simbolo> registro;
+    private List<Simbolo> registroLocal;
 
-    // Inicializar todo (se llama desde el Main)
-    public static void inicializar(String ficheroSalida) throws IOException {
-        escritor = new PrintWriter(new FileWriter(ficheroSalida, false));
+    // Indice de la tabla global por hash del lexema (el de String.hashCode), para que el
+    // lexer busque un id con los caracteres que acaba de leer sin crear el String.
+    // Direccionamiento abierto: en cada hueco el id del simbolo (0 si esta libre) y su hash
+    private int[] huecosId = new int[1024];
+    private int[] huecosHash = new int[1024];
+    private int numHuecos = 0;
+
+    // Si no es null, los simbolos globales que pasan por gestionarId con su copia de antes
+    // (el parser solo cambia un simbolo global despues de pedirlo asi). Lo usa el analisis incremental
+    private Map<Simbolo, Simbolo> cambios;
+
+    // Inicializar todo (abre el fichero y crea la tabla global)
+    public TablaSimbolos(String ficheroSalida) throws IOException {
+        this(new SalidaTablas.Texto(new FileWriter(ficheroSalida, false)));
+    }
+
+    // Con la salida ya abierta (si es null las tablas no se escriben en ningun sitio)
+    public TablaSimbolos(SalidaTablas salida) {
+        this.salida = salida;
         pilaTablas = new ArrayList<>();
         contadorTablas = 1;
         contadorIds = 1;
+        contadorLocales = 1;
+        registro = new ArrayList<>();
+        registro.add(null);
+        registroLocal = new ArrayList<>();
+        registroLocal.add(null);
         
         // Creamos la tabla principal (Global)
         entrarBloque("TABLA PRINCIPAL");
@@ -71,35 +136,41 @@ public class TablaSimbolos {
     }
 
     // Al terminar, cerramos ficheros
-    public static void finalizar() {
-        if (escritor != null) {
-            // Cerramos las tablas que sigan abiertas (generalmente la global)
-            while (!pilaTablas.isEmpty()) {
-                salirBloque();
-            }
-            escritor.close();
+    public void finalizar() throws IOException {
+        // Cerramos las tablas que sigan abiertas (generalmente la global)
+        while (!pilaTablas.isEmpty()) {
+            salirBloque();
+        }
+        if (salida != null) {
+            salida.close();
         }
     }
 
     // CREAR NUEVO AMBITO
-    public static void entrarBloque(String nombre) {
+    public void entrarBloque(String nombre) {
         Tabla nueva = new Tabla(contadorTablas++, nombre);
         pilaTablas.add(nueva);
     }
 
     // CERRAR AMBITO ACTUAL
-    public static void salirBloque() {
+    public void salirBloque() throws IOException {
         if (pilaTablas.isEmpty()) return;
         
-        // Imprimimos la tabla antes de cerrarla
+        // Imprimimos la tabla antes de cerrarla (el formato lo pone la SalidaTablas)
         Tabla actual = pilaTablas.get(pilaTablas.size() - 1);
-        imprimirTabla(actual);
+        if (salida != null) {
+            salida.tabla(actual);
+        }
         
         pilaTablas.remove(pilaTablas.size() - 1);
     }
 
+    public Tabla getTablaGlobal() {
+        return pilaTablas.get(0);
+    }
+
     // Obtener la tabla actual (para ver parametros, etc)
-    public static Tabla getTablaActual() {
+    public Tabla getTablaActual() {
         if (pilaTablas.isEmpty()) return null;
         return pilaTablas.get(pilaTablas.size() - 1);
     }
@@ -107,94 +178,171 @@ public class TablaSimbolos {
     // --- OPERACIONES DE BUSQUEDA E INSERCION ---
 
     // Buscar en TODOS los ambitos (Global)
-    public static Simbolo buscar(String lexema) {
+    public Simbolo buscar(String lexema) {
         // Buscamos desde la ultima tabla (local) hacia la primera (global)
+        // y paramos en el primer ambito que lo tenga
         for (int i = pilaTablas.size() - 1; i >= 0; i--) {
-            Tabla t = pilaTablas.get(i);
-            for (Simbolo s : t.simbolos) {
-                if (s.lexema.equals(lexema)) {
-                    return s;
-                }
+            Simbolo s = pilaTablas.get(i).buscar(lexema);
+            if (s != null) {
+                return s;
             }
         }
         return null;
     }
 
     // Buscar SOLO en el ambito actual (para no declarar repes)
-    public static Simbolo buscarLocal(String lexema) {
+    public Simbolo buscarLocal(String lexema) {
         if (pilaTablas.isEmpty()) return null;
-        Tabla actual = pilaTablas.get(pilaTablas.size() - 1);
-        for (Simbolo s : actual.simbolos) {
-            if (s.lexema.equals(lexema)) {
-                return s;
-            }
-        }
-        return null;
+        return pilaTablas.get(pilaTablas.size() - 1).buscar(lexema);
     }
 
     // Obtener un simbolo por su ID (usado por el Parser)
-    public static Simbolo getSimbolo(int id) {
-        for (Tabla t : pilaTablas) {
-            for (Simbolo s : t.simbolos) {
-                if (s.id == id) {
-                    return s;
-                }
-            }
+    // Los ids son consecutivos, asi que es acceder a la posicion del registro
+    public Simbolo getSimbolo(int id) {
+        if (id > 0 && id < registro.size()) {
+            return registro.get(id);
+        }
+        if (id < 0 && -id < registroLocal.size()) {
+            return registroLocal.get(-id);
         }
         return null; // No deberia pasar
     }
 
     // Insertar un nuevo simbolo en la tabla actual
-    public static Simbolo insertar(String lexema) {
+    public Simbolo insertar(String lexema) {
         if (pilaTablas.isEmpty()) return null;
-        Tabla actual = pilaTablas.get(pilaTablas.size() - 1);
-        
-        Simbolo nuevo = new Simbolo(lexema, contadorIds++);
-        actual.simbolos.add(nuevo);
+        return insertarEn(pilaTablas.get(pilaTablas.size() - 1), lexema);
+    }
+
+    private Simbolo insertarEn(Tabla tabla, String lexema) {
+        Simbolo nuevo;
+        if (tabla == pilaTablas.get(0)) {
+            nuevo = new Simbolo(lexema, contadorIds++);
+            registro.add(nuevo); // queda en la posicion nuevo.id
+        } else {
+            nuevo = new Simbolo(lexema, -contadorLocales++);
+            registroLocal.add(nuevo); // queda en la posicion -nuevo.id
+        }
+        tabla.simbolos.add(nuevo);
+        // si ya habia uno con el mismo lexema se queda el primero (como al recorrer la lista)
+        if (tabla.indice.putIfAbsent(lexema, nuevo) == null && nuevo.id > 0) {
+            indexarGlobal(nuevo, lexema.hashCode());
+        }
         return nuevo;
     }
 
-    // Metodo especial para el Lexer: "Dame el ID de este lexema, si no existe crealo"
-    public static int gestionarId(String lexema) {
+    // Para el Parser: "Dame el ID de este lexema en el ambito actual, si no existe crealo"
+    public int gestionarId(String lexema) {
         Simbolo s = buscarLocal(lexema);
         if (s == null) {
             s = insertar(lexema);
         }
+        if (cambios != null && pilaTablas.size() == 1) {
+            cambios.putIfAbsent(s, s.copia());
+        }
         return s.id;
     }
 
-    // --- IMPRESION (Formato especificado) ---
-    private static void imprimirTabla(Tabla t) {
-        escritor.println(t.nombre + " # " + t.id + " :");
-        
-        for (Simbolo s : t.simbolos) {
-            escritor.println("* LEXEMA : '" + s.lexema + "'");
-            escritor.println("  ATRIBUTOS :");
-            escritor.println("  + tipo : '" + s.tipo + "'");
-            escritor.println("  + despl : " + s.desp);
-            
-            if (s.numParams > 0) {
-                escritor.println("  + numParam : " + s.numParams);
-                for (int i = 0; i < s.numParams; i++) {
-                    escritor.println("  + TipoParam" + (i + 1) + " : '" + 
-                        (s.tipoParam[i] != null ? s.tipoParam[i] : "-") + "'");
-                    if (s.modoParam[i] != null) {
-                        escritor.println("  + ModoParam" + (i + 1) + " : " + s.modoParam[i]);
-                    }
-                }
+    // Metodo especial para el Lexer: lo mismo pero siempre en la tabla global
+    // (el lexer va por delante del parser y no sabe en que ambito esta)
+    public int gestionarIdGlobal(String lexema) {
+        Tabla global = pilaTablas.get(0);
+        Simbolo s = global.buscar(lexema);
+        if (s == null) {
+            s = insertarEn(global, lexema);
+        }
+        return s.id;
+    }
+
+    // Lo mismo con el lexema en buf[0..len) y su hash ya calculado (31 * h + c, como String)
+    // Solo se crea el String la primera vez que aparece
+    public int gestionarIdGlobal(char[] buf, int len, int hash) {
+        int mascara = huecosId.length - 1;
+        for (int i = mezclar(hash) & mascara; huecosId[i] != 0; i = (i + 1) & mascara) {
+            if (huecosHash[i] == hash && igual(registro.get(huecosId[i]).lexema, buf, len)) {
+                return huecosId[i];
             }
-            if (s.tipoRetorno != null) {
-                escritor.println("  + TipoRetorno : '" + s.tipoRetorno + "'");
+        }
+        return insertarEn(pilaTablas.get(0), new String(buf, 0, len)).id;
+    }
+
+    private void indexarGlobal(Simbolo s, int hash) {
+        if (2 * (numHuecos + 1) > huecosId.length) {
+            // se dobla cuando se llena a la mitad
+            int[] ids = huecosId;
+            int[] hashes = huecosHash;
+            huecosId = new int[ids.length * 2];
+            huecosHash = new int[ids.length * 2];
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    colocar(ids[i], hashes[i]);
+                }
             }
-            if (s.etiqFuncion != null) {
-                escritor.println("  + EtiqFuncion : '" + s.etiqFuncion + "'");
+        }
+        colocar(s.id, hash);
+        numHuecos++;
+    }
+
+    private void colocar(int id, int hash) {
+        int mascara = huecosId.length - 1;
+        int i = mezclar(hash) & mascara;
+        while (huecosId[i] != 0) {
+            i = (i + 1) & mascara;
+        }
+        huecosId[i] = id;
+        huecosHash[i] = hash;
+    }
+
+    // para que los bits altos del hash tambien cuenten al coger el hueco
+    private static int mezclar(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean igual(String lexema, char[] buf, int len) {
+        if (lexema.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (lexema.charAt(i) != buf[i]) {
+                return false;
             }
-            if (s.esParametro != 0) {
-                escritor.println("  + param : " + s.esParametro);
+        }
+        return true;
+    }
+
+    // --- PARA EL ANALISIS INCREMENTAL ---
+
+    // Para apuntar los cambios a los simbolos globales (null para dejar de apuntar)
+    public void apuntarCambios(Map<Simbolo, Simbolo> cambios) {
+        this.cambios = cambios;
+    }
+
+    // Los ids de los locales solo se usan mientras se analiza su funcion, asi que al volver
+    // a analizar un trozo se puede empezar de cero (si no el registro crece en cada cambio)
+    public void olvidarLocales() {
+        registroLocal.clear();
+        registroLocal.add(null);
+        contadorLocales = 1;
+    }
+
+    // Deja en la tabla global estos simbolos y en este orden: sus ids pasan a ser 1, 2, 3...
+    // (los de los tokens los tiene que cambiar quien llama)
+    public void reordenarGlobales(List<Simbolo> orden) {
+        Tabla global = pilaTablas.get(0);
+        global.simbolos.clear();
+        global.indice.clear();
+        registro.clear();
+        registro.add(null);
+        Arrays.fill(huecosId, 0);
+        numHuecos = 0;
+        contadorIds = 1;
+        for (Simbolo s : orden) {
+            s.id = contadorIds++;
+            registro.add(s);
+            global.simbolos.add(s);
+            if (global.indice.putIfAbsent(s.lexema, s) == null) {
+                indexarGlobal(s, s.lexema.hashCode());
             }
-            escritor.println("--------- ----------");
         }
-        escritor.println();
-        escritor.flush();
     }
 }
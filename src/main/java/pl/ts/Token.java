@@ -1,12 +1,22 @@
 package pl.ts;
 
 // Clase para guardar la informacion de cada token
+// Solo lleva enteros, y el parser reutiliza los mismos objetos para no crear uno por token
 public class Token {
-    public String codigo;   // Ej: cod_id, PR_let...
-    public String atributo; // El valor o el puntero a la tabla
-    public int linea;      // En que linea aparecio
+    public int codigo;   // Ej: CodigoToken.COD_ID, CodigoToken.PR_LET...
+    public int atributo; // cod_id: el id en la tabla de simbolos; constantes: su posicion
+                         // en la TablaConstantes (en un BufferTokens, en su lista); si no, -1
+    public int linea;    // En que linea aparecio
 
-    public Token(String codigo, String atributo, int linea) {
+    // Valor ya convertido de las constantes (asi nadie tiene que volver a leer el texto)
+    public int valorEntero;  // cod_ce
+    public double valorReal; // cod_cr
+
+    public Token() {
+        this.atributo = -1;
+    }
+
+    public Token(int codigo, int atributo, int linea) {
         this.codigo = codigo;
         this.atributo = atributo;
         this.linea = linea;
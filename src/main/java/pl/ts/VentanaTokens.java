@@ -0,0 +1,76 @@
+package pl.ts;
+
+import java.io.IOException;
+
+// Los proximos tokens que va a usar el parser (el actual y unos pocos mas)
+// Solo se guardan TAM tokens a la vez, por largo que sea el fichero, y siempre
+// son los mismos objetos: el que se quiera quedar con un token tiene que copiarlo
+// (menos despues de leerHastaEof, que guarda todo lo que queda)
+public class VentanaTokens {
+
+    private static final int TAM = 4;
+
+    private FuenteTokens fuente;
+    private Token[] buffer = new Token[TAM]; // buffer circular (se reutilizan)
+    private int inicio = 0;                  // donde esta el token actual
+    private int cuantos = 0;                 // tokens ya pedidos a la fuente
+
+    public VentanaTokens(FuenteTokens fuente) throws IOException {
+        this.fuente = fuente;
+        for (int i = 0; i < TAM; i++) {
+            buffer[i] = new Token();
+        }
+        llenar(1);
+    }
+
+    public Token actual() {
+        return buffer[inicio];
+    }
+
+    // mirar(0) es el actual, mirar(1) el siguiente... (k < TAM)
+    public Token mirar(int k) throws IOException {
+        if (k < 0 || k >= TAM) {
+            throw new IllegalArgumentException("solo se puede mirar hasta " + (TAM - 1) + " tokens por delante");
+        }
+        llenar(k + 1);
+        return buffer[(inicio + k) % buffer.length];
+    }
+
+    // pasar al siguiente token (al final la fuente nos sigue dando el EOF)
+    public void avanzar() throws IOException {
+        inicio = (inicio + 1) % buffer.length;
+        cuantos--;
+        llenar(1);
+    }
+
+    // Pide a la fuente todos los tokens que quedan, asi el lexer llega al EOF y ya ha metido
+    // todos los ids en la tabla. La ventana crece lo que haga falta (hasta el final del fichero)
+    public void leerHastaEof() throws IOException {
+        llenar(1);
+        while (buffer[(inicio + cuantos - 1) % buffer.length].codigo != CodigoToken.COD_EOF) {
+            if (cuantos == buffer.length) {
+                crecer();
+            }
+            llenar(cuantos + 1);
+        }
+    }
+
+    private void crecer() {
+        Token[] nuevo = new Token[buffer.length * 2];
+        for (int i = 0; i < cuantos; i++) {
+            nuevo[i] = buffer[(inicio + i) % buffer.length]; // los mismos objetos: 'actual' sigue valiendo
+        }
+        for (int i = cuantos; i < nuevo.length; i++) {
+            nuevo[i] = new Token();
+        }
+        buffer = nuevo;
+        inicio = 0;
+    }
+
+    private void llenar(int n) throws IOException {
+        while (cuantos < n) {
+            fuente.siguienteToken(buffer[(inicio + cuantos) % buffer.length]);
+            cuantos++;
+        }
+    }
+}